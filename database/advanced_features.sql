@@ -76,6 +76,7 @@ BEGIN
     DECLARE v_receiver_id INT;
     DECLARE v_inbox_folder INT;
     DECLARE v_sent_folder INT;
+    DECLARE v_sent_at DATETIME;
     DECLARE EXIT HANDLER FOR SQLEXCEPTION
     BEGIN
         ROLLBACK;
@@ -99,9 +100,10 @@ BEGIN
         SET p_email_id = -1;
         ROLLBACK;
     ELSE
-        -- Insert email
-        INSERT INTO Email (Subject, Body, Priority)
-        VALUES (p_subject, p_body, p_priority);
+        -- Insert email; EmailUser rows carry the same send time
+        SET v_sent_at = NOW();
+        INSERT INTO Email (Subject, Body, Priority, Timestamp)
+        VALUES (p_subject, p_body, p_priority, v_sent_at);
         
         SET p_email_id = LAST_INSERT_ID();
         
@@ -117,12 +119,12 @@ BEGIN
         LIMIT 1;
         
         -- Insert sender record
-        INSERT INTO EmailUser (EmailID, UserID, Role, FolderID)
-        VALUES (p_email_id, p_sender_id, 'Sender', v_sent_folder);
+        INSERT INTO EmailUser (EmailID, UserID, Role, FolderID, Timestamp)
+        VALUES (p_email_id, p_sender_id, 'Sender', v_sent_folder, v_sent_at);
         
         -- Insert receiver record
-        INSERT INTO EmailUser (EmailID, UserID, Role, FolderID)
-        VALUES (p_email_id, v_receiver_id, 'Receiver', v_inbox_folder);
+        INSERT INTO EmailUser (EmailID, UserID, Role, FolderID, Timestamp)
+        VALUES (p_email_id, v_receiver_id, 'Receiver', v_inbox_folder, v_sent_at);
         
         SET p_status = 'SUCCESS';
         COMMIT;
@@ -19,10 +19,20 @@ CREATE TABLE IF NOT EXISTS User (
 CREATE TABLE IF NOT EXISTS Email (
     EmailID INT AUTO_INCREMENT PRIMARY KEY,
     Subject VARCHAR(255) NOT NULL,
+    -- Body text; for a compressed body only its search text (EmailBodyCodec)
     Body LONGTEXT NOT NULL,
-    Timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
+    -- Bodies above email.body.compression.threshold, zlib-compressed (BodyCodec = 'DEFLATE')
+    BodyCompressed LONGBLOB NULL,
+    BodyCodec ENUM('NONE', 'DEFLATE') NOT NULL DEFAULT 'NONE',
+    -- Original size in UTF-8 bytes of a compressed body (NULL = LENGTH(Body))
+    BodyLength BIGINT NULL,
+    -- First half of the paging cursor (EmailService.queryEmailPage), never NULL
+    Timestamp DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
     Priority ENUM('Low', 'Normal', 'High') DEFAULT 'Normal',
     IsHTML BOOLEAN DEFAULT FALSE,
+    -- Denormalized from Attachment, maintained by AttachmentService
+    AttachmentCount INT NOT NULL DEFAULT 0,
+    TotalAttachmentBytes BIGINT NOT NULL DEFAULT 0,
     INDEX idx_timestamp (Timestamp),
     INDEX idx_priority (Priority),
     FULLTEXT idx_search (Subject, Body)
@@ -37,6 +47,9 @@ CREATE TABLE IF NOT EXISTS Folder (
     CreatedAt DATETIME DEFAULT CURRENT_TIMESTAMP,
     Color VARCHAR(7) DEFAULT '#3498db',
     IsSystem BOOLEAN DEFAULT FALSE,
+    -- Maintained by MailboxCounterService (non-deleted / unread EmailUser rows)
+    EmailCount INT NOT NULL DEFAULT 0,
+    UnreadCount INT NOT NULL DEFAULT 0,
     FOREIGN KEY (UserID) REFERENCES User(UserID) ON DELETE CASCADE,
     FOREIGN KEY (ParentFolderID) REFERENCES Folder(FolderID) ON DELETE SET NULL,
     INDEX idx_user_folder (UserID, Name),
@@ -48,16 +61,22 @@ CREATE TABLE IF NOT EXISTS EmailUser (
     EmailID INT,
     UserID INT,
     Role ENUM('Sender', 'Receiver') NOT NULL,
+    RecipientType ENUM('To', 'CC', 'BCC') NULL,
     FolderID INT NULL,
     IsRead BOOLEAN DEFAULT FALSE,
     IsStarred BOOLEAN DEFAULT FALSE,
     IsDeleted BOOLEAN DEFAULT FALSE,
     ReadAt DATETIME NULL,
+    -- Copy of Email.Timestamp, so listings page on an EmailUser index
+    Timestamp DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
     PRIMARY KEY (EmailID, UserID, Role),
     FOREIGN KEY (EmailID) REFERENCES Email(EmailID) ON DELETE CASCADE,
     FOREIGN KEY (UserID) REFERENCES User(UserID) ON DELETE CASCADE,
     FOREIGN KEY (FolderID) REFERENCES Folder(FolderID) ON DELETE SET NULL,
     INDEX idx_user_role (UserID, Role),
+    -- Paged listings: a page is one range of the user's rows, newest first
+    INDEX idx_user_role_time (UserID, Role, IsDeleted, Timestamp, EmailID),
+    INDEX idx_user_folder_time (UserID, FolderID, IsDeleted, Timestamp, EmailID),
     INDEX idx_folder (FolderID),
     INDEX idx_read_status (IsRead),
     INDEX idx_starred (IsStarred),
@@ -70,12 +89,18 @@ CREATE TABLE IF NOT EXISTS Attachment (
     EmailID INT NOT NULL,
     FileName VARCHAR(255) NOT NULL,
     FileSize BIGINT NOT NULL,
+    -- Bytes on disk when stored compressed (NULL = same as FileSize)
+    StoredSize BIGINT NULL,
     MimeType VARCHAR(100) NOT NULL,
     FilePath VARCHAR(500) NOT NULL,
+    -- SHA-256 of the content; rows sharing a hash share one file (NULL = file of its own)
+    ContentHash CHAR(64) NULL,
+    Codec ENUM('NONE', 'DEFLATE') NOT NULL DEFAULT 'NONE',
     UploadedAt DATETIME DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (EmailID) REFERENCES Email(EmailID) ON DELETE CASCADE,
     INDEX idx_email (EmailID),
-    INDEX idx_uploaded (UploadedAt)
+    INDEX idx_uploaded (UploadedAt),
+    INDEX idx_content_hash (ContentHash)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- ========== WEBSITE SIGNUP TABLE ==========
@@ -89,3 +114,17 @@ CREATE TABLE IF NOT EXISTS WebsiteSignUp (
     INDEX idx_user (UserID),
     INDEX idx_domain (DomainName)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- ========== MAILBOX COUNTERS TABLE ==========
+-- One row per user, maintained incrementally by MailboxCounterService
+-- in the same transaction as the EmailUser/Attachment writes
+CREATE TABLE IF NOT EXISTS MailboxCounters (
+    UserID INT PRIMARY KEY,
+    TotalEmails INT NOT NULL DEFAULT 0,
+    UnreadEmails INT NOT NULL DEFAULT 0,
+    StarredEmails INT NOT NULL DEFAULT 0,
+    SentEmails INT NOT NULL DEFAULT 0,
+    ReceivedEmails INT NOT NULL DEFAULT 0,
+    TotalBytes BIGINT NOT NULL DEFAULT 0,
+    FOREIGN KEY (UserID) REFERENCES User(UserID) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -19,6 +19,8 @@ BEGIN
     (NEW.UserID, 'Drafts', TRUE, '#f39c12'),
     (NEW.UserID, 'Trash', TRUE, '#e74c3c'),
     (NEW.UserID, 'Spam', TRUE, '#95a5a6');
+    -- Start the user's mailbox counters at zero
+    INSERT INTO MailboxCounters (UserID) VALUES (NEW.UserID);
 END//
 
 DELIMITER ;
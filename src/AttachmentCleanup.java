@@ -0,0 +1,64 @@
+import services.*;
+
+/**
+ * AttachmentCleanup - Remove Orphaned Attachment Files
+ *
+ * Runs one AttachmentGarbageCollector sweep against the database and
+ * attachment root configured in config/database.properties and prints what
+ * was released and reclaimed. The application can keep running.
+ *
+ * Usage: java AttachmentCleanup [--dry-run] [--batch n] [--pause ms] [--grace minutes]
+ *   --dry-run   only report what a sweep would release and reclaim
+ *   --batch     files deleted between pauses (default 100)
+ *   --pause     pause after each batch in milliseconds (default 200)
+ *   --grace     leave files younger than this alone (default 60)
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class AttachmentCleanup {
+
+    public static void main(String[] args) {
+        boolean dryRun = false;
+        int batchSize = AttachmentGarbageCollector.DEFAULT_BATCH_SIZE;
+        long pauseMillis = AttachmentGarbageCollector.DEFAULT_PAUSE_MS;
+        long graceMillis = AttachmentGarbageCollector.DEFAULT_GRACE_MS;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--dry-run")) {
+                dryRun = true;
+            } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                batchSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--pause") && i + 1 < args.length) {
+                pauseMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--grace") && i + 1 < args.length) {
+                graceMillis = Long.parseLong(args[++i]) * 60_000L;
+            } else {
+                System.err.println("Unknown option: " + args[i]);
+                return;
+            }
+        }
+
+        DatabaseHelper dbHelper = new DatabaseHelper();
+        dbHelper.initializeDatabase();
+        AttachmentService attachmentService = new AttachmentService(dbHelper);
+        AttachmentGarbageCollector collector = new AttachmentGarbageCollector(
+                dbHelper, attachmentService, batchSize, pauseMillis, graceMillis);
+
+        try {
+            AttachmentGarbageCollector.Report report = collector.sweep(dryRun);
+
+            System.out.println(dryRun ? "Dry run - nothing was changed\n" : "");
+            System.out.println("Deleted mail:    " + report.getReleased() + " attachments (" +
+                               report.getReleasedBytes() + " bytes)");
+            System.out.println("Files scanned:   " + report.getScannedFiles());
+            System.out.println("Orphaned files:  " + report.getOrphanFiles());
+            System.out.println("Staged uploads:  " + report.getStagingFiles());
+            System.out.println("Reclaimed:       " + report.getReclaimedBytes() + " bytes");
+            System.out.println("Failed:          " + report.getFailed());
+            System.out.printf("Time:            %.1f s%n", report.getElapsedMillis() / 1000.0);
+        } finally {
+            attachmentService.shutdown();
+            dbHelper.shutdown();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import services.*;
+
+/**
+ * AttachmentMigration - Move Attachment Files to the Current Layout
+ *
+ * Runs AttachmentLayoutMigrator against the database and attachment root
+ * configured in config/database.properties. The application can keep
+ * running: files are switched over one at a time in short transactions.
+ *
+ * Usage: java AttachmentMigration [batchSize] [--pause ms] [--from id]
+ *   batchSize   rows read per batch (default 200)
+ *   --pause     pause between batches in milliseconds (default 0)
+ *   --from      resume after this Attachment ID (the lastId of an earlier run)
+ *
+ * To move the store to a new location, set attachments.root to the new
+ * directory, restart the application and run this tool; files are copied
+ * from wherever their rows point.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class AttachmentMigration {
+
+    public static void main(String[] args) {
+        int batchSize = AttachmentLayoutMigrator.DEFAULT_BATCH_SIZE;
+        long pauseMillis = 0;
+        int afterId = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--pause") && i + 1 < args.length) {
+                pauseMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--from") && i + 1 < args.length) {
+                afterId = Integer.parseInt(args[++i]);
+            } else {
+                batchSize = Integer.parseInt(args[i]);
+            }
+        }
+
+        DatabaseHelper dbHelper = new DatabaseHelper();
+        dbHelper.initializeDatabase();
+        AttachmentService attachmentService = new AttachmentService(dbHelper);
+
+        try {
+            AttachmentLayoutMigrator migrator = new AttachmentLayoutMigrator(dbHelper, attachmentService);
+            AttachmentLayoutMigrator.Report report = migrator.migrate(afterId, batchSize, pauseMillis);
+
+            System.out.println();
+            System.out.println("Scanned:  " + report.getScanned() + " attachments in " +
+                               report.getBatches() + " batches");
+            System.out.println("Moved:    " + report.getMoved());
+            System.out.println("Current:  " + report.getCurrent());
+            System.out.println("Skipped:  " + report.getSkipped());
+            System.out.println("Failed:   " + report.getFailed());
+            System.out.println("Last ID:  " + report.getLastId());
+            System.out.printf("Time:     %.1f s%n", report.getElapsedMillis() / 1000.0);
+            if (report.getFailed() > 0) {
+                System.err.println("✗ Some attachments could not be migrated; fix them and run again");
+            }
+        } finally {
+            attachmentService.shutdown();
+            dbHelper.shutdown();
+        }
+    }
+}
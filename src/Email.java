@@ -34,10 +34,12 @@ public class Email {
     private boolean isDeleted;
     private int folderId;
     private String folderName;
+    private String role; // Sender or Receiver: the viewing user's EmailUser row
     
     // Attachment information
     private List<Attachment> attachments;
     private int attachmentCount;
+    private long totalAttachmentBytes;
     
     /**
      * Default constructor
@@ -122,6 +124,13 @@ public class Email {
         this.size = body != null ? body.length() : 0;
     }
     
+    /**
+     * Check if the body was loaded (list queries return headers only)
+     */
+    public boolean isBodyLoaded() {
+        return body != null;
+    }
+    
     public Timestamp getTimestamp() {
         return timestamp;
     }
@@ -226,6 +235,22 @@ public class Email {
         this.folderName = folderName;
     }
     
+    public String getRole() {
+        return role;
+    }
+    
+    public void setRole(String role) {
+        this.role = role;
+    }
+    
+    /**
+     * The listed row is the user's copy as sender (Sent folder): it is
+     * never unread, and markAsRead (receiver rows only) does not apply
+     */
+    public boolean isSentCopy() {
+        return "Sender".equals(role);
+    }
+    
     public List<Attachment> getAttachments() {
         return attachments;
     }
@@ -243,6 +268,14 @@ public class Email {
         this.attachmentCount = attachmentCount;
     }
     
+    public long getTotalAttachmentBytes() {
+        return totalAttachmentBytes;
+    }
+    
+    public void setTotalAttachmentBytes(long totalAttachmentBytes) {
+        this.totalAttachmentBytes = totalAttachmentBytes;
+    }
+    
     /**
      * Add an attachment to this email
      */
@@ -0,0 +1,58 @@
+import services.*;
+
+/**
+ * EmailBodyMigration - Compress Existing Large Email Bodies
+ *
+ * Runs EmailBodyMigrator against the database configured in
+ * config/database.properties, using its email.body.compression.threshold.
+ * The application can keep running: rows are converted in short chunks.
+ *
+ * Usage: java EmailBodyMigration [chunkSize] [--pause ms] [--from id]
+ *   chunkSize   rows read and updated per chunk (default 200)
+ *   --pause     pause between chunks in milliseconds (default 0)
+ *   --from      resume after this EmailID (the lastId of an earlier run)
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class EmailBodyMigration {
+
+    public static void main(String[] args) {
+        int chunkSize = EmailBodyMigrator.DEFAULT_CHUNK_SIZE;
+        long pauseMillis = 0;
+        int afterId = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--pause") && i + 1 < args.length) {
+                pauseMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--from") && i + 1 < args.length) {
+                afterId = Integer.parseInt(args[++i]);
+            } else {
+                chunkSize = Integer.parseInt(args[i]);
+            }
+        }
+
+        DatabaseHelper dbHelper = new DatabaseHelper();
+        dbHelper.initializeDatabase();
+
+        try {
+            EmailBodyCodec codec = new EmailBodyCodec(dbHelper);
+            EmailBodyMigrator migrator = new EmailBodyMigrator(dbHelper, codec);
+            EmailBodyMigrator.Report report = migrator.migrate(afterId, chunkSize, pauseMillis);
+
+            System.out.println();
+            System.out.println("Threshold:   " + codec.getThreshold() + " bytes");
+            System.out.println("Scanned:     " + report.getScanned() + " bodies in " +
+                               report.getChunks() + " chunks");
+            System.out.println("Compressed:  " + report.getCompressed());
+            System.out.println("Skipped:     " + report.getSkipped());
+            System.out.println("Failed:      " + report.getFailed());
+            System.out.printf("Size:        %d -> %d bytes (%.1f%%)%n",
+                              report.getOriginalBytes(), report.getStoredBytes(), report.getCompressionRatio());
+            System.out.println("CPU time:    " + report.getCpuMillis() + " ms");
+            System.out.println("Last ID:     " + report.getLastId());
+            System.out.printf("Time:        %.1f s%n", report.getElapsedMillis() / 1000.0);
+        } finally {
+            dbHelper.shutdown();
+        }
+    }
+}
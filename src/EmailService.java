@@ -1,10 +1,23 @@
 package services;
 
 import entities.Email;
+import entities.EmailPage;
 import entities.EmailStats;
+import entities.User;
+import utils.FullTextQuery;
+import utils.LruCache;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * EmailService - Email Management Service
@@ -17,55 +30,259 @@ import java.util.List;
  */
 public class EmailService {
     
+    // Default number of rows per mailbox page
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    
+    // Bodies kept in memory for the preview pane
+    private static final int BODY_CACHE_SIZE = 64;
+    
+    // Maximum rows returned by relevance-ranked search
+    public static final int DEFAULT_SEARCH_LIMIT = 100;
+    
+    // EmailIDs per recipient-name query when a whole folder is listed
+    private static final int RECIPIENT_CHUNK_SIZE = 500;
+    
+    // EmailUser.RecipientType of Receiver rows (NULL on Sender rows and rows sent before CC/BCC)
+    public static final String RECIPIENT_TO = "To";
+    public static final String RECIPIENT_CC = "CC";
+    public static final String RECIPIENT_BCC = "BCC";
+    
+    // Recipients of the listed emails, in display order (To, CC, BCC; NULL reads as To).
+    // Names are filled in after the rows are read (see loadRecipientNames).
+    private static final String SQL_RECIPIENTS =
+        "SELECT eu_r.EmailID, eu_r.UserID, eu_r.RecipientType, r.Name " +
+        "FROM EmailUser eu_r JOIN User r ON eu_r.UserID = r.UserID " +
+        "WHERE eu_r.Role = 'Receiver' AND eu_r.EmailID IN (";
+    
+    // List queries return headers only (no Body); bodies are loaded with getEmailBody().
+    // WHERE clause is left open for ORDER BY / keyset conditions.
+    private static final String SQL_SENT =
+        "SELECT e.EmailID, e.Subject, eu.Timestamp, e.Priority, e.IsHTML, " +
+        "sender.Name as SenderName, " +
+        "eu.UserID, eu.IsRead, eu.IsStarred, eu.FolderID, eu.Role, " +
+        "e.AttachmentCount, e.TotalAttachmentBytes " +
+        "FROM Email e " +
+        "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
+        "JOIN User sender ON eu.UserID = sender.UserID " +
+        "WHERE eu.UserID = ? AND eu.Role = ? AND eu.IsDeleted = FALSE ";
+    
+    private static final String SQL_RECEIVED =
+        "SELECT e.EmailID, e.Subject, eu.Timestamp, e.Priority, e.IsHTML, " +
+        "sender.Name as SenderName, " +
+        "eu.UserID, eu.IsRead, eu.IsStarred, eu.FolderID, eu.Role, " +
+        "e.AttachmentCount, e.TotalAttachmentBytes " +
+        "FROM Email e " +
+        "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
+        "LEFT JOIN EmailUser eu_sender ON e.EmailID = eu_sender.EmailID AND eu_sender.Role = 'Sender' " +
+        "LEFT JOIN User sender ON eu_sender.UserID = sender.UserID " +
+        "WHERE eu.UserID = ? AND eu.Role = ? AND eu.IsDeleted = FALSE ";
+    
+    // Every non-deleted email of the user, whatever the role or folder
+    private static final String SQL_USER =
+        "SELECT e.EmailID, e.Subject, eu.Timestamp, e.Priority, e.IsHTML, " +
+        "sender.Name as SenderName, " +
+        "eu.UserID, eu.IsRead, eu.IsStarred, eu.FolderID, eu.Role, " +
+        "e.AttachmentCount, e.TotalAttachmentBytes " +
+        "FROM Email e " +
+        "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
+        "LEFT JOIN EmailUser eu_sender ON e.EmailID = eu_sender.EmailID AND eu_sender.Role = 'Sender' " +
+        "LEFT JOIN User sender ON eu_sender.UserID = sender.UserID " +
+        "WHERE eu.UserID = ? AND eu.IsDeleted = FALSE ";
+    
+    private static final String SQL_FOLDER = SQL_USER + "AND eu.FolderID = ? ";
+    
+    // Search conditions are appended by FullTextQuery.appendPredicate()
+    private static final String SQL_SEARCH =
+        "SELECT e.EmailID, e.Subject, eu.Timestamp, e.Priority, e.IsHTML, " +
+        "sender.Name as SenderName, " +
+        "eu.UserID, eu.IsRead, eu.IsStarred, eu.FolderID, eu.Role, " +
+        "e.AttachmentCount, e.TotalAttachmentBytes " +
+        "FROM Email e " +
+        "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
+        "LEFT JOIN EmailUser eu_sender ON e.EmailID = eu_sender.EmailID AND eu_sender.Role = 'Sender' " +
+        "LEFT JOIN User sender ON eu_sender.UserID = sender.UserID " +
+        "WHERE eu.UserID = ? AND eu.Role = ? AND eu.IsDeleted = FALSE ";
+    
     private DatabaseHelper dbHelper;
+    private final MailboxCounterService counterService;
+    private SearchIndexService searchIndexService;
+    // (UserID, EmailID) -> body; keyed by user so a cached body is only served to a participant
+    private final LruCache<Long, String> bodyCache = new LruCache<>(BODY_CACHE_SIZE);
+    private final EmailBodyCodec bodyCodec;
     
     public EmailService(DatabaseHelper dbHelper) {
         this.dbHelper = dbHelper;
+        this.counterService = new MailboxCounterService(dbHelper);
+        this.bodyCodec = new EmailBodyCodec(dbHelper);
+    }
+    
+    /**
+     * Keep the in-process search indexes current: sends and deletes
+     * are reported to it after they commit
+     */
+    public void setSearchIndexService(SearchIndexService searchIndexService) {
+        this.searchIndexService = searchIndexService;
     }
     
     /**
      * Send email with transaction management
      */
     public boolean sendEmail(Email email, int senderId, String recipientUsername) {
+        return sendEmail(email, senderId, Collections.singletonList(recipientUsername),
+                        Collections.emptyList(), Collections.emptyList());
+    }
+    
+    /**
+     * Send one email to several recipients in a single transaction.
+     * Recipients with their Inbox folder, and the sender's Sent folder, come from
+     * UserCache / SystemFolderCache; whatever is not cached is resolved with one
+     * query. All EmailUser rows are written with one JDBC batch.
+     * A username listed more than once keeps its first type (To, then CC, then BCC).
+     * @return false if there are no recipients, one does not exist, or the sender is among them
+     */
+    public boolean sendEmail(Email email, int senderId, List<String> to, List<String> cc, List<String> bcc) {
+        List<String> names = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        addRecipients(to, RECIPIENT_TO, names, types, seen);
+        addRecipients(cc, RECIPIENT_CC, names, types, seen);
+        addRecipients(bcc, RECIPIENT_BCC, names, types, seen);
+        
+        if (names.isEmpty()) {
+            System.err.println("No recipients given");
+            return false;
+        }
+        
+        // Recipients and system folders usually come from the shared caches;
+        // only names (or Inbox folders) they cannot answer go to the database
+        UserCache userCache = dbHelper.getUserCache();
+        SystemFolderCache folderCache = dbHelper.getSystemFolderCache();
+        int[] receiverIds = new int[names.size()];
+        Integer[] inboxFolderIds = new Integer[names.size()];
+        boolean[] resolved = new boolean[names.size()];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            UserCache.Entry cached = userCache.lookup(names.get(i));
+            if (cached != null && cached.isNegative()) {
+                System.err.println("Recipient not found: " + names.get(i));
+                return false;
+            }
+            Integer inboxFolderId = cached != null
+                ? folderCache.getIfPresent(cached.getUserId(), SystemFolderCache.INBOX) : null;
+            if (inboxFolderId != null) {
+                receiverIds[i] = cached.getUserId();
+                inboxFolderIds[i] = inboxFolderId;
+                resolved[i] = true;
+            } else {
+                pending.add(i);
+            }
+        }
+        Integer sentFolderId = folderCache.getIfPresent(senderId, SystemFolderCache.SENT);
+        
         Connection conn = null;
+        PreparedStatement pstmtResolve = null;
         PreparedStatement pstmtEmail = null;
-        PreparedStatement pstmtSender = null;
-        PreparedStatement pstmtReceiver = null;
-        PreparedStatement pstmtGetUser = null;
-        PreparedStatement pstmtGetFolder = null;
+        PreparedStatement pstmtEmailUser = null;
+        ResultSet rsResolve = null;
         ResultSet rsEmail = null;
-        ResultSet rsUser = null;
-        ResultSet rsFolder = null;
         
         try {
             conn = dbHelper.getConnection();
             conn.setAutoCommit(false); // Start transaction
             
-            // Validate recipient exists
-            String sqlGetUser = "SELECT UserID FROM User WHERE Name = ?";
-            pstmtGetUser = conn.prepareStatement(sqlGetUser);
-            pstmtGetUser.setString(1, recipientUsername);
-            rsUser = pstmtGetUser.executeQuery();
-            
-            if (!rsUser.next()) {
-                System.err.println("Recipient not found: " + recipientUsername);
-                return false;
+            if (!pending.isEmpty() || sentFolderId == null) {
+                // Resolve the remaining recipients (matched with the User.Name collation) with their
+                // Inbox, and the sender's Sent folder (Position -1), in one round trip
+                List<String> branches = new ArrayList<>();
+                if (!pending.isEmpty()) {
+                    StringBuilder derived = new StringBuilder();
+                    for (int i = 0; i < pending.size(); i++) {
+                        derived.append(i == 0 ? "SELECT ? AS Position, ? AS Name" : " UNION ALL SELECT ?, ?");
+                    }
+                    branches.add("SELECT r.Position, u.UserID, u.Name, u.PersonalDetails, u.CreatedAt, " +
+                        "u.IsActive, f.FolderID FROM (" + derived + ") r " +
+                        "JOIN User u ON u.Name = r.Name " +
+                        "LEFT JOIN Folder f ON f.UserID = u.UserID AND f.Name = 'Inbox' AND f.IsSystem = TRUE");
+                }
+                if (sentFolderId == null) {
+                    branches.add("SELECT -1, f.UserID, NULL, NULL, NULL, NULL, f.FolderID FROM Folder f " +
+                        "WHERE f.UserID = ? AND f.Name = 'Sent' AND f.IsSystem = TRUE");
+                }
+                
+                pstmtResolve = conn.prepareStatement(String.join(" UNION ALL ", branches) + " ORDER BY Position");
+                int paramIndex = 1;
+                for (int position : pending) {
+                    pstmtResolve.setInt(paramIndex++, position);
+                    pstmtResolve.setString(paramIndex++, names.get(position));
+                }
+                if (sentFolderId == null) {
+                    pstmtResolve.setInt(paramIndex, senderId);
+                }
+                rsResolve = pstmtResolve.executeQuery();
+                
+                while (rsResolve.next()) {
+                    int position = rsResolve.getInt("Position");
+                    Integer folderId = (Integer) rsResolve.getObject("FolderID");
+                    if (position < 0) {
+                        if (sentFolderId == null && folderId != null) {
+                            sentFolderId = folderId;
+                            folderCache.put(senderId, SystemFolderCache.SENT, folderId);
+                        }
+                    } else if (!resolved[position]) {
+                        User receiver = new User();
+                        receiver.setUserId(rsResolve.getInt("UserID"));
+                        receiver.setName(rsResolve.getString("Name"));
+                        receiver.setPersonalDetails(rsResolve.getString("PersonalDetails"));
+                        receiver.setCreatedAt(rsResolve.getTimestamp("CreatedAt"));
+                        receiver.setActive(rsResolve.getBoolean("IsActive"));
+                        userCache.put(names.get(position), receiver);
+                        
+                        receiverIds[position] = receiver.getUserId();
+                        inboxFolderIds[position] = folderId;
+                        resolved[position] = true;
+                        if (folderId != null) {
+                            folderCache.put(receiver.getUserId(), SystemFolderCache.INBOX, folderId);
+                        }
+                    }
+                }
+                
+                for (int position : pending) {
+                    if (!resolved[position]) {
+                        userCache.putMissing(names.get(position));
+                    }
+                }
             }
             
-            int receiverId = rsUser.getInt("UserID");
-            
-            // Cannot send to self
-            if (senderId == receiverId) {
-                System.err.println("Cannot send email to yourself");
-                return false;
+            Set<Integer> receiverIdSet = new HashSet<>();
+            for (int i = 0; i < names.size(); i++) {
+                if (!resolved[i]) {
+                    System.err.println("Recipient not found: " + names.get(i));
+                    return false;
+                }
+                // Cannot send to self
+                if (receiverIds[i] == senderId) {
+                    System.err.println("Cannot send email to yourself");
+                    return false;
+                }
+                if (!receiverIdSet.add(receiverIds[i])) {
+                    // Two spellings of the same user - keep the first
+                    resolved[i] = false;
+                }
             }
             
-            // Insert email
-            String sqlEmail = "INSERT INTO Email (Subject, Body, Priority) VALUES (?, ?, ?)";
+            // One send time (whole seconds, as DATETIME stores it) for Email and
+            // every EmailUser row, whose copy is the paging key of the listings
+            Timestamp sentAt = new Timestamp(System.currentTimeMillis() / 1000 * 1000);
+            
+            // Insert email; large bodies are stored compressed
+            String sqlEmail = "INSERT INTO Email (Subject, Body, BodyCompressed, BodyCodec, BodyLength, " +
+                             "Priority, IsHTML, Timestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
             pstmtEmail = conn.prepareStatement(sqlEmail, Statement.RETURN_GENERATED_KEYS);
             pstmtEmail.setString(1, email.getSubject());
-            pstmtEmail.setString(2, email.getBody());
-            pstmtEmail.setString(3, email.getPriority());
+            int index = bodyCodec.encode(email.getBody(), email.isHTML()).bind(pstmtEmail, 2);
+            pstmtEmail.setString(index++, email.getPriority());
+            pstmtEmail.setBoolean(index++, email.isHTML());
+            pstmtEmail.setTimestamp(index, sentAt);
             pstmtEmail.executeUpdate();
             
             rsEmail = pstmtEmail.getGeneratedKeys();
@@ -75,55 +292,39 @@ public class EmailService {
             
             int emailId = rsEmail.getInt(1);
             email.setEmailId(emailId);
-            
-            // Get Sent folder for sender
-            String sqlGetSentFolder = "SELECT FolderID FROM Folder WHERE UserID = ? AND Name = 'Sent'";
-            pstmtGetFolder = conn.prepareStatement(sqlGetSentFolder);
-            pstmtGetFolder.setInt(1, senderId);
-            rsFolder = pstmtGetFolder.executeQuery();
-            
-            Integer sentFolderId = null;
-            if (rsFolder.next()) {
-                sentFolderId = rsFolder.getInt("FolderID");
-            }
-            rsFolder.close();
-            
-            // Insert sender record
-            String sqlSender = "INSERT INTO EmailUser (EmailID, UserID, Role, FolderID) VALUES (?, ?, 'Sender', ?)";
-            pstmtSender = conn.prepareStatement(sqlSender);
-            pstmtSender.setInt(1, emailId);
-            pstmtSender.setInt(2, senderId);
-            if (sentFolderId != null) {
-                pstmtSender.setInt(3, sentFolderId);
-            } else {
-                pstmtSender.setNull(3, Types.INTEGER);
+            email.setTimestamp(sentAt);
+            
+            // Sender and recipient rows in one batch; counters change in the same transaction
+            String sqlEmailUser = "INSERT INTO EmailUser (EmailID, UserID, Role, FolderID, RecipientType, Timestamp) " +
+                                  "VALUES (?, ?, ?, ?, ?, ?)";
+            pstmtEmailUser = conn.prepareStatement(sqlEmailUser);
+            long emailBytes = MailboxCounterService.bodyBytes(email.getBody());
+            MailboxCounterService.Changes changes = new MailboxCounterService.Changes();
+            
+            addEmailUserRow(pstmtEmailUser, emailId, senderId, "Sender", sentFolderId, null, sentAt);
+            changes.record(senderId, null, MailboxCounterService.RowState.newRow("Sender", sentFolderId, emailBytes));
+            
+            int[] participantIds = new int[receiverIdSet.size() + 1];
+            participantIds[0] = senderId;
+            int participants = 1;
+            for (int i = 0; i < names.size(); i++) {
+                if (resolved[i]) {
+                    addEmailUserRow(pstmtEmailUser, emailId, receiverIds[i], "Receiver", inboxFolderIds[i], types.get(i),
+                                    sentAt);
+                    changes.record(receiverIds[i], null,
+                        MailboxCounterService.RowState.newRow("Receiver", inboxFolderIds[i], emailBytes));
+                    participantIds[participants++] = receiverIds[i];
+                }
             }
-            pstmtSender.executeUpdate();
-            
-            // Get Inbox folder for receiver
-            pstmtGetFolder = conn.prepareStatement("SELECT FolderID FROM Folder WHERE UserID = ? AND Name = 'Inbox'");
-            pstmtGetFolder.setInt(1, receiverId);
-            rsFolder = pstmtGetFolder.executeQuery();
+            pstmtEmailUser.executeBatch();
+            counterService.apply(conn, changes);
             
-            Integer inboxFolderId = null;
-            if (rsFolder.next()) {
-                inboxFolderId = rsFolder.getInt("FolderID");
-            }
+            conn.commit(); // Commit transaction
+            System.out.println("Email sent successfully: ID=" + emailId + ", recipients=" + receiverIdSet.size());
             
-            // Insert receiver record
-            String sqlReceiver = "INSERT INTO EmailUser (EmailID, UserID, Role, FolderID) VALUES (?, ?, 'Receiver', ?)";
-            pstmtReceiver = conn.prepareStatement(sqlReceiver);
-            pstmtReceiver.setInt(1, emailId);
-            pstmtReceiver.setInt(2, receiverId);
-            if (inboxFolderId != null) {
-                pstmtReceiver.setInt(3, inboxFolderId);
-            } else {
-                pstmtReceiver.setNull(3, Types.INTEGER);
+            if (searchIndexService != null) {
+                searchIndexService.onEmailSent(emailId, email.getSubject(), email.getBody(), participantIds);
             }
-            pstmtReceiver.executeUpdate();
-            
-            conn.commit(); // Commit transaction
-            System.out.println("Email sent successfully: ID=" + emailId);
             return true;
             
         } catch (SQLException e) {
@@ -135,18 +336,19 @@ public class EmailService {
                     System.err.println("Rollback error: " + ex.getMessage());
                 }
             }
+            // A cached recipient may have been removed by another client
+            for (String name : names) {
+                userCache.invalidate(name);
+            }
             System.err.println("Send email error: " + e.getMessage());
             e.printStackTrace();
             return false;
         } finally {
             dbHelper.closeResultSet(rsEmail);
-            dbHelper.closeResultSet(rsUser);
-            dbHelper.closeResultSet(rsFolder);
+            dbHelper.closeResultSet(rsResolve);
             dbHelper.closeStatement(pstmtEmail);
-            dbHelper.closeStatement(pstmtSender);
-            dbHelper.closeStatement(pstmtReceiver);
-            dbHelper.closeStatement(pstmtGetUser);
-            dbHelper.closeStatement(pstmtGetFolder);
+            dbHelper.closeStatement(pstmtEmailUser);
+            dbHelper.closeStatement(pstmtResolve);
             if (conn != null) {
                 try {
                     conn.setAutoCommit(true);
@@ -158,6 +360,54 @@ public class EmailService {
         }
     }
     
+    /**
+     * Split a recipient field ("alice, bob; carol") into usernames
+     */
+    public static List<String> parseRecipients(String field) {
+        List<String> recipients = new ArrayList<>();
+        if (field != null) {
+            for (String name : field.split("[,;]")) {
+                if (!name.trim().isEmpty()) {
+                    recipients.add(name.trim());
+                }
+            }
+        }
+        return recipients;
+    }
+    
+    private static void addRecipients(List<String> recipients, String type,
+                                      List<String> names, List<String> types, Set<String> seen) {
+        if (recipients == null) {
+            return;
+        }
+        for (String name : recipients) {
+            if (name != null && !name.trim().isEmpty() && seen.add(name.trim().toLowerCase(Locale.ROOT))) {
+                names.add(name.trim());
+                types.add(type);
+            }
+        }
+    }
+    
+    private static void addEmailUserRow(PreparedStatement pstmt, int emailId, int userId, String role,
+                                        Integer folderId, String recipientType, Timestamp sentAt)
+            throws SQLException {
+        pstmt.setInt(1, emailId);
+        pstmt.setInt(2, userId);
+        pstmt.setString(3, role);
+        if (folderId != null) {
+            pstmt.setInt(4, folderId);
+        } else {
+            pstmt.setNull(4, Types.INTEGER);
+        }
+        if (recipientType != null) {
+            pstmt.setString(5, recipientType);
+        } else {
+            pstmt.setNull(5, Types.VARCHAR);
+        }
+        pstmt.setTimestamp(6, sentAt);
+        pstmt.addBatch();
+    }
+    
     /**
      * Get inbox emails for user
      */
@@ -176,142 +426,217 @@ public class EmailService {
      * Get emails by role (Sender/Receiver)
      */
     public List<Email> getEmailsByRole(int userId, String role) {
-        List<Email> emails = new ArrayList<>();
-        Connection conn = null;
-        PreparedStatement pstmt = null;
-        ResultSet rs = null;
-        
-        try {
-            conn = dbHelper.getConnection();
-            
-            String sql;
-            if (role.equals("Sender")) {
-                sql = "SELECT e.EmailID, e.Subject, e.Body, e.Timestamp, e.Priority, e.IsHTML, " +
-                      "receiver.Name as ReceiverName, sender.Name as SenderName, " +
-                      "eu.IsRead, eu.IsStarred, eu.FolderID, " +
-                      "(SELECT COUNT(*) FROM Attachment WHERE EmailID = e.EmailID) as AttachmentCount " +
-                      "FROM Email e " +
-                      "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
-                      "JOIN User sender ON eu.UserID = sender.UserID " +
-                      "LEFT JOIN EmailUser eu_receiver ON e.EmailID = eu_receiver.EmailID AND eu_receiver.Role = 'Receiver' " +
-                      "LEFT JOIN User receiver ON eu_receiver.UserID = receiver.UserID " +
-                      "WHERE eu.UserID = ? AND eu.Role = ? AND eu.IsDeleted = FALSE " +
-                      "ORDER BY e.Timestamp DESC";
-            } else {
-                sql = "SELECT e.EmailID, e.Subject, e.Body, e.Timestamp, e.Priority, e.IsHTML, " +
-                      "sender.Name as SenderName, receiver.Name as ReceiverName, " +
-                      "eu.IsRead, eu.IsStarred, eu.FolderID, " +
-                      "(SELECT COUNT(*) FROM Attachment WHERE EmailID = e.EmailID) as AttachmentCount " +
-                      "FROM Email e " +
-                      "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
-                      "JOIN User receiver ON eu.UserID = receiver.UserID " +
-                      "LEFT JOIN EmailUser eu_sender ON e.EmailID = eu_sender.EmailID AND eu_sender.Role = 'Sender' " +
-                      "LEFT JOIN User sender ON eu_sender.UserID = sender.UserID " +
-                      "WHERE eu.UserID = ? AND eu.Role = ? AND eu.IsDeleted = FALSE " +
-                      "ORDER BY e.Timestamp DESC";
-            }
-            
-            pstmt = conn.prepareStatement(sql);
-            pstmt.setInt(1, userId);
-            pstmt.setString(2, role);
-            
-            rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                Email email = new Email();
-                email.setEmailId(rs.getInt("EmailID"));
-                email.setSubject(rs.getString("Subject"));
-                email.setBody(rs.getString("Body"));
-                email.setTimestamp(rs.getTimestamp("Timestamp"));
-                email.setPriority(rs.getString("Priority"));
-                email.setHTML(rs.getBoolean("IsHTML"));
-                email.setSenderName(rs.getString("SenderName"));
-                email.setReceiverName(rs.getString("ReceiverName"));
-                email.setRead(rs.getBoolean("IsRead"));
-                email.setStarred(rs.getBoolean("IsStarred"));
-                email.setFolderId(rs.getInt("FolderID"));
-                email.setAttachmentCount(rs.getInt("AttachmentCount"));
-                
-                emails.add(email);
-            }
-            
-        } catch (SQLException e) {
-            System.err.println("Error getting emails by role: " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            dbHelper.closeResultSet(rs);
-            dbHelper.closeStatement(pstmt);
-            dbHelper.closeConnection(conn);
-        }
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.add(role);
         
-        return emails;
+        String sql = roleQuery(role) + "ORDER BY eu.Timestamp DESC";
+        return queryEmails(sql, params, "Error getting emails by role: ");
     }
     
     /**
      * Get emails by folder
      */
     public List<Email> getEmailsByFolder(int userId, int folderId) {
-        List<Email> emails = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.add(folderId);
+        
+        return queryEmails(SQL_FOLDER + "ORDER BY eu.Timestamp DESC", params, "Error getting emails by folder: ");
+    }
+    
+    /**
+     * Search emails by keyword (newest first).
+     * The search term is compiled by FullTextQuery, so indexable words go
+     * through the FULLTEXT index instead of a LIKE scan over every body.
+     */
+    public List<Email> searchEmails(int userId, String searchTerm, String role) {
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.add(role);
+        StringBuilder sql = new StringBuilder(SQL_SEARCH);
+        FullTextQuery.parse(searchTerm).appendPredicate(sql, params);
+        sql.append("ORDER BY eu.Timestamp DESC");
+        
+        return queryEmails(sql.toString(), params, "Error searching emails: ");
+    }
+    
+    /**
+     * Search emails ordered by full-text relevance (best match first).
+     * Query syntax: words are required prefix terms, "quoted text" is a phrase,
+     * -word excludes. Words shorter than FullTextQuery.MIN_TOKEN_SIZE are
+     * matched with LIKE; if no word is indexable the results are newest first.
+     * @param limit maximum number of results (DEFAULT_SEARCH_LIMIT if <= 0)
+     */
+    public List<Email> searchEmailsRanked(int userId, String query, String role, int limit) {
+        if (limit <= 0) {
+            limit = DEFAULT_SEARCH_LIMIT;
+        }
+        
+        FullTextQuery compiled = FullTextQuery.parse(query);
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.add(role);
+        StringBuilder sql = new StringBuilder(SQL_SEARCH);
+        compiled.appendPredicate(sql, params);
+        compiled.appendRelevanceOrder(sql, params);
+        sql.append("LIMIT ?");
+        params.add(limit);
+        
+        return queryEmails(sql.toString(), params, "Error searching emails: ");
+    }
+    
+    /**
+     * Get one page of inbox emails (newest first).
+     * Like every *Page method, throws IllegalStateException if the query fails,
+     * so a failed fetch is never mistaken for the end of the listing.
+     * @param beforeTimestamp Timestamp of the last row of the previous page, null for the first page
+     * @param beforeEmailId EmailID of the last row of the previous page
+     */
+    public EmailPage getInboxEmailsPage(int userId, Timestamp beforeTimestamp, int beforeEmailId, int pageSize) {
+        return getEmailsByRolePage(userId, "Receiver", beforeTimestamp, beforeEmailId, pageSize);
+    }
+    
+    /**
+     * Get one page of sent emails (newest first)
+     */
+    public EmailPage getSentEmailsPage(int userId, Timestamp beforeTimestamp, int beforeEmailId, int pageSize) {
+        return getEmailsByRolePage(userId, "Sender", beforeTimestamp, beforeEmailId, pageSize);
+    }
+    
+    /**
+     * Get one page of emails by role, using the (Timestamp, EmailID) keyset cursor
+     * so the cost of a page does not grow with its position in the mailbox
+     */
+    public EmailPage getEmailsByRolePage(int userId, String role, Timestamp beforeTimestamp,
+                                         int beforeEmailId, int pageSize) {
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.add(role);
+        
+        return queryEmailPage(roleQuery(role), params, beforeTimestamp, beforeEmailId, pageSize,
+                "Error getting email page by role: ");
+    }
+    
+    /**
+     * Get one page of emails in a folder (keyset cursor, newest first)
+     */
+    public EmailPage getEmailsByFolderPage(int userId, int folderId, Timestamp beforeTimestamp,
+                                           int beforeEmailId, int pageSize) {
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.add(folderId);
+        
+        return queryEmailPage(SQL_FOLDER, params, beforeTimestamp, beforeEmailId, pageSize,
+                "Error getting email page by folder: ");
+    }
+    
+    /**
+     * Get inbox emails with an EmailID above afterEmailId, with an index range
+     * scan on EmailUser(UserID, Role, EmailID) instead of re-reading the folder.
+     * IDs are assigned at insert, not commit, so a row can appear below an ID
+     * already seen: callers pass a point some way below their cursor and skip
+     * the rows they have (see NewMailPoller).
+     * @param limit maximum rows; more new mail than this means the caller should reload
+     * @return new emails, newest first
+     */
+    public List<Email> getNewInboxEmails(int userId, int afterEmailId, int limit) {
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.add("Receiver");
+        params.add(afterEmailId);
+        params.add(limit);
+        
+        return queryEmails(SQL_RECEIVED + "AND eu.EmailID > ? ORDER BY eu.Timestamp DESC, eu.EmailID DESC LIMIT ?",
+                params, "Error checking for new emails: ");
+    }
+    
+    /**
+     * Get the highest EmailID in the user's inbox (initial change cursor)
+     * @return EmailID, 0 if the inbox is empty, or -1 on error
+     */
+    public int getLatestInboxEmailId(int userId) {
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
             conn = dbHelper.getConnection();
-            
-            String sql = "SELECT e.EmailID, e.Subject, e.Body, e.Timestamp, e.Priority, e.IsHTML, " +
-                        "sender.Name as SenderName, receiver.Name as ReceiverName, " +
-                        "eu.IsRead, eu.IsStarred, eu.FolderID, eu.Role, " +
-                        "(SELECT COUNT(*) FROM Attachment WHERE EmailID = e.EmailID) as AttachmentCount " +
-                        "FROM Email e " +
-                        "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
-                        "LEFT JOIN EmailUser eu_sender ON e.EmailID = eu_sender.EmailID AND eu_sender.Role = 'Sender' " +
-                        "LEFT JOIN User sender ON eu_sender.UserID = sender.UserID " +
-                        "LEFT JOIN EmailUser eu_receiver ON e.EmailID = eu_receiver.EmailID AND eu_receiver.Role = 'Receiver' " +
-                        "LEFT JOIN User receiver ON eu_receiver.UserID = receiver.UserID " +
-                        "WHERE eu.UserID = ? AND eu.FolderID = ? AND eu.IsDeleted = FALSE " +
-                        "ORDER BY e.Timestamp DESC";
-            
-            pstmt = conn.prepareStatement(sql);
+            pstmt = conn.prepareStatement(
+                "SELECT MAX(EmailID) FROM EmailUser WHERE UserID = ? AND Role = 'Receiver'");
             pstmt.setInt(1, userId);
-            pstmt.setInt(2, folderId);
-            
             rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                Email email = new Email();
-                email.setEmailId(rs.getInt("EmailID"));
-                email.setSubject(rs.getString("Subject"));
-                email.setBody(rs.getString("Body"));
-                email.setTimestamp(rs.getTimestamp("Timestamp"));
-                email.setPriority(rs.getString("Priority"));
-                email.setHTML(rs.getBoolean("IsHTML"));
-                email.setSenderName(rs.getString("SenderName"));
-                email.setReceiverName(rs.getString("ReceiverName"));
-                email.setRead(rs.getBoolean("IsRead"));
-                email.setStarred(rs.getBoolean("IsStarred"));
-                email.setFolderId(rs.getInt("FolderID"));
-                email.setAttachmentCount(rs.getInt("AttachmentCount"));
-                
-                emails.add(email);
-            }
+            return rs.next() ? rs.getInt(1) : 0;
             
         } catch (SQLException e) {
-            System.err.println("Error getting emails by folder: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Error reading latest email ID: " + e.getMessage());
+            return -1;
         } finally {
             dbHelper.closeResultSet(rs);
             dbHelper.closeStatement(pstmt);
             dbHelper.closeConnection(conn);
         }
+    }
+    
+    /**
+     * Get one page of search results (keyset cursor, newest first)
+     */
+    public EmailPage searchEmailsPage(int userId, String searchTerm, String role, Timestamp beforeTimestamp,
+                                      int beforeEmailId, int pageSize) {
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.add(role);
+        StringBuilder sql = new StringBuilder(SQL_SEARCH);
+        FullTextQuery.parse(searchTerm).appendPredicate(sql, params);
         
-        return emails;
+        return queryEmailPage(sql.toString(), params, beforeTimestamp, beforeEmailId, pageSize,
+                "Error searching email page: ");
     }
     
     /**
-     * Search emails by keyword
+     * Load email headers by ID for one user (e.g. search index hits).
+     * Emails the user no longer has, or has deleted, are skipped.
+     * @return headers, newest first
      */
-    public List<Email> searchEmails(int userId, String searchTerm, String role) {
+    public List<Email> getEmailsByIds(int userId, int[] emailIds) {
+        if (emailIds == null || emailIds.length == 0) {
+            return new ArrayList<>();
+        }
+        
+        StringBuilder sql = new StringBuilder(SQL_USER).append("AND e.EmailID IN (");
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        for (int i = 0; i < emailIds.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+            params.add(emailIds[i]);
+        }
+        sql.append(") ORDER BY eu.Timestamp DESC, eu.EmailID DESC");
+        
+        return queryEmails(sql.toString(), params, "Error loading emails by ID: ");
+    }
+    
+    /**
+     * Select the list query for a role
+     */
+    private String roleQuery(String role) {
+        return role.equals("Sender") ? SQL_SENT : SQL_RECEIVED;
+    }
+    
+    /**
+     * Run a list query and map every row
+     * @return rows, or an empty list on error
+     */
+    private List<Email> queryEmails(String sql, List<Object> params, String errorMessage) {
+        try {
+            return selectEmails(sql, params);
+        } catch (SQLException e) {
+            System.err.println(errorMessage + e.getMessage());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+    
+    private List<Email> selectEmails(String sql, List<Object> params) throws SQLException {
         List<Email> emails = new ArrayList<>();
         Connection conn = null;
         PreparedStatement pstmt = null;
@@ -319,225 +644,336 @@ public class EmailService {
         
         try {
             conn = dbHelper.getConnection();
-            
-            String sql = "SELECT e.EmailID, e.Subject, e.Body, e.Timestamp, e.Priority, e.IsHTML, " +
-                        "sender.Name as SenderName, receiver.Name as ReceiverName, " +
-                        "eu.IsRead, eu.IsStarred, eu.FolderID, " +
-                        "(SELECT COUNT(*) FROM Attachment WHERE EmailID = e.EmailID) as AttachmentCount " +
-                        "FROM Email e " +
-                        "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
-                        "LEFT JOIN EmailUser eu_sender ON e.EmailID = eu_sender.EmailID AND eu_sender.Role = 'Sender' " +
-                        "LEFT JOIN User sender ON eu_sender.UserID = sender.UserID " +
-                        "LEFT JOIN EmailUser eu_receiver ON e.EmailID = eu_receiver.EmailID AND eu_receiver.Role = 'Receiver' " +
-                        "LEFT JOIN User receiver ON eu_receiver.UserID = receiver.UserID " +
-                        "WHERE eu.UserID = ? AND eu.Role = ? AND eu.IsDeleted = FALSE " +
-                        "AND (e.Subject LIKE ? OR e.Body LIKE ?) " +
-                        "ORDER BY e.Timestamp DESC";
-            
             pstmt = conn.prepareStatement(sql);
-            pstmt.setInt(1, userId);
-            pstmt.setString(2, role);
-            pstmt.setString(3, "%" + searchTerm + "%");
-            pstmt.setString(4, "%" + searchTerm + "%");
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
             
             rs = pstmt.executeQuery();
             
+            int viewerId = 0;
             while (rs.next()) {
-                Email email = new Email();
-                email.setEmailId(rs.getInt("EmailID"));
-                email.setSubject(rs.getString("Subject"));
-                email.setBody(rs.getString("Body"));
-                email.setTimestamp(rs.getTimestamp("Timestamp"));
-                email.setPriority(rs.getString("Priority"));
-                email.setHTML(rs.getBoolean("IsHTML"));
-                email.setSenderName(rs.getString("SenderName"));
-                email.setReceiverName(rs.getString("ReceiverName"));
-                email.setRead(rs.getBoolean("IsRead"));
-                email.setStarred(rs.getBoolean("IsStarred"));
-                email.setFolderId(rs.getInt("FolderID"));
-                email.setAttachmentCount(rs.getInt("AttachmentCount"));
-                
-                emails.add(email);
+                emails.add(mapEmailRow(rs));
+                viewerId = rs.getInt("UserID");
             }
+            loadRecipientNames(conn, emails, viewerId);
+            return emails;
             
-        } catch (SQLException e) {
-            System.err.println("Error searching emails: " + e.getMessage());
-            e.printStackTrace();
         } finally {
             dbHelper.closeResultSet(rs);
             dbHelper.closeStatement(pstmt);
             dbHelper.closeConnection(conn);
         }
-        
-        return emails;
     }
     
     /**
-     * Mark email as read
+     * Fill in the recipient names of listed emails with one query per
+     * RECIPIENT_CHUNK_SIZE rows (one per page), instead of a subquery per row.
+     * BCC recipients are listed only to the sender and to themselves.
+     * @param viewerId the user the rows were listed for
      */
-    public boolean markAsRead(int emailId, int userId) {
-        Connection conn = null;
-        PreparedStatement pstmt = null;
-        
-        try {
-            conn = dbHelper.getConnection();
-            String sql = "UPDATE EmailUser SET IsRead = TRUE, ReadAt = CURRENT_TIMESTAMP " +
-                        "WHERE EmailID = ? AND UserID = ? AND Role = 'Receiver'";
-            pstmt = conn.prepareStatement(sql);
-            pstmt.setInt(1, emailId);
-            pstmt.setInt(2, userId);
-            
-            int rows = pstmt.executeUpdate();
-            return rows > 0;
+    private void loadRecipientNames(Connection conn, List<Email> emails, int viewerId) throws SQLException {
+        for (int from = 0; from < emails.size(); from += RECIPIENT_CHUNK_SIZE) {
+            List<Email> chunk = emails.subList(from, Math.min(from + RECIPIENT_CHUNK_SIZE, emails.size()));
+            Map<Integer, List<Email>> byId = new HashMap<>();
+            StringBuilder sql = new StringBuilder(SQL_RECIPIENTS);
+            for (Email email : chunk) {
+                if (byId.isEmpty()) {
+                    sql.append("?");
+                } else if (!byId.containsKey(email.getEmailId())) {
+                    sql.append(", ?");
+                }
+                byId.computeIfAbsent(email.getEmailId(), id -> new ArrayList<>()).add(email);
+            }
+            sql.append(") ORDER BY eu_r.EmailID, eu_r.RecipientType, r.Name");
+            
+            // Identity keys: Email.equals compares EmailIDs only
+            Map<Email, StringBuilder> names = new IdentityHashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (Integer emailId : byId.keySet()) {
+                    pstmt.setInt(index++, emailId);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int recipientId = rs.getInt("UserID");
+                        boolean bcc = RECIPIENT_BCC.equals(rs.getString("RecipientType"));
+                        String name = rs.getString("Name");
+                        for (Email email : byId.get(rs.getInt("EmailID"))) {
+                            if (bcc && !email.isSentCopy() && recipientId != viewerId) {
+                                continue;
+                            }
+                            StringBuilder list = names.computeIfAbsent(email, e -> new StringBuilder());
+                            list.append(list.length() == 0 ? "" : ", ").append(name);
+                        }
+                    }
+                }
+            }
             
-        } catch (SQLException e) {
-            System.err.println("Error marking as read: " + e.getMessage());
-            return false;
-        } finally {
-            dbHelper.closeStatement(pstmt);
-            dbHelper.closeConnection(conn);
+            for (Map.Entry<Email, StringBuilder> entry : names.entrySet()) {
+                entry.getKey().setReceiverName(entry.getValue().toString());
+            }
         }
     }
     
     /**
-     * Toggle star status
+     * Run a list query restricted to rows strictly older than the cursor.
+     * The cursor and the sort are on EmailUser's own copy of the send time, so
+     * idx_user_role_time (role listings and search) or idx_user_folder_time
+     * (folders) is read backwards from the cursor as one index range, and
+     * the scan stops after pageSize + 1 entries; each is joined to Email by
+     * primary key. A page costs the same wherever it lies and nothing is sorted.
+     * Timestamp is NOT NULL, so every row yields a usable cursor.
+     * One extra row is fetched to tell whether another page exists.
+     * @throws IllegalStateException if the query fails: an empty page would
+     *         read as the end of the listing
      */
-    public boolean toggleStar(int emailId, int userId) {
-        Connection conn = null;
-        PreparedStatement pstmt = null;
+    private EmailPage queryEmailPage(String baseSql, List<Object> params, Timestamp beforeTimestamp,
+                                     int beforeEmailId, int pageSize, String errorMessage) {
+        if (pageSize <= 0) {
+            pageSize = DEFAULT_PAGE_SIZE;
+        }
         
+        StringBuilder sql = new StringBuilder(baseSql);
+        List<Object> pageParams = new ArrayList<>(params);
+        if (beforeTimestamp != null) {
+            sql.append("AND (eu.Timestamp < ? OR (eu.Timestamp = ? AND eu.EmailID < ?)) ");
+            pageParams.add(beforeTimestamp);
+            pageParams.add(beforeTimestamp);
+            pageParams.add(beforeEmailId);
+        }
+        sql.append("ORDER BY eu.Timestamp DESC, eu.EmailID DESC LIMIT ?");
+        pageParams.add(pageSize + 1);
+        
+        List<Email> emails;
         try {
-            conn = dbHelper.getConnection();
-            String sql = "UPDATE EmailUser SET IsStarred = NOT IsStarred WHERE EmailID = ? AND UserID = ?";
-            pstmt = conn.prepareStatement(sql);
-            pstmt.setInt(1, emailId);
-            pstmt.setInt(2, userId);
-            
-            int rows = pstmt.executeUpdate();
-            return rows > 0;
-            
+            emails = selectEmails(sql.toString(), pageParams);
         } catch (SQLException e) {
-            System.err.println("Error toggling star: " + e.getMessage());
-            return false;
-        } finally {
-            dbHelper.closeStatement(pstmt);
-            dbHelper.closeConnection(conn);
+            System.err.println(errorMessage + e.getMessage());
+            throw new IllegalStateException(errorMessage + e.getMessage(), e);
+        }
+        
+        boolean hasMore = emails.size() > pageSize;
+        if (hasMore) {
+            emails.remove(emails.size() - 1);
         }
+        return new EmailPage(emails, hasMore);
     }
     
     /**
-     * Delete email (soft delete)
+     * Get the body of an email the user sent or received.
+     * List queries return headers only, so the preview pane loads the body here;
+     * recently viewed bodies are served from a small LRU cache.
+     * @return body text, or null if the email does not exist for this user
      */
-    public boolean deleteEmail(int emailId, int userId) {
+    public String getEmailBody(int emailId, int userId) {
+        String cached = bodyCache.get(bodyKey(userId, emailId));
+        if (cached != null) {
+            return cached;
+        }
+        
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
         
         try {
             conn = dbHelper.getConnection();
-            String sql = "UPDATE EmailUser SET IsDeleted = TRUE WHERE EmailID = ? AND UserID = ?";
+            String sql = "SELECT e.Body, e.BodyCompressed, e.BodyCodec FROM Email e " +
+                        "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
+                        "WHERE e.EmailID = ? AND eu.UserID = ? LIMIT 1";
             pstmt = conn.prepareStatement(sql);
             pstmt.setInt(1, emailId);
             pstmt.setInt(2, userId);
             
-            int rows = pstmt.executeUpdate();
-            return rows > 0;
+            rs = pstmt.executeQuery();
+            
+            if (rs.next()) {
+                String body = bodyCodec.decode(rs);
+                if (body != null) {
+                    bodyCache.put(bodyKey(userId, emailId), body);
+                }
+                return body;
+            }
             
         } catch (SQLException e) {
-            System.err.println("Error deleting email: " + e.getMessage());
-            return false;
+            System.err.println("Error loading email body: " + e.getMessage());
         } finally {
+            dbHelper.closeResultSet(rs);
             dbHelper.closeStatement(pstmt);
             dbHelper.closeConnection(conn);
         }
+        
+        return null;
     }
     
     /**
-     * Get email statistics
+     * Get the bodies of several emails the user sent or received, in one query
+     * (used to prefetch the preview of neighbouring rows)
+     * @return EmailID -> body; emails the user does not have are missing
      */
-    public EmailStats getEmailStats(int userId) {
-        EmailStats stats = new EmailStats();
+    public Map<Integer, String> getEmailBodies(Collection<Integer> emailIds, int userId) {
+        Map<Integer, String> bodies = new HashMap<>();
+        List<Integer> pending = new ArrayList<>();
+        for (Integer emailId : new TreeSet<>(emailIds)) {
+            String cached = bodyCache.get(bodyKey(userId, emailId));
+            if (cached != null) {
+                bodies.put(emailId, cached);
+            } else {
+                pending.add(emailId);
+            }
+        }
+        if (pending.isEmpty()) {
+            return bodies;
+        }
+        
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
             conn = dbHelper.getConnection();
-            
-            // Total emails
-            String sqlTotal = "SELECT COUNT(*) FROM EmailUser WHERE UserID = ? AND IsDeleted = FALSE";
-            pstmt = conn.prepareStatement(sqlTotal);
-            pstmt.setInt(1, userId);
-            rs = pstmt.executeQuery();
-            if (rs.next()) {
-                stats.setTotalEmails(rs.getInt(1));
+            // EXISTS instead of JOIN + DISTINCT: no temporary table over the BLOB column
+            StringBuilder sql = new StringBuilder(
+                "SELECT e.EmailID, e.Body, e.BodyCompressed, e.BodyCodec FROM Email e " +
+                "WHERE e.EmailID IN (");
+            for (int i = 0; i < pending.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
             }
-            rs.close();
-            pstmt.close();
+            sql.append(") AND EXISTS (SELECT 1 FROM EmailUser eu WHERE eu.EmailID = e.EmailID AND eu.UserID = ?)");
             
-            // Unread emails
-            String sqlUnread = "SELECT COUNT(*) FROM EmailUser WHERE UserID = ? AND Role = 'Receiver' AND IsRead = FALSE AND IsDeleted = FALSE";
-            pstmt = conn.prepareStatement(sqlUnread);
-            pstmt.setInt(1, userId);
-            rs = pstmt.executeQuery();
-            if (rs.next()) {
-                stats.setUnreadEmails(rs.getInt(1));
+            pstmt = conn.prepareStatement(sql.toString());
+            for (int i = 0; i < pending.size(); i++) {
+                pstmt.setInt(i + 1, pending.get(i));
             }
-            rs.close();
-            pstmt.close();
+            pstmt.setInt(pending.size() + 1, userId);
             
-            // Starred emails
-            String sqlStarred = "SELECT COUNT(*) FROM EmailUser WHERE UserID = ? AND IsStarred = TRUE AND IsDeleted = FALSE";
-            pstmt = conn.prepareStatement(sqlStarred);
-            pstmt.setInt(1, userId);
-            rs = pstmt.executeQuery();
-            if (rs.next()) {
-                stats.setStarredEmails(rs.getInt(1));
-            }
-            rs.close();
-            pstmt.close();
-            
-            // Sent emails
-            String sqlSent = "SELECT COUNT(*) FROM EmailUser WHERE UserID = ? AND Role = 'Sender' AND IsDeleted = FALSE";
-            pstmt = conn.prepareStatement(sqlSent);
-            pstmt.setInt(1, userId);
-            rs = pstmt.executeQuery();
-            if (rs.next()) {
-                stats.setSentEmails(rs.getInt(1));
-            }
-            rs.close();
-            pstmt.close();
-            
-            // Received emails
-            String sqlReceived = "SELECT COUNT(*) FROM EmailUser WHERE UserID = ? AND Role = 'Receiver' AND IsDeleted = FALSE";
-            pstmt = conn.prepareStatement(sqlReceived);
-            pstmt.setInt(1, userId);
             rs = pstmt.executeQuery();
-            if (rs.next()) {
-                stats.setReceivedEmails(rs.getInt(1));
-            }
-            rs.close();
-            pstmt.close();
-            
-            // Total size
-            String sqlSize = "SELECT SUM(LENGTH(e.Body)) FROM Email e " +
-                           "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
-                           "WHERE eu.UserID = ? AND eu.IsDeleted = FALSE";
-            pstmt = conn.prepareStatement(sqlSize);
-            pstmt.setInt(1, userId);
-            rs = pstmt.executeQuery();
-            if (rs.next()) {
-                stats.setTotalSize(rs.getLong(1));
+            while (rs.next()) {
+                String body = bodyCodec.decode(rs);
+                if (body != null) {
+                    bodies.put(rs.getInt("EmailID"), body);
+                }
             }
             
         } catch (SQLException e) {
-            System.err.println("Error getting email stats: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Error loading email bodies: " + e.getMessage());
         } finally {
             dbHelper.closeResultSet(rs);
             dbHelper.closeStatement(pstmt);
             dbHelper.closeConnection(conn);
         }
         
-        return stats;
+        return bodies;
+    }
+    
+    private static long bodyKey(int userId, int emailId) {
+        return ((long) userId << 32) | (emailId & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Map the current row of a list query to an Email header (body not loaded)
+     */
+    private Email mapEmailRow(ResultSet rs) throws SQLException {
+        Email email = new Email();
+        email.setEmailId(rs.getInt("EmailID"));
+        email.setSubject(rs.getString("Subject"));
+        email.setTimestamp(rs.getTimestamp("Timestamp"));
+        email.setPriority(rs.getString("Priority"));
+        email.setHTML(rs.getBoolean("IsHTML"));
+        email.setSenderName(rs.getString("SenderName"));
+        email.setRead(rs.getBoolean("IsRead"));
+        email.setStarred(rs.getBoolean("IsStarred"));
+        email.setFolderId(rs.getInt("FolderID"));
+        email.setRole(rs.getString("Role"));
+        email.setAttachmentCount(rs.getInt("AttachmentCount"));
+        email.setTotalAttachmentBytes(rs.getLong("TotalAttachmentBytes"));
+        return email;
+    }
+    
+    /**
+     * Mark email as read
+     */
+    public boolean markAsRead(int emailId, int userId) {
+        return markAsRead(Collections.singletonList(emailId), userId) > 0;
+    }
+    
+    /**
+     * Mark many emails as read with one UPDATE ... WHERE EmailID IN (...) per
+     * chunk, in a single transaction together with the counter changes
+     * @return number of emails updated (0 if none is a received email of the user), or -1 on error
+     */
+    public int markAsRead(Collection<Integer> emailIds, int userId) {
+        return counterService.updateWithCounters(emailIds, userId, true, false,
+                "IsRead = TRUE, ReadAt = CURRENT_TIMESTAMP",
+                Collections.emptyList(), state -> state.withRead(true),
+                "Error marking as read: ");
+    }
+    
+    /**
+     * Toggle star status
+     */
+    public boolean toggleStar(int emailId, int userId) {
+        return counterService.updateWithCounters(emailId, userId, false, false,
+                "IsStarred = NOT IsStarred",
+                Collections.emptyList(), state -> state.withStarred(!state.starred),
+                "Error toggling star: ");
+    }
+    
+    /**
+     * Star or unstar many emails in one transaction
+     * @return number of EmailUser rows updated, or -1 on error
+     */
+    public int setStarred(Collection<Integer> emailIds, int userId, boolean starred) {
+        return counterService.updateWithCounters(emailIds, userId, false, false,
+                "IsStarred = ?",
+                Collections.singletonList(starred), state -> state.withStarred(starred),
+                "Error starring emails: ");
+    }
+    
+    /**
+     * Delete email (soft delete)
+     */
+    public boolean deleteEmail(int emailId, int userId) {
+        return deleteEmails(Collections.singletonList(emailId), userId) > 0;
+    }
+    
+    /**
+     * Soft delete many emails in one transaction
+     * @return number of EmailUser rows updated, or -1 on error
+     */
+    public int deleteEmails(Collection<Integer> emailIds, int userId) {
+        int deleted = counterService.updateWithCounters(emailIds, userId, false, true,
+                "IsDeleted = TRUE",
+                Collections.emptyList(), state -> state.withDeleted(true),
+                "Error deleting email: ");
+        
+        if (deleted > 0 && searchIndexService != null) {
+            for (int emailId : emailIds) {
+                searchIndexService.onEmailDeleted(emailId, userId);
+            }
+        }
+        return deleted;
+    }
+    
+    /**
+     * Get email statistics.
+     * Reads the incrementally maintained MailboxCounters row (one primary-key lookup).
+     */
+    public EmailStats getEmailStats(int userId) {
+        return counterService.getStats(userId);
+    }
+    
+    /**
+     * Codec for large bodies (compression metrics)
+     */
+    public EmailBodyCodec getBodyCodec() {
+        return bodyCodec;
+    }
+    
+    /**
+     * Recompute the user's counters from the base tables (repairs drift)
+     */
+    public boolean reconcileStats(int userId) {
+        return counterService.reconcileUser(userId);
     }
 }
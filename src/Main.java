@@ -1,8 +1,11 @@
 import entities.*;
 import services.*;
 
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Main - Console-based Email Client Application
@@ -15,6 +18,9 @@ import java.util.Scanner;
  */
 public class Main {
     
+    // Emails shown per console page
+    private static final int PAGE_SIZE = 20;
+    
     private static DatabaseHelper dbHelper;
     private static UserService userService;
     private static EmailService emailService;
@@ -43,6 +49,7 @@ public class Main {
         }
         
         System.out.println("\nThank you for using Professional Email Client!");
+        dbHelper.shutdown();
         scanner.close();
     }
     
@@ -218,69 +225,71 @@ public class Main {
      * View inbox emails
      */
     private static void viewInbox() {
-        try {
-            List<Email> emails = emailService.getInboxEmails(currentUser.getUserId());
-            
-            System.out.println("\n--- Inbox (" + emails.size() + " emails) ---");
-            if (emails.isEmpty()) {
-                System.out.println("No emails in inbox.");
-                return;
-            }
-            
-            for (int i = 0; i < emails.size(); i++) {
-                Email email = emails.get(i);
-                System.out.printf("%d. [%s] %s - %s | %s%n",
-                    i + 1,
-                    email.isRead() ? "✓" : "✉",
-                    email.getSenderName(),
-                    email.getSubject(),
-                    email.getTimestamp()
-                );
-            }
-            
-            System.out.print("\nEnter email number to view (0 to go back): ");
-            int choice = Integer.parseInt(scanner.nextLine());
-            
-            if (choice > 0 && choice <= emails.size()) {
-                viewEmailDetails(emails.get(choice - 1));
-            }
-        } catch (Exception e) {
-            System.out.println("✗ Error loading inbox: " + e.getMessage());
-            e.printStackTrace();
-        }
+        browseEmailPages("Inbox", "No emails in inbox.",
+            (beforeTimestamp, beforeEmailId) -> emailService.getInboxEmailsPage(
+                currentUser.getUserId(), beforeTimestamp, beforeEmailId, PAGE_SIZE),
+            email -> String.format("[%s] %s - %s | %s",
+                email.isRead() ? "✓" : "✉",
+                email.getSenderName(),
+                email.getSubject(),
+                email.getTimestamp()));
     }
     
     /**
      * View sent emails
      */
     private static void viewSentEmails() {
+        browseEmailPages("Sent Emails", "No sent emails.",
+            (beforeTimestamp, beforeEmailId) -> emailService.getSentEmailsPage(
+                currentUser.getUserId(), beforeTimestamp, beforeEmailId, PAGE_SIZE),
+            email -> String.format("To: %s - %s | %s",
+                email.getReceiverName(),
+                email.getSubject(),
+                email.getTimestamp()));
+    }
+    
+    /**
+     * Show a mailbox listing one page at a time.
+     * The next page is only fetched when the user asks for it.
+     */
+    private static void browseEmailPages(String title, String emptyMessage,
+                                         BiFunction<Timestamp, Integer, EmailPage> pageLoader,
+                                         Function<Email, String> formatter) {
         try {
-            List<Email> emails = emailService.getSentEmails(currentUser.getUserId());
+            EmailPage page = pageLoader.apply(null, 0);
+            int pageNumber = 1;
             
-            System.out.println("\n--- Sent Emails (" + emails.size() + " emails) ---");
-            if (emails.isEmpty()) {
-                System.out.println("No sent emails.");
+            while (true) {
+                List<Email> emails = page.getEmails();
+                
+                System.out.println("\n--- " + title + " (page " + pageNumber + ", " + emails.size() + " emails) ---");
+                if (emails.isEmpty()) {
+                    System.out.println(emptyMessage);
+                    return;
+                }
+                
+                for (int i = 0; i < emails.size(); i++) {
+                    System.out.printf("%d. %s%n", i + 1, formatter.apply(emails.get(i)));
+                }
+                
+                System.out.print("\nEnter email number to view" +
+                    (page.hasMore() ? ", N for next page" : "") + " (0 to go back): ");
+                String input = scanner.nextLine().trim();
+                
+                if (page.hasMore() && input.equalsIgnoreCase("N")) {
+                    page = pageLoader.apply(page.getNextTimestamp(), page.getNextEmailId());
+                    pageNumber++;
+                    continue;
+                }
+                
+                int choice = Integer.parseInt(input);
+                if (choice > 0 && choice <= emails.size()) {
+                    viewEmailDetails(emails.get(choice - 1));
+                }
                 return;
             }
-            
-            for (int i = 0; i < emails.size(); i++) {
-                Email email = emails.get(i);
-                System.out.printf("%d. To: %s - %s | %s%n",
-                    i + 1,
-                    email.getReceiverName(),
-                    email.getSubject(),
-                    email.getTimestamp()
-                );
-            }
-            
-            System.out.print("\nEnter email number to view (0 to go back): ");
-            int choice = Integer.parseInt(scanner.nextLine());
-            
-            if (choice > 0 && choice <= emails.size()) {
-                viewEmailDetails(emails.get(choice - 1));
-            }
         } catch (Exception e) {
-            System.out.println("✗ Error loading sent emails: " + e.getMessage());
+            System.out.println("✗ Error loading " + title.toLowerCase() + ": " + e.getMessage());
             e.printStackTrace();
         }
     }
@@ -307,7 +316,9 @@ public class Main {
             }
             
             System.out.println("\n" + "-".repeat(50));
-            System.out.println(email.getBody());
+            String body = email.isBodyLoaded() ? email.getBody()
+                : emailService.getEmailBody(email.getEmailId(), currentUser.getUserId());
+            System.out.println(body != null ? body : "(message body unavailable)");
             System.out.println("=".repeat(50));
             
             // Mark as read if unread
@@ -325,8 +336,12 @@ public class Main {
      */
     private static void composeEmail() {
         System.out.println("\n--- Compose Email ---");
-        System.out.print("To (username): ");
+        System.out.print("To (usernames, comma-separated): ");
         String to = scanner.nextLine();
+        System.out.print("Cc (optional): ");
+        String cc = scanner.nextLine();
+        System.out.print("Bcc (optional): ");
+        String bcc = scanner.nextLine();
         System.out.print("Subject: ");
         String subject = scanner.nextLine();
         System.out.print("Priority (Low/Normal/High): ");
@@ -346,7 +361,8 @@ public class Main {
             email.setBody(body.toString());
             email.setPriority(priority);
             
-            boolean success = emailService.sendEmail(email, currentUser.getUserId(), to);
+            boolean success = emailService.sendEmail(email, currentUser.getUserId(),
+                EmailService.parseRecipients(to), EmailService.parseRecipients(cc), EmailService.parseRecipients(bcc));
             
             if (success) {
                 System.out.println("✓ Email sent successfully!");
@@ -374,28 +390,24 @@ public class Main {
         
         String role = choice.equals("1") ? "Receiver" : "Sender";
         
-        try {
-            List<Email> results = emailService.searchEmails(currentUser.getUserId(), searchTerm, role);
-            
-            System.out.println("\n--- Search Results (" + results.size() + " found) ---");
-            if (results.isEmpty()) {
-                System.out.println("No emails found matching your search.");
-                return;
-            }
-            
-            for (int i = 0; i < results.size(); i++) {
-                Email email = results.get(i);
-                System.out.printf("%d. %s - %s | %s%n",
-                    i + 1,
-                    role.equals("Receiver") ? email.getSenderName() : email.getReceiverName(),
-                    email.getSubject(),
-                    email.getTimestamp()
-                );
-            }
-        } catch (Exception e) {
-            System.out.println("✗ Error searching emails: " + e.getMessage());
-            e.printStackTrace();
-        }
+        System.out.println("1. Newest first");
+        System.out.println("2. Best match");
+        System.out.print("Choose: ");
+        boolean ranked = scanner.nextLine().equals("2");
+        
+        // Ranked results come back as one list of at most DEFAULT_SEARCH_LIMIT rows
+        BiFunction<Timestamp, Integer, EmailPage> pageLoader = ranked
+            ? (beforeTimestamp, beforeEmailId) -> new EmailPage(emailService.searchEmailsRanked(
+                currentUser.getUserId(), searchTerm, role, EmailService.DEFAULT_SEARCH_LIMIT), false)
+            : (beforeTimestamp, beforeEmailId) -> emailService.searchEmailsPage(
+                currentUser.getUserId(), searchTerm, role, beforeTimestamp, beforeEmailId, PAGE_SIZE);
+        
+        browseEmailPages("Search Results", "No emails found matching your search.",
+            pageLoader,
+            email -> String.format("%s - %s | %s",
+                role.equals("Receiver") ? email.getSenderName() : email.getReceiverName(),
+                email.getSubject(),
+                email.getTimestamp()));
     }
     
     /**
@@ -1,4 +1,6 @@
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -17,9 +19,13 @@ import entities.*;
 import services.*;
 
 import java.io.File;
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 /**
  * MainGUI - Professional Email Client Application
@@ -37,12 +43,27 @@ import java.util.Optional;
  */
 public class MainGUI extends Application {
     
+    // Emails fetched per page for the email table
+    private static final int PAGE_SIZE = 100;
+    
+    // Maximum rows shown for a search box query
+    private static final int SEARCH_LIMIT = 200;
+    
+    // Rows above and below the selection whose previews are prefetched
+    private static final int PREFETCH_RADIUS = 3;
+    
     // Service layer instances
     private DatabaseHelper dbHelper;
     private UserService userService;
     private EmailService emailService;
     private FolderService folderService;
     private AttachmentService attachmentService;
+    private SearchIndexService searchIndexService;
+    private FlagWriteQueue flagWriteQueue;
+    private AsyncMailService asyncService;
+    private PreviewPrefetcher previewPrefetcher;
+    private NewMailPoller newMailPoller;
+    private AttachmentGarbageCollector attachmentCollector;
     
     // Current session user
     private User currentUser;
@@ -57,12 +78,34 @@ public class MainGUI extends Application {
     private TableView<Email> emailTableView;
     private TextArea emailContentArea;
     private Label statusLabel;
+    private ProgressIndicator progressIndicator;
     private Label welcomeLabel;
+    private TextField searchField;
     
     // Current state
     private Folder selectedFolder;
     private Email selectedEmail;
     
+    // Rows of the current folder, fetched page by page as the table scrolls
+    // (null while the table shows search results)
+    private PagedEmailList pagedEmails;
+    // Whether pagedEmails is the inbox (new mail is merged into it)
+    private boolean inboxShown = false;
+    
+    // Counters last shown in the status bar (adjusted in place when new mail arrives)
+    private EmailStats shownStats;
+    
+    // Background work: the latest table load (folder or search),
+    // the latest preview and the latest statistics query. Starting a new one
+    // cancels the previous, so stale results never reach the UI.
+    private Task<?> emailLoadTask;
+    private Task<?> previewTask;
+    private Task<?> statsTask;
+    private int runningTasks = 0;
+    
+    // Set while the default folder is selected after login (its emails are already loading)
+    private boolean suppressFolderLoad = false;
+    
     /**
      * Application entry point - initializes services and shows login screen
      */
@@ -80,6 +123,41 @@ public class MainGUI extends Application {
         primaryStage.show();
     }
     
+    /**
+     * Application shutdown - release pooled database connections
+     */
+    @Override
+    public void stop() {
+        if (previewPrefetcher != null) {
+            System.out.println("Preview cache: " + previewPrefetcher);
+        }
+        if (newMailPoller != null) {
+            newMailPoller.shutdown();
+        }
+        if (attachmentCollector != null) {
+            attachmentCollector.shutdown();
+        }
+        if (asyncService != null) {
+            asyncService.shutdown();
+        }
+        if (flagWriteQueue != null) {
+            flagWriteQueue.shutdown();
+        }
+        if (emailService != null) {
+            System.out.println("Email bodies: " + emailService.getBodyCodec());
+        }
+        if (attachmentService != null) {
+            System.out.println("Attachment store: " + attachmentService.getStore());
+            attachmentService.shutdown();
+        }
+        if (searchIndexService != null) {
+            searchIndexService.closeAll();
+        }
+        if (dbHelper != null) {
+            dbHelper.shutdown();
+        }
+    }
+    
     /**
      * Initialize all service layer components
      */
@@ -92,6 +170,37 @@ public class MainGUI extends Application {
             emailService = new EmailService(dbHelper);
             folderService = new FolderService(dbHelper);
             attachmentService = new AttachmentService(dbHelper);
+            searchIndexService = new SearchIndexService(dbHelper);
+            emailService.setSearchIndexService(searchIndexService);
+            
+            // Read/star changes from browsing are written in the background;
+            // the counters in the status bar follow once a batch is written
+            flagWriteQueue = new FlagWriteQueue(emailService);
+            flagWriteQueue.setFlushListener(userId -> Platform.runLater(() -> {
+                if (currentUser != null && currentUser.getUserId() == userId) {
+                    updateStatusBar();
+                }
+            }));
+            
+            // Background database calls for the UI (bounded by the connection pool)
+            asyncService = new AsyncMailService(dbHelper, userService, emailService,
+                                                folderService, attachmentService);
+            previewPrefetcher = new PreviewPrefetcher(emailService, attachmentService, asyncService.asExecutor());
+            // Attachments saved after a send, deleted, or collected change cached previews
+            attachmentService.setChangeListener(previewPrefetcher::invalidate);
+            
+            // Inbox is checked for mail above the highest EmailID seen, at an interval that backs off when idle
+            newMailPoller = new NewMailPoller(emailService, searchIndexService);
+            newMailPoller.setListener((userId, emails, truncated) ->
+                Platform.runLater(() -> showNewMail(userId, emails, truncated)));
+            
+            // Files no attachment uses any more are swept in the background (0 = off)
+            long gcIntervalMinutes = Long.parseLong(dbHelper.getSetting("attachments.gc.interval", "60").trim());
+            attachmentCollector = new AttachmentGarbageCollector(dbHelper, attachmentService);
+            if (gcIntervalMinutes > 0) {
+                attachmentCollector.start(gcIntervalMinutes * 60_000L,
+                        Boolean.parseBoolean(dbHelper.getSetting("attachments.gc.dryrun", "false").trim()));
+            }
             
             System.out.println("Services initialized successfully");
         } catch (Exception e) {
@@ -259,29 +368,34 @@ public class MainGUI extends Application {
      * Handle login authentication
      */
     private void handleLogin(String username, String password, Label statusLabel) {
-        try {
+        statusLabel.setStyle("-fx-text-fill: #7f8c8d;");
+        statusLabel.setText("Logging in...");
+        
+        runInBackground(() -> {
             User user = userService.login(username, password);
-            
+            if (user != null) {
+                // Update last login
+                userService.updateLastLogin(user.getUserId());
+            }
+            return user;
+        }, user -> {
             if (user != null) {
                 currentUser = user;
                 statusLabel.setStyle("-fx-text-fill: #27ae60;");
                 statusLabel.setText("Login successful! Loading...");
                 
-                // Update last login
-                userService.updateLastLogin(user.getUserId());
-                
                 // Show main application
                 showEmailClient();
             } else {
                 statusLabel.setStyle("-fx-text-fill: #e74c3c;");
                 statusLabel.setText("Invalid username or password");
             }
-        } catch (Exception e) {
+        }, e -> {
             statusLabel.setStyle("-fx-text-fill: #e74c3c;");
             statusLabel.setText("Login failed. Please try again.");
             System.err.println("Login error: " + e.getMessage());
             e.printStackTrace();
-        }
+        });
     }
     
     /**
@@ -302,15 +416,23 @@ public class MainGUI extends Application {
                 return;
             }
             
-            boolean success = userService.signup(newUser);
+            statusLabel.setStyle("-fx-text-fill: #7f8c8d;");
+            statusLabel.setText("Creating account...");
             
-            if (success) {
-                statusLabel.setStyle("-fx-text-fill: #27ae60;");
-                statusLabel.setText("Signup successful! Please login with your credentials.");
-            } else {
+            runInBackground(() -> userService.signup(newUser), success -> {
+                if (success) {
+                    statusLabel.setStyle("-fx-text-fill: #27ae60;");
+                    statusLabel.setText("Signup successful! Please login with your credentials.");
+                } else {
+                    statusLabel.setStyle("-fx-text-fill: #e74c3c;");
+                    statusLabel.setText("Signup failed. Username may already exist.");
+                }
+            }, e -> {
                 statusLabel.setStyle("-fx-text-fill: #e74c3c;");
-                statusLabel.setText("Signup failed. Username may already exist.");
-            }
+                statusLabel.setText("Signup failed. Please try again.");
+                System.err.println("Signup error: " + e.getMessage());
+                e.printStackTrace();
+            });
         } catch (Exception e) {
             statusLabel.setStyle("-fx-text-fill: #e74c3c;");
             statusLabel.setText("Signup failed. Please try again.");
@@ -341,10 +463,11 @@ public class MainGUI extends Application {
         mainAppScene.getStylesheets().add("file:src/resources/styles.css");
         primaryStage.setScene(mainAppScene);
         
-        // Load initial data
-        loadFolders();
+        // Load initial data - folders, inbox and statistics are fetched concurrently
+        newMailPoller.start(currentUser.getUserId());
         loadInboxEmails();
-        updateStatusBar();
+        loadFolders();
+        openSearchIndex();
     }
     
     /**
@@ -400,6 +523,13 @@ public class MainGUI extends Application {
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
         
+        // Search box - enabled once the mailbox index is loaded
+        searchField = new TextField();
+        searchField.setPromptText("Indexing mailbox...");
+        searchField.setPrefWidth(260);
+        searchField.setDisable(true);
+        searchField.textProperty().addListener((obs, oldText, newText) -> searchMailbox(newText));
+        
         // Compose button
         Button composeBtn = new Button("✉ Compose");
         composeBtn.getStyleClass().add("primary-button");
@@ -420,7 +550,7 @@ public class MainGUI extends Application {
         logoutBtn.getStyleClass().add("danger-button");
         logoutBtn.setOnAction(e -> handleLogout());
         
-        toolbar.getChildren().addAll(welcomeLabel, spacer, composeBtn, refreshBtn, settingsBtn, logoutBtn);
+        toolbar.getChildren().addAll(welcomeLabel, spacer, searchField, composeBtn, refreshBtn, settingsBtn, logoutBtn);
         return toolbar;
     }
     
@@ -444,6 +574,7 @@ public class MainGUI extends Application {
         Label emailLabel = new Label("Emails");
         emailLabel.setFont(Font.font("Arial", FontWeight.BOLD, 14));
         emailTableView = createEmailTableView();
+        VBox.setVgrow(emailTableView, Priority.ALWAYS);
         centerPanel.getChildren().addAll(emailLabel, emailTableView);
         
         // Right panel: Email content preview
@@ -472,7 +603,9 @@ public class MainGUI extends Application {
         treeView.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
             if (newVal != null && newVal.getValue() != null) {
                 selectedFolder = newVal.getValue();
-                loadEmailsForFolder(selectedFolder);
+                if (!suppressFolderLoad) {
+                    loadEmailsForFolder(selectedFolder);
+                }
             }
         });
         
@@ -553,14 +686,23 @@ public class MainGUI extends Application {
         
         tableView.getColumns().addAll(priorityCol, readCol, fromToCol, subjectCol, attachCol, dateCol);
         
+        // Shift/Ctrl-click selects several rows; the context menu acts on all of them
+        tableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        
+        // Folder listings are paged newest first by the database and cannot be
+        // re-sorted in memory; search results (a plain list) still can
+        tableView.setSortPolicy(table ->
+            !(table.getItems() instanceof PagedEmailList) && TableView.DEFAULT_SORT_POLICY.call(table));
+        
         // Row selection listener
         tableView.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
-            if (newVal != null) {
+            if (newVal != null && !PagedEmailList.isPlaceholder(newVal)) {
+                newMailPoller.userActive();
                 selectedEmail = newVal;
                 displayEmailContent(newVal);
                 
-                // Mark as read if unread
-                if (!newVal.isRead()) {
+                // Mark as read if unread (own sent copies have no read state)
+                if (!newVal.isRead() && !newVal.isSentCopy()) {
                     markEmailAsRead(newVal);
                 }
             }
@@ -573,7 +715,8 @@ public class MainGUI extends Application {
     }
     
     /**
-     * Create context menu for email table
+     * Create context menu for email table.
+     * Every action except Reply applies to all selected rows with one bulk call.
      */
     private ContextMenu createEmailContextMenu() {
         ContextMenu contextMenu = new ContextMenu();
@@ -581,28 +724,76 @@ public class MainGUI extends Application {
         MenuItem replyItem = new MenuItem("Reply");
         replyItem.setOnAction(e -> {
             if (selectedEmail != null) {
-                showReplyDialog(selectedEmail);
+                Email original = selectedEmail;
+                int userId = currentUser.getUserId();
+                runInBackground(() -> getBody(original, userId), body -> showReplyDialog(original, body), ex -> {
+                    showError("Error", "Failed to load the original message.");
+                    System.err.println("Error loading email body: " + ex.getMessage());
+                });
             }
         });
         
+        MenuItem readItem = new MenuItem("Mark as Read");
+        readItem.setOnAction(e -> markEmailsAsRead(getSelectedEmails()));
+        
         MenuItem starItem = new MenuItem("Star/Unstar");
-        starItem.setOnAction(e -> {
-            if (selectedEmail != null) {
-                toggleStar(selectedEmail);
-            }
-        });
+        starItem.setOnAction(e -> toggleStar(getSelectedEmails()));
+        
+        Menu moveMenu = new Menu("Move to");
         
         MenuItem deleteItem = new MenuItem("Delete");
-        deleteItem.setOnAction(e -> {
-            if (selectedEmail != null) {
-                deleteEmail(selectedEmail);
+        deleteItem.setOnAction(e -> deleteEmails(getSelectedEmails()));
+        
+        // Folder list and labels follow the current selection
+        contextMenu.setOnShowing(e -> {
+            int count = getSelectedEmails().size();
+            replyItem.setDisable(count != 1);
+            readItem.setDisable(count == 0);
+            starItem.setDisable(count == 0);
+            deleteItem.setDisable(count == 0);
+            deleteItem.setText(count > 1 ? "Delete " + count + " emails" : "Delete");
+            
+            moveMenu.getItems().clear();
+            if (folderTreeView.getRoot() != null) {
+                for (TreeItem<Folder> item : folderTreeView.getRoot().getChildren()) {
+                    Folder folder = item.getValue();
+                    if (selectedFolder != null && folder.getFolderId() == selectedFolder.getFolderId()) {
+                        continue;
+                    }
+                    MenuItem folderItem = new MenuItem(folder.getName());
+                    folderItem.setOnAction(ev -> moveEmails(getSelectedEmails(), folder));
+                    moveMenu.getItems().add(folderItem);
+                }
             }
+            moveMenu.setDisable(count == 0 || moveMenu.getItems().isEmpty());
         });
         
-        contextMenu.getItems().addAll(replyItem, starItem, new SeparatorMenuItem(), deleteItem);
+        contextMenu.getItems().addAll(replyItem, readItem, starItem, moveMenu, new SeparatorMenuItem(), deleteItem);
         return contextMenu;
     }
     
+    /**
+     * Snapshot of the selected table rows
+     */
+    private List<Email> getSelectedEmails() {
+        List<Email> selected = new ArrayList<>();
+        for (Email email : emailTableView.getSelectionModel().getSelectedItems()) {
+            // Rows of a page still being fetched cannot be acted on
+            if (email != null && !PagedEmailList.isPlaceholder(email)) {
+                selected.add(email);
+            }
+        }
+        return selected;
+    }
+    
+    private static List<Integer> emailIds(List<Email> emails) {
+        List<Integer> ids = new ArrayList<>(emails.size());
+        for (Email email : emails) {
+            ids.add(email.getEmailId());
+        }
+        return ids;
+    }
+    
     /**
      * Create email content display area
      */
@@ -624,6 +815,11 @@ public class MainGUI extends Application {
         statusBar.setAlignment(Pos.CENTER_LEFT);
         statusBar.getStyleClass().add("status-bar");
         
+        // Spins while any background database work is running
+        progressIndicator = new ProgressIndicator();
+        progressIndicator.setPrefSize(16, 16);
+        progressIndicator.setVisible(runningTasks > 0);
+        
         statusLabel = new Label("Status: Ready");
         statusLabel.setFont(Font.font("Arial", 11));
         
@@ -634,18 +830,21 @@ public class MainGUI extends Application {
         connectionLabel.setStyle("-fx-text-fill: #27ae60;");
         connectionLabel.setFont(Font.font("Arial", 11));
         
-        statusBar.getChildren().addAll(statusLabel, spacer, connectionLabel);
+        statusBar.getChildren().addAll(progressIndicator, statusLabel, spacer, connectionLabel);
         return statusBar;
     }
     
     /**
-     * Load folders into tree view
+     * Load folders into tree view (in the background)
      */
     private void loadFolders() {
-        try {
-            List<Folder> folders = folderService.getUserFolders(currentUser.getUserId());
+        int userId = currentUser.getUserId();
+        runInBackground(() -> folderService.getUserFolders(userId), folders -> {
+            if (!isCurrentUser(userId)) {
+                return;
+            }
             
-            TreeItem<Folder> root = new TreeItem<>(new Folder(0, currentUser.getUserId(), "Root", null));
+            TreeItem<Folder> root = new TreeItem<>(new Folder(0, userId, "Root", null));
             
             // Separate system and custom folders
             List<Folder> systemFolders = new ArrayList<>();
@@ -677,104 +876,244 @@ public class MainGUI extends Application {
             folderTreeView.setRoot(root);
             root.setExpanded(true);
             
-            // Select inbox by default
+            // Select inbox by default; right after login its emails are already loading
             if (!root.getChildren().isEmpty()) {
+                suppressFolderLoad = selectedFolder == null;
                 folderTreeView.getSelectionModel().select(root.getChildren().get(0));
+                suppressFolderLoad = false;
             }
             
             System.out.println("Loaded " + folders.size() + " folders");
-        } catch (Exception e) {
+        }, e -> {
             showError("Folder Load Error", "Failed to load folders.");
             System.err.println("Error loading folders: " + e.getMessage());
             e.printStackTrace();
-        }
+        });
     }
     
     /**
      * Load inbox emails
      */
     private void loadInboxEmails() {
-        try {
-            List<Email> emails = emailService.getInboxEmails(currentUser.getUserId());
-            updateEmailTable(emails);
-            System.out.println("Loaded " + emails.size() + " inbox emails");
-        } catch (Exception e) {
-            showError("Email Load Error", "Failed to load inbox emails.");
-            System.err.println("Error loading inbox: " + e.getMessage());
-            e.printStackTrace();
-        }
+        int userId = currentUser.getUserId();
+        loadFirstPage("Inbox", (beforeTimestamp, beforeEmailId) ->
+            emailService.getInboxEmailsPage(userId, beforeTimestamp, beforeEmailId, PAGE_SIZE));
     }
     
     /**
      * Load emails for selected folder
      */
     private void loadEmailsForFolder(Folder folder) {
-        try {
-            List<Email> emails;
-            
-            // Determine which emails to load based on folder name
-            String folderName = folder.getName().toLowerCase();
-            
-            if (folderName.equals("inbox")) {
-                emails = emailService.getInboxEmails(currentUser.getUserId());
-            } else if (folderName.equals("sent")) {
-                emails = emailService.getSentEmails(currentUser.getUserId());
-            } else {
-                // Load emails from specific folder
-                emails = emailService.getEmailsByFolder(currentUser.getUserId(), folder.getFolderId());
+        int userId = currentUser.getUserId();
+        int folderId = folder.getFolderId();
+        
+        // Determine which emails to load based on folder name
+        String folderName = folder.getName().toLowerCase();
+        
+        if (folderName.equals("inbox")) {
+            loadFirstPage(folder.getName(), (beforeTimestamp, beforeEmailId) ->
+                emailService.getInboxEmailsPage(userId, beforeTimestamp, beforeEmailId, PAGE_SIZE));
+        } else if (folderName.equals("sent")) {
+            loadFirstPage(folder.getName(), (beforeTimestamp, beforeEmailId) ->
+                emailService.getSentEmailsPage(userId, beforeTimestamp, beforeEmailId, PAGE_SIZE));
+        } else {
+            // Load emails from specific folder
+            loadFirstPage(folder.getName(), (beforeTimestamp, beforeEmailId) ->
+                emailService.getEmailsByFolderPage(userId, folderId, beforeTimestamp, beforeEmailId, PAGE_SIZE));
+        }
+    }
+    
+    /**
+     * Show a folder. Only its first page is loaded here, in the background;
+     * selecting another folder before it finishes cancels it. Later pages are
+     * fetched by PagedEmailList as the table scrolls.
+     */
+    private void loadFirstPage(String folderName, BiFunction<Timestamp, Integer, EmailPage> pageLoader) {
+        int userId = currentUser.getUserId();
+        boolean inbox = folderName.equalsIgnoreCase("Inbox");
+        emailTableView.setPlaceholder(new Label("Loading " + folderName + "..."));
+        updateStatusBar();
+        newMailPoller.userActive();
+        
+        // Loaded rows must reflect read/star changes still in the queue
+        BiFunction<Timestamp, Integer, EmailPage> flushingLoader = (beforeTimestamp, beforeEmailId) -> {
+            flagWriteQueue.flush(userId);
+            return pageLoader.apply(beforeTimestamp, beforeEmailId);
+        };
+        
+        startEmailLoad(() -> flushingLoader.apply(null, 0), page -> {
+            PagedEmailList emails = new PagedEmailList(page, flushingLoader, PAGE_SIZE, asyncService.asExecutor());
+            emails.setStaleListener(this::refreshCurrentFolder);
+            showEmails(emails);
+            inboxShown = inbox;
+            if (inbox) {
+                // Rows just loaded are not new mail
+                newMailPoller.advanceCursor(page.getEmails());
             }
-            
-            updateEmailTable(emails);
-            updateStatusBar();
-            System.out.println("Loaded " + emails.size() + " emails for folder: " + folder.getName());
-        } catch (Exception e) {
-            showError("Email Load Error", "Failed to load emails for folder: " + folder.getName());
+            emailTableView.setPlaceholder(new Label("No emails"));
+            System.out.println("Loaded " + page.size() + " emails for folder: " + folderName);
+        }, e -> {
+            emailTableView.setPlaceholder(new Label("Failed to load emails"));
+            showError("Email Load Error", "Failed to load emails for folder: " + folderName);
             System.err.println("Error loading folder emails: " + e.getMessage());
             e.printStackTrace();
+        });
+    }
+    
+    /**
+     * Load (or build) the user's search index in the background,
+     * then enable the search box
+     */
+    private void openSearchIndex() {
+        int userId = currentUser.getUserId();
+        Thread indexer = new Thread(() -> {
+            searchIndexService.open(userId);
+            Platform.runLater(() -> {
+                if (currentUser != null && currentUser.getUserId() == userId) {
+                    searchField.setPromptText("🔍 Search mail");
+                    searchField.setDisable(false);
+                }
+            });
+        }, "search-index-" + userId);
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+    
+    /**
+     * Show search box matches in the email table; an empty box restores the folder.
+     * Matching runs against the in-process index, so only the matched rows are read from the database.
+     */
+    private void searchMailbox(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            refreshCurrentFolder();
+            return;
         }
+        
+        int userId = currentUser.getUserId();
+        
+        // Each keystroke cancels the previous search
+        double[] indexMillis = new double[1];
+        startEmailLoad(() -> {
+            long start = System.nanoTime();
+            int[] emailIds = searchIndexService.searchIds(userId, query, SEARCH_LIMIT);
+            indexMillis[0] = (System.nanoTime() - start) / 1_000_000.0;
+            return emailService.getEmailsByIds(userId, emailIds);
+        }, results -> {
+            updateEmailTable(results);
+            statusLabel.setText(String.format("%d results for \"%s\" (index lookup %.2f ms)",
+                results.size(), query.trim(), indexMillis[0]));
+        }, e -> {
+            statusLabel.setText("Search failed");
+            System.err.println("Error searching mailbox: " + e.getMessage());
+            e.printStackTrace();
+        });
     }
     
     /**
      * Update email table with new data
      */
     private void updateEmailTable(List<Email> emails) {
-        ObservableList<Email> emailList = FXCollections.observableArrayList(emails);
-        emailTableView.setItems(emailList);
+        showEmails(FXCollections.observableArrayList(emails));
+    }
+    
+    /**
+     * Replace the table contents, stopping the page fetches of the previous folder
+     */
+    private void showEmails(ObservableList<Email> emails) {
+        if (pagedEmails != null) {
+            pagedEmails.dispose();
+        }
+        pagedEmails = emails instanceof PagedEmailList ? (PagedEmailList) emails : null;
+        inboxShown = false;
+        emailTableView.setItems(emails);
     }
     
     /**
-     * Display email content in preview pane
+     * Display email content in preview pane.
+     * A cached preview shows at once; otherwise headers show while body and
+     * attachments load in the background (selecting another email cancels
+     * the load). Either way the neighbouring rows are prefetched.
      */
     private void displayEmailContent(Email email) {
-        try {
-            StringBuilder content = new StringBuilder();
-            
-            content.append("From: ").append(email.getSenderName()).append("\n");
-            content.append("To: ").append(email.getReceiverName()).append("\n");
-            content.append("Subject: ").append(email.getSubject()).append("\n");
-            content.append("Date: ").append(email.getTimestamp()).append("\n");
-            content.append("Priority: ").append(email.getPriority()).append("\n");
-            
-            // Load attachments if any
-            List<Attachment> attachments = attachmentService.getEmailAttachments(email.getEmailId());
-            if (!attachments.isEmpty()) {
-                content.append("Attachments: ").append(attachments.size()).append(" file(s)\n");
-                for (Attachment att : attachments) {
-                    content.append("  - ").append(att.getFileName())
-                           .append(" (").append(att.getFormattedSize()).append(")\n");
-                }
+        cancelTask(previewTask);
+        int userId = currentUser.getUserId();
+        
+        PreviewPrefetcher.Preview cached = previewPrefetcher.getIfPresent(userId, email.getEmailId());
+        if (cached != null) {
+            emailContentArea.setText(formatPreview(email, cached));
+        } else {
+            emailContentArea.setText(formatHeaders(email) + "\nLoading...");
+            previewTask = runInBackground(() -> previewPrefetcher.load(userId, email),
+                preview -> emailContentArea.setText(formatPreview(email, preview)), e -> {
+                    emailContentArea.setText("Error loading email content.");
+                    System.err.println("Error displaying email: " + e.getMessage());
+                    e.printStackTrace();
+                });
+        }
+        
+        prefetchNeighbours(userId);
+    }
+    
+    /**
+     * Prefetch the previews of the rows around the selected one
+     */
+    private void prefetchNeighbours(int userId) {
+        List<Email> items = emailTableView.getItems();
+        int selected = emailTableView.getSelectionModel().getSelectedIndex();
+        if (selected < 0) {
+            return;
+        }
+        
+        List<Email> neighbours = new ArrayList<>();
+        int from = Math.max(0, selected - PREFETCH_RADIUS);
+        int to = Math.min(items.size() - 1, selected + PREFETCH_RADIUS);
+        for (int i = from; i <= to; i++) {
+            Email email = items.get(i);
+            if (i != selected && !PagedEmailList.isPlaceholder(email)) {
+                neighbours.add(email);
             }
-            
-            content.append("\n");
-            content.append("─".repeat(50)).append("\n\n");
-            content.append(email.getBody());
-            
-            emailContentArea.setText(content.toString());
-        } catch (Exception e) {
-            emailContentArea.setText("Error loading email content.");
-            System.err.println("Error displaying email: " + e.getMessage());
-            e.printStackTrace();
         }
+        if (!neighbours.isEmpty()) {
+            previewPrefetcher.prefetch(userId, neighbours);
+        }
+    }
+    
+    private static String formatHeaders(Email email) {
+        StringBuilder headers = new StringBuilder();
+        headers.append("From: ").append(email.getSenderName()).append("\n");
+        headers.append("To: ").append(email.getReceiverName()).append("\n");
+        headers.append("Subject: ").append(email.getSubject()).append("\n");
+        headers.append("Date: ").append(email.getTimestamp()).append("\n");
+        headers.append("Priority: ").append(email.getPriority()).append("\n");
+        return headers.toString();
+    }
+    
+    private static String formatPreview(Email email, PreviewPrefetcher.Preview preview) {
+        StringBuilder content = new StringBuilder(formatHeaders(email));
+        
+        // List attachments if any
+        List<Attachment> attachments = preview.getAttachments();
+        if (!attachments.isEmpty()) {
+            content.append("Attachments: ").append(attachments.size()).append(" file(s)\n");
+            for (Attachment att : attachments) {
+                content.append("  - ").append(att.getFileName())
+                       .append(" (").append(att.getFormattedSize()).append(")\n");
+            }
+        }
+        
+        content.append("\n");
+        content.append("─".repeat(50)).append("\n\n");
+        content.append(preview.getBody() != null ? preview.getBody() : "(message body unavailable)");
+        return content.toString();
+    }
+    
+    /**
+     * Get the body of a listed email (table rows hold headers only).
+     * May query the database - call from background work only.
+     */
+    private String getBody(Email email, int userId) {
+        String body = previewPrefetcher.load(userId, email).getBody();
+        return body != null ? body : "(message body unavailable)";
     }
     
     /**
@@ -793,7 +1132,13 @@ public class MainGUI extends Application {
         grid.setPadding(new Insets(20));
         
         TextField toField = new TextField();
-        toField.setPromptText("Recipient username");
+        toField.setPromptText("Recipient usernames, comma-separated");
+        
+        TextField ccField = new TextField();
+        ccField.setPromptText("Cc (optional)");
+        
+        TextField bccField = new TextField();
+        bccField.setPromptText("Bcc (optional)");
         
         TextField subjectField = new TextField();
         subjectField.setPromptText("Email subject");
@@ -834,15 +1179,19 @@ public class MainGUI extends Application {
         
         grid.add(new Label("To:"), 0, 0);
         grid.add(toField, 1, 0);
-        grid.add(new Label("Subject:"), 0, 1);
-        grid.add(subjectField, 1, 1);
-        grid.add(new Label("Priority:"), 0, 2);
-        grid.add(priorityCombo, 1, 2);
-        grid.add(new Label("Body:"), 0, 3);
-        grid.add(bodyArea, 1, 3);
-        grid.add(new Label("Attachments:"), 0, 4);
-        grid.add(attachmentList, 1, 4);
-        grid.add(attachButtons, 1, 5);
+        grid.add(new Label("Cc:"), 0, 1);
+        grid.add(ccField, 1, 1);
+        grid.add(new Label("Bcc:"), 0, 2);
+        grid.add(bccField, 1, 2);
+        grid.add(new Label("Subject:"), 0, 3);
+        grid.add(subjectField, 1, 3);
+        grid.add(new Label("Priority:"), 0, 4);
+        grid.add(priorityCombo, 1, 4);
+        grid.add(new Label("Body:"), 0, 5);
+        grid.add(bodyArea, 1, 5);
+        grid.add(new Label("Attachments:"), 0, 6);
+        grid.add(attachmentList, 1, 6);
+        grid.add(attachButtons, 1, 7);
         
         dialog.getDialogPane().setContent(grid);
         dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
@@ -850,7 +1199,7 @@ public class MainGUI extends Application {
         // Handle send action
         Optional<ButtonType> result = dialog.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            handleSendEmail(toField.getText(), subjectField.getText(), 
+            handleSendEmail(toField.getText(), ccField.getText(), bccField.getText(), subjectField.getText(), 
                           bodyArea.getText(), priorityCombo.getValue(), selectedFiles);
         }
     }
@@ -858,10 +1207,15 @@ public class MainGUI extends Application {
     /**
      * Handle sending email
      */
-    private void handleSendEmail(String to, String subject, String body, String priority, ObservableList<File> attachments) {
+    private void handleSendEmail(String to, String cc, String bcc, String subject, String body,
+                                 String priority, ObservableList<File> attachments) {
         try {
+            List<String> toList = EmailService.parseRecipients(to);
+            List<String> ccList = EmailService.parseRecipients(cc);
+            List<String> bccList = EmailService.parseRecipients(bcc);
+            
             // Validate inputs
-            if (to.isEmpty() || subject.isEmpty() || body.isEmpty()) {
+            if ((toList.isEmpty() && ccList.isEmpty() && bccList.isEmpty()) || subject.isEmpty() || body.isEmpty()) {
                 showError("Validation Error", "Please fill in all required fields.");
                 return;
             }
@@ -872,22 +1226,36 @@ public class MainGUI extends Application {
             email.setBody(body);
             email.setPriority(priority);
             
-            // Send email
-            boolean success = emailService.sendEmail(email, currentUser.getUserId(), to);
+            // Send email and save attachments in the background
+            int userId = currentUser.getUserId();
+            List<File> files = new ArrayList<>(attachments);
+            statusLabel.setText("Sending...");
             
-            if (success) {
-                // Save attachments if any
-                if (!attachments.isEmpty()) {
-                    for (File file : attachments) {
-                        attachmentService.saveAttachment(email.getEmailId(), file);
+            runInBackground(() -> {
+                boolean success = emailService.sendEmail(email, userId, toList, ccList, bccList);
+                
+                if (success && !files.isEmpty()) {
+                    // Copied in parallel, then stored with one batched insert
+                    int saved = attachmentService.saveAttachments(email.getEmailId(), files);
+                    if (saved < files.size()) {
+                        System.err.println((files.size() - saved) + " attachment(s) could not be saved");
                     }
                 }
-                
-                showInfo("Success", "Email sent successfully!");
-                refreshCurrentFolder();
-            } else {
-                showError("Send Failed", "Failed to send email. Recipient may not exist.");
-            }
+                return success;
+            }, success -> {
+                if (success) {
+                    showInfo("Success", "Email sent successfully!");
+                    refreshCurrentFolder();
+                } else {
+                    statusLabel.setText("Send failed");
+                    showError("Send Failed", "Failed to send email. Recipient may not exist.");
+                }
+            }, e -> {
+                statusLabel.setText("Send failed");
+                showError("Send Error", "An error occurred while sending the email.");
+                System.err.println("Error sending email: " + e.getMessage());
+                e.printStackTrace();
+            });
         } catch (Exception e) {
             showError("Send Error", "An error occurred while sending the email.");
             System.err.println("Error sending email: " + e.getMessage());
@@ -896,9 +1264,9 @@ public class MainGUI extends Application {
     }
     
     /**
-     * Show reply dialog
+     * Show reply dialog (originalBody is quoted below the reply)
      */
-    private void showReplyDialog(Email originalEmail) {
+    private void showReplyDialog(Email originalEmail, String originalBody) {
         Dialog<ButtonType> dialog = new Dialog<>();
         dialog.setTitle("Reply to Email");
         dialog.setHeaderText("Reply to: " + originalEmail.getSubject());
@@ -917,7 +1285,7 @@ public class MainGUI extends Application {
         bodyArea.setWrapText(true);
         
         // Include original message
-        bodyArea.setText("\n\n--- Original Message ---\n" + originalEmail.getBody());
+        bodyArea.setText("\n\n--- Original Message ---\n" + originalBody);
         
         grid.add(toLabel, 0, 0);
         grid.add(subjectLabel, 0, 1);
@@ -934,109 +1302,243 @@ public class MainGUI extends Application {
             reply.setBody(bodyArea.getText());
             reply.setPriority("Normal");
             
-            emailService.sendEmail(reply, currentUser.getUserId(), originalEmail.getSenderName());
-            showInfo("Success", "Reply sent successfully!");
-            refreshCurrentFolder();
+            int userId = currentUser.getUserId();
+            runInBackground(() -> emailService.sendEmail(reply, userId, originalEmail.getSenderName()), success -> {
+                if (success) {
+                    showInfo("Success", "Reply sent successfully!");
+                    refreshCurrentFolder();
+                } else {
+                    showError("Send Failed", "Failed to send reply.");
+                }
+            }, e -> {
+                showError("Send Error", "An error occurred while sending the reply.");
+                System.err.println("Error sending reply: " + e.getMessage());
+                e.printStackTrace();
+            });
         }
     }
     
     /**
-     * Mark email as read
+     * Mark email as read.
+     * The row updates at once; the database write is queued, so browsing
+     * through messages never waits for an UPDATE.
      */
     private void markEmailAsRead(Email email) {
-        try {
-            boolean success = emailService.markAsRead(email.getEmailId(), currentUser.getUserId());
-            if (success) {
-                email.setRead(true);
+        flagWriteQueue.markAsRead(email.getEmailId(), currentUser.getUserId());
+        email.setRead(true);
+        emailTableView.refresh();
+    }
+    
+    /**
+     * Mark the given emails as read with one bulk update
+     */
+    private void markEmailsAsRead(List<Email> emails) {
+        List<Email> unread = new ArrayList<>();
+        for (Email email : emails) {
+            if (!email.isRead() && !email.isSentCopy()) {
+                unread.add(email);
+            }
+        }
+        if (unread.isEmpty()) {
+            return;
+        }
+        
+        int userId = currentUser.getUserId();
+        runInBackground(() -> emailService.markAsRead(emailIds(unread), userId), updated -> {
+            if (updated > 0) {
+                for (Email email : unread) {
+                    email.setRead(true);
+                }
                 emailTableView.refresh();
                 updateStatusBar();
-                System.out.println("Marked email as read: " + email.getEmailId());
+                System.out.println("Marked " + updated + " emails as read");
             }
-        } catch (Exception e) {
-            System.err.println("Error marking email as read: " + e.getMessage());
+        }, e -> {
+            showError("Error", "Failed to mark emails as read.");
+            System.err.println("Error marking emails as read: " + e.getMessage());
             e.printStackTrace();
-        }
+        });
     }
     
     /**
-     * Toggle star status of email
+     * Star the given emails, or unstar them if all are already starred
      */
-    private void toggleStar(Email email) {
-        try {
-            boolean success = emailService.toggleStar(email.getEmailId(), currentUser.getUserId());
-            if (success) {
-                email.setStarred(!email.isStarred());
-                showInfo("Success", email.isStarred() ? "Email starred!" : "Email unstarred!");
-                refreshCurrentFolder();
+    private void toggleStar(List<Email> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        
+        boolean anyUnstarred = false;
+        for (Email email : emails) {
+            if (!email.isStarred()) {
+                anyUnstarred = true;
+                break;
             }
-        } catch (Exception e) {
+        }
+        boolean star = anyUnstarred;
+        
+        int userId = currentUser.getUserId();
+        runInBackground(() -> emailService.setStarred(emailIds(emails), userId, star), updated -> {
+            if (updated > 0) {
+                for (Email email : emails) {
+                    email.setStarred(star);
+                }
+                emailTableView.refresh();
+                statusLabel.setText((star ? "Starred " : "Unstarred ") + emails.size() + " email(s)");
+            } else {
+                showError("Error", "Failed to update star status.");
+            }
+        }, e -> {
             showError("Error", "Failed to update star status.");
             System.err.println("Error toggling star: " + e.getMessage());
             e.printStackTrace();
+        });
+    }
+    
+    /**
+     * Move the given emails to a folder with one bulk update
+     */
+    private void moveEmails(List<Email> emails, Folder target) {
+        if (emails.isEmpty()) {
+            return;
         }
+        
+        int userId = currentUser.getUserId();
+        runInBackground(() -> folderService.moveEmailsToFolder(emailIds(emails), userId, target.getFolderId()), moved -> {
+            if (moved > 0) {
+                refreshCurrentFolder();
+                System.out.println("Moved " + moved + " email(s) to " + target.getName());
+            } else {
+                showError("Error", "Failed to move emails.");
+            }
+        }, e -> {
+            showError("Move Error", "An error occurred while moving the emails.");
+            System.err.println("Error moving emails: " + e.getMessage());
+            e.printStackTrace();
+        });
     }
     
     /**
-     * Delete email
+     * Delete the given emails with one bulk update
      */
-    private void deleteEmail(Email email) {
+    private void deleteEmails(List<Email> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        
         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
         confirm.setTitle("Confirm Delete");
-        confirm.setHeaderText("Delete this email?");
+        confirm.setHeaderText(emails.size() == 1 ? "Delete this email?" : "Delete " + emails.size() + " emails?");
         confirm.setContentText("This action cannot be undone.");
         
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            try {
-                boolean success = emailService.deleteEmail(email.getEmailId(), currentUser.getUserId());
-                if (success) {
-                    showInfo("Success", "Email deleted successfully!");
+            int userId = currentUser.getUserId();
+            runInBackground(() -> emailService.deleteEmails(emailIds(emails), userId), deleted -> {
+                if (deleted > 0) {
+                    showInfo("Success", emails.size() == 1 ? "Email deleted successfully!"
+                                                           : emails.size() + " emails deleted successfully!");
                     refreshCurrentFolder();
                 } else {
                     showError("Error", "Failed to delete email.");
                 }
-            } catch (Exception e) {
+            }, e -> {
                 showError("Delete Error", "An error occurred while deleting the email.");
                 System.err.println("Error deleting email: " + e.getMessage());
                 e.printStackTrace();
-            }
+            });
         }
     }
     
     /**
-     * Refresh current folder
+     * Refresh current folder (the folder load also refreshes the status bar)
      */
     private void refreshCurrentFolder() {
+        if (currentUser == null) {
+            return;
+        }
         if (selectedFolder != null) {
             loadEmailsForFolder(selectedFolder);
         } else {
             loadInboxEmails();
         }
-        updateStatusBar();
     }
     
     /**
-     * Update status bar with email counts
+     * Update status bar with email counts (in the background; a newer update cancels this one)
      */
     private void updateStatusBar() {
-        try {
-            EmailStats stats = emailService.getEmailStats(currentUser.getUserId());
-            statusLabel.setText(String.format("Total: %d | Unread: %d | Sent: %d | Received: %d",
-                stats.getTotalEmails(), stats.getUnreadEmails(), 
-                stats.getSentEmails(), stats.getReceivedEmails()));
-        } catch (Exception e) {
+        if (currentUser == null) {
+            return;
+        }
+        int userId = currentUser.getUserId();
+        cancelTask(statsTask);
+        statsTask = runInBackground(() -> emailService.getEmailStats(userId), this::showStats, e -> {
             statusLabel.setText("Status: Error loading statistics");
             System.err.println("Error updating status bar: " + e.getMessage());
+        });
+    }
+    
+    private void showStats(EmailStats stats) {
+        shownStats = stats;
+        statusLabel.setText(String.format("Total: %d | Unread: %d | Sent: %d | Received: %d",
+            stats.getTotalEmails(), stats.getUnreadEmails(), 
+            stats.getSentEmails(), stats.getReceivedEmails()));
+    }
+    
+    /**
+     * Show mail found by the new-mail poller: merge it into the inbox listing
+     * and adjust the counters in place instead of reloading them
+     */
+    private void showNewMail(int userId, List<Email> emails, boolean truncated) {
+        if (!isCurrentUser(userId)) {
+            return;
         }
+        
+        if (inboxShown && pagedEmails != null) {
+            if (truncated) {
+                refreshCurrentFolder();
+            } else {
+                pagedEmails.prepend(emails);
+            }
+        }
+        
+        int unread = 0;
+        for (Email email : emails) {
+            if (!email.isRead()) {
+                unread++;
+            }
+        }
+        if (truncated || shownStats == null) {
+            updateStatusBar();
+        } else {
+            shownStats.setTotalEmails(shownStats.getTotalEmails() + emails.size());
+            shownStats.setReceivedEmails(shownStats.getReceivedEmails() + emails.size());
+            shownStats.setUnreadEmails(shownStats.getUnreadEmails() + unread);
+            showStats(shownStats);
+        }
+        
+        // Inbox counter in the folder tree
+        if (folderTreeView.getRoot() != null) {
+            for (TreeItem<Folder> item : folderTreeView.getRoot().getChildren()) {
+                Folder folder = item.getValue();
+                if (folder.getName().equalsIgnoreCase("Inbox")) {
+                    folder.setEmailCount(folder.getEmailCount() + emails.size());
+                    folder.setUnreadCount(folder.getUnreadCount() + unread);
+                    folderTreeView.refresh();
+                    break;
+                }
+            }
+        }
+        System.out.println(emails.size() + (truncated ? "+" : "") + " new email(s) for user " + userId);
     }
     
     /**
      * Show statistics dialog
      */
     private void showStatistics() {
-        try {
-            EmailStats stats = emailService.getEmailStats(currentUser.getUserId());
-            
+        int userId = currentUser.getUserId();
+        runInBackground(() -> emailService.getEmailStats(userId), stats -> {
             Alert alert = new Alert(Alert.AlertType.INFORMATION);
             alert.setTitle("Email Statistics");
             alert.setHeaderText("Your Email Statistics");
@@ -1058,11 +1560,11 @@ public class MainGUI extends Application {
             
             alert.setContentText(content);
             alert.showAndWait();
-        } catch (Exception e) {
+        }, e -> {
             showError("Error", "Failed to load statistics.");
             System.err.println("Error loading statistics: " + e.getMessage());
             e.printStackTrace();
-        }
+        });
     }
     
     /**
@@ -1123,10 +1625,102 @@ public class MainGUI extends Application {
         
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            userService.logout(currentUser);
-            currentUser = null;
-            showLoginScreen();
+            User user = currentUser;
+            int userId = user.getUserId();
+            cancelBackgroundLoads();
+            newMailPoller.stop();
+            
+            // Write pending flags before leaving; the login screen follows once they are stored
+            runInBackground(() -> {
+                flagWriteQueue.flush(userId);
+                searchIndexService.close(userId);
+                userService.logout(user);
+                return null;
+            }, ignored -> finishLogout(), e -> {
+                System.err.println("Error during logout: " + e.getMessage());
+                finishLogout();
+            });
+        }
+    }
+    
+    private void finishLogout() {
+        previewPrefetcher.clear();
+        currentUser = null;
+        selectedFolder = null;
+        selectedEmail = null;
+        shownStats = null;
+        inboxShown = false;
+        if (pagedEmails != null) {
+            pagedEmails.dispose();
+            pagedEmails = null;
+        }
+        showLoginScreen();
+    }
+    
+    /**
+     * Run database work on a background thread and hand the result to the FX thread.
+     * Tasks run through AsyncMailService, so at most db.pool.size of them query
+     * at once; the status bar spinner shows while any is running.
+     */
+    private <T> Task<T> runInBackground(Callable<T> work, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+        Task<T> task = new Task<T>() {
+            @Override
+            protected T call() throws Exception {
+                return work.call();
+            }
+        };
+        task.setOnSucceeded(e -> {
+            taskFinished();
+            onSuccess.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            taskFinished();
+            onFailure.accept(task.getException());
+        });
+        task.setOnCancelled(e -> taskFinished());
+        
+        runningTasks++;
+        if (progressIndicator != null) {
+            progressIndicator.setVisible(true);
         }
+        asyncService.asExecutor().execute(task);
+        return task;
+    }
+    
+    private void taskFinished() {
+        runningTasks--;
+        if (progressIndicator != null) {
+            progressIndicator.setVisible(runningTasks > 0);
+        }
+    }
+    
+    /**
+     * Start a table load (folder page, next page or search), cancelling the previous one
+     */
+    private <T> void startEmailLoad(Callable<T> work, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+        cancelTask(emailLoadTask);
+        emailLoadTask = runInBackground(work, onSuccess, onFailure);
+    }
+    
+    private void cancelBackgroundLoads() {
+        cancelTask(emailLoadTask);
+        cancelTask(previewTask);
+        cancelTask(statsTask);
+    }
+    
+    /**
+     * Cancel a task: one that has not started never runs, and a running one's
+     * result is dropped. Running queries are not interrupted - JDBC ignores
+     * interrupts, and a folder load may be writing queued flags.
+     */
+    private static void cancelTask(Task<?> task) {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+    
+    private boolean isCurrentUser(int userId) {
+        return currentUser != null && currentUser.getUserId() == userId;
     }
     
     /**
@@ -0,0 +1,448 @@
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import entities.Email;
+import entities.EmailPage;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+
+/**
+ * PagedEmailList - Virtualized Row Source for the Email Table
+ *
+ * An ObservableList over a folder listing that is fetched page by page
+ * with the keyset (Timestamp, EmailID) *Page queries of EmailService.
+ * TableView only asks for the rows it is about to show, so:
+ *
+ * - Only the first page is loaded before the table appears; later pages
+ *   are discovered as the user scrolls towards the end (the list grows).
+ * - Once a row in the second half of a page is shown, the next page is
+ *   fetched in the background, so scrolling rarely reaches a missing row.
+ * - Only pages within WINDOW_RADIUS of the page being viewed keep their
+ *   rows. Farther pages keep just their size and keyset cursors and are
+ *   fetched again when scrolled back into view. Memory therefore depends
+ *   on the window, not on the folder size.
+ *
+ * Rows that are not in memory read as a shared placeholder ("Loading...");
+ * a set change replaces it once the page arrives. Every page except the
+ * last holds exactly pageSize rows, so row i lives in page i / pageSize.
+ *
+ * New mail found after the list was built is merged in above the first
+ * page with prepend(); the first page's cursor starts just below its own
+ * newest row, so re-fetching it later is not disturbed by those rows.
+ *
+ * If a re-fetched page no longer matches what was shown (mail was deleted
+ * or moved meanwhile), the listing is stale and the stale listener is
+ * called so the caller can reload the folder.
+ *
+ * The list is read-only and must be used on the JavaFX application thread.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class PagedEmailList extends ObservableListBase<Email> {
+
+    // Pages kept in memory on each side of the viewed page
+    private static final int WINDOW_RADIUS = 2;
+
+    private static final Email PLACEHOLDER = createPlaceholder();
+
+    private final BiFunction<Timestamp, Integer, EmailPage> pageLoader;
+    private final int pageSize;
+    private final Executor executor;
+
+    private final List<Page> pages = new ArrayList<>();
+    // Rows merged in above the first page (new mail), newest first
+    private final List<Email> head = new ArrayList<>();
+    private boolean hasMore;
+    private int viewedPage = 0;
+    private boolean disposed = false;
+    private Runnable staleListener;
+
+    // Pages being fetched (an index equal to pages.size() is the next undiscovered page)
+    private final Set<Integer> loading = new HashSet<>();
+
+    // Metrics
+    private int fetchCount = 0;
+    private int evictionCount = 0;
+
+    /**
+     * @param firstPage first page of the folder, already loaded
+     * @param pageLoader fetches the page after a (Timestamp, EmailID) cursor; runs on the executor
+     * @param pageSize page size the loader uses
+     * @param executor background executor for page fetches
+     */
+    public PagedEmailList(EmailPage firstPage, BiFunction<Timestamp, Integer, EmailPage> pageLoader,
+                          int pageSize, Executor executor) {
+        this.pageLoader = pageLoader;
+        this.pageSize = Math.max(1, pageSize);
+        this.executor = executor;
+        // Anchor the first page at its newest row, not at "newest in the folder"
+        List<Email> rows = firstPage.getEmails();
+        if (rows.isEmpty()) {
+            this.pages.add(new Page(null, 0, rows));
+        } else {
+            Email newest = rows.get(0);
+            this.pages.add(new Page(newest.getTimestamp(), newest.getEmailId() + 1, rows));
+        }
+        this.hasMore = firstPage.hasMore();
+    }
+
+    /**
+     * Called on the FX thread when a re-fetched page shows the listing has changed
+     */
+    public void setStaleListener(Runnable staleListener) {
+        this.staleListener = staleListener;
+    }
+
+    /**
+     * Stop fetching (the table moved on to another listing)
+     */
+    public void dispose() {
+        disposed = true;
+    }
+
+    public static boolean isPlaceholder(Email email) {
+        return email == PLACEHOLDER;
+    }
+
+    /**
+     * Merge new rows in at the top of the list
+     * @param emails new emails, newest first; rows already listed are skipped
+     * @return number of rows added
+     */
+    public int prepend(List<Email> emails) {
+        if (disposed) {
+            return 0;
+        }
+        List<Email> added = new ArrayList<>();
+        for (Email email : emails) {
+            if (!isListed(email.getEmailId())) {
+                added.add(email);
+            }
+        }
+        if (added.isEmpty()) {
+            return 0;
+        }
+
+        head.addAll(0, added);
+        beginChange();
+        nextAdd(0, added.size());
+        endChange();
+        return added.size();
+    }
+
+    /**
+     * Whether an email is among the rows in memory
+     */
+    private boolean isListed(int emailId) {
+        for (Email email : head) {
+            if (email.getEmailId() == emailId) {
+                return true;
+            }
+        }
+        for (Page page : pages) {
+            if (page.rows != null) {
+                for (Email email : page.rows) {
+                    if (email.getEmailId() == emailId) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        Page last = pages.get(pages.size() - 1);
+        return head.size() + (pages.size() - 1) * pageSize + last.size;
+    }
+
+    @Override
+    public Email get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (index < head.size()) {
+            return head.get(index);
+        }
+        int pageIndex = (index - head.size()) / pageSize;
+        int offset = (index - head.size()) % pageSize;
+        viewed(pageIndex, offset);
+
+        Page page = pages.get(pageIndex);
+        return page.rows != null ? page.rows.get(offset) : PLACEHOLDER;
+    }
+
+    /**
+     * Only rows in memory are searched; lookups never trigger fetches
+     */
+    @Override
+    public int indexOf(Object o) {
+        int headIndex = head.indexOf(o);
+        if (headIndex >= 0) {
+            return headIndex;
+        }
+        for (int p = 0; p < pages.size(); p++) {
+            List<Email> rows = pages.get(p).rows;
+            if (rows != null) {
+                int offset = rows.indexOf(o);
+                if (offset >= 0) {
+                    return head.size() + p * pageSize + offset;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        for (int p = pages.size() - 1; p >= 0; p--) {
+            List<Email> rows = pages.get(p).rows;
+            if (rows != null) {
+                int offset = rows.lastIndexOf(o);
+                if (offset >= 0) {
+                    return head.size() + p * pageSize + offset;
+                }
+            }
+        }
+        return head.lastIndexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Track the viewed page and fetch what the viewport needs next
+     */
+    private void viewed(int pageIndex, int offset) {
+        viewedPage = pageIndex;
+
+        if (pages.get(pageIndex).rows == null) {
+            fetch(pageIndex);
+        }
+
+        // Prefetch in the scrolling direction
+        if (offset >= pageSize / 2) {
+            if (pageIndex + 1 < pages.size()) {
+                if (pages.get(pageIndex + 1).rows == null) {
+                    fetch(pageIndex + 1);
+                }
+            } else if (hasMore) {
+                fetch(pageIndex + 1);
+            }
+        } else if (pageIndex > 0 && pages.get(pageIndex - 1).rows == null) {
+            fetch(pageIndex - 1);
+        }
+    }
+
+    /**
+     * Fetch a known page again, or discover the page after the last one
+     */
+    private void fetch(int pageIndex) {
+        if (disposed || !loading.add(pageIndex)) {
+            return;
+        }
+
+        Timestamp beforeTimestamp;
+        int beforeEmailId;
+        if (pageIndex < pages.size()) {
+            beforeTimestamp = pages.get(pageIndex).startTimestamp;
+            beforeEmailId = pages.get(pageIndex).startEmailId;
+        } else {
+            Page last = pages.get(pages.size() - 1);
+            beforeTimestamp = last.endTimestamp;
+            beforeEmailId = last.endEmailId;
+        }
+
+        executor.execute(() -> {
+            EmailPage result;
+            try {
+                result = pageLoader.apply(beforeTimestamp, beforeEmailId);
+            } catch (RuntimeException e) {
+                System.err.println("Error fetching email page: " + e.getMessage());
+                result = null;
+            }
+            EmailPage loaded = result;
+            Platform.runLater(() -> pageLoaded(pageIndex, loaded));
+        });
+    }
+
+    private void pageLoaded(int pageIndex, EmailPage result) {
+        loading.remove(pageIndex);
+        if (disposed || result == null) {
+            return;
+        }
+        fetchCount++;
+
+        if (pageIndex == pages.size()) {
+            appendPage(result);
+        } else {
+            reloadPage(pageIndex, result);
+        }
+        evictOutsideWindow();
+    }
+
+    /**
+     * A newly discovered page: the list grows. A failed fetch never gets
+     * here (the page methods throw), so an empty page really is the end.
+     */
+    private void appendPage(EmailPage result) {
+        if (!hasMore) {
+            return;
+        }
+        if (result.isEmpty()) {
+            hasMore = false;
+            return;
+        }
+
+        Page last = pages.get(pages.size() - 1);
+        int from = size();
+        pages.add(new Page(last.endTimestamp, last.endEmailId, result.getEmails()));
+        hasMore = result.hasMore();
+
+        beginChange();
+        nextAdd(from, size());
+        endChange();
+    }
+
+    /**
+     * An evicted page came back: replace its placeholders
+     */
+    private void reloadPage(int pageIndex, EmailPage result) {
+        Page page = pages.get(pageIndex);
+        if (page.rows != null) {
+            return;
+        }
+
+        List<Email> rows = result.getEmails();
+        boolean lastPage = pageIndex == pages.size() - 1;
+        if (rows.size() != page.size || (!lastPage && result.getNextEmailId() != page.endEmailId)) {
+            System.out.println("Email listing changed while paging; reloading");
+            disposed = true;
+            if (staleListener != null) {
+                staleListener.run();
+            }
+            return;
+        }
+
+        page.rows = new ArrayList<>(rows);
+        int base = head.size() + pageIndex * pageSize;
+        beginChange();
+        for (int i = 0; i < rows.size(); i++) {
+            nextSet(base + i, PLACEHOLDER);
+        }
+        endChange();
+    }
+
+    /**
+     * Drop the rows of pages far from the viewed one (sizes and cursors are kept)
+     */
+    private void evictOutsideWindow() {
+        for (int p = 0; p < pages.size(); p++) {
+            Page page = pages.get(p);
+            if (page.rows == null || Math.abs(p - viewedPage) <= WINDOW_RADIUS) {
+                continue;
+            }
+
+            List<Email> rows = page.rows;
+            page.rows = null;
+            evictionCount++;
+
+            int base = head.size() + p * pageSize;
+            beginChange();
+            for (int i = 0; i < rows.size(); i++) {
+                nextSet(base + i, rows.get(i));
+            }
+            endChange();
+        }
+    }
+
+    // Metrics getters
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    public int getResidentPageCount() {
+        int resident = 0;
+        for (Page page : pages) {
+            if (page.rows != null) {
+                resident++;
+            }
+        }
+        return resident;
+    }
+
+    public int getFetchCount() {
+        return fetchCount;
+    }
+
+    public int getEvictionCount() {
+        return evictionCount;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Rows added with prepend()
+     */
+    public int getPrependedCount() {
+        return head.size();
+    }
+
+    @Override
+    public String toString() {
+        return "PagedEmailList{" +
+                "rows=" + size() +
+                ", pages=" + getPageCount() +
+                ", resident=" + getResidentPageCount() +
+                ", prepended=" + head.size() +
+                ", hasMore=" + hasMore +
+                ", fetches=" + fetchCount +
+                ", evictions=" + evictionCount +
+                '}';
+    }
+
+    private static Email createPlaceholder() {
+        Email email = new Email();
+        email.setSubject("Loading...");
+        email.setPriority(null);
+        email.setRead(true);
+        return email;
+    }
+
+    /**
+     * One page: its keyset cursors, its size and (while in memory) its rows
+     */
+    private static class Page {
+        // Cursor to fetch this page (null timestamp = newest in the folder)
+        final Timestamp startTimestamp;
+        final int startEmailId;
+        // Cursor of its last row (start of the next page)
+        final Timestamp endTimestamp;
+        final int endEmailId;
+        final int size;
+        List<Email> rows;
+
+        Page(Timestamp startTimestamp, int startEmailId, List<Email> rows) {
+            this.startTimestamp = startTimestamp;
+            this.startEmailId = startEmailId;
+            EmailPage page = new EmailPage(rows, false);
+            this.endTimestamp = page.getNextTimestamp();
+            this.endEmailId = page.getNextEmailId();
+            this.size = rows.size();
+            this.rows = new ArrayList<>(rows);
+        }
+    }
+}
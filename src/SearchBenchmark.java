@@ -0,0 +1,338 @@
+import entities.User;
+import services.*;
+import utils.FullTextQuery;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SearchBenchmark - LIKE Scan vs FULLTEXT Search
+ *
+ * Generates a synthetic mailbox between two benchmark users and times the
+ * same search terms with the old "Subject LIKE '%term%' OR Body LIKE '%term%'"
+ * predicate and with MATCH ... AGAINST compiled by FullTextQuery.
+ *
+ * Usage: java SearchBenchmark [emailCount] [--cleanup]
+ *   emailCount  size of the synthetic corpus (default 100000); an existing
+ *               corpus of at least this size is reused
+ *   --cleanup   delete the benchmark users and their emails and exit
+ *
+ * Run it against a scratch database: the corpus is written to the
+ * database configured in config/database.properties.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class SearchBenchmark {
+
+    private static final String SENDER = "bench_sender";
+    private static final String RECEIVER = "bench_receiver";
+    private static final String PASSWORD = "bench1234";
+    private static final String SUBJECT_PREFIX = "[bench] ";
+
+    private static final int DEFAULT_EMAIL_COUNT = 100000;
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final int RESULT_LIMIT = EmailService.DEFAULT_SEARCH_LIMIT;
+    private static final int RUNS = 5;
+
+    // Frequent, rare and short terms, single words and phrases
+    private static final String[] QUERIES = {
+        "invoice", "deadline server", "\"quarterly report\"", "migration -draft", "kubernetes", "ok"
+    };
+
+    private static final String[] TOPIC_WORDS = {
+        "invoice", "meeting", "deadline", "server", "project", "budget", "release", "migration",
+        "quarterly", "report", "draft", "review", "customer", "contract", "schedule", "kubernetes"
+    };
+
+    private static final String SQL_BASE =
+        "SELECT e.EmailID FROM Email e " +
+        "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
+        "WHERE eu.UserID = ? AND eu.Role = 'Receiver' AND eu.IsDeleted = FALSE ";
+
+    private static DatabaseHelper dbHelper;
+
+    public static void main(String[] args) {
+        int emailCount = DEFAULT_EMAIL_COUNT;
+        boolean cleanup = false;
+        for (String arg : args) {
+            if (arg.equals("--cleanup")) {
+                cleanup = true;
+            } else {
+                emailCount = Integer.parseInt(arg);
+            }
+        }
+
+        dbHelper = new DatabaseHelper();
+        dbHelper.initializeDatabase();
+        UserService userService = new UserService(dbHelper);
+
+        try {
+            if (cleanup) {
+                cleanup();
+                return;
+            }
+
+            User sender = ensureUser(userService, SENDER);
+            User receiver = ensureUser(userService, RECEIVER);
+            if (sender == null || receiver == null) {
+                System.err.println("✗ Could not create benchmark users");
+                return;
+            }
+
+            int existing = countCorpus(receiver.getUserId());
+            if (existing < emailCount) {
+                generateCorpus(sender.getUserId(), receiver.getUserId(), existing, emailCount - existing);
+            }
+            System.out.println("Corpus: " + Math.max(existing, emailCount) + " emails\n");
+
+            System.out.printf("%-24s %12s %8s %12s %8s %9s%n",
+                    "query", "LIKE (ms)", "rows", "MATCH (ms)", "rows", "speedup");
+            for (String query : QUERIES) {
+                runQuery(receiver.getUserId(), query);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("✗ Benchmark failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            dbHelper.shutdown();
+        }
+    }
+
+    private static void runQuery(int userId, String query) throws SQLException {
+        // Old predicate: the raw search box text as one substring
+        String likeSql = SQL_BASE + "AND (e.Subject LIKE ? OR e.Body LIKE ?) " +
+                         "ORDER BY e.Timestamp DESC LIMIT ?";
+        List<Object> likeParams = Arrays.asList(userId, FullTextQuery.likePattern(query),
+                                                FullTextQuery.likePattern(query), RESULT_LIMIT);
+
+        FullTextQuery compiled = FullTextQuery.parse(query);
+        StringBuilder matchSql = new StringBuilder(SQL_BASE);
+        List<Object> matchParams = new ArrayList<>();
+        matchParams.add(userId);
+        compiled.appendPredicate(matchSql, matchParams);
+        compiled.appendRelevanceOrder(matchSql, matchParams);
+        matchSql.append("LIMIT ?");
+        matchParams.add(RESULT_LIMIT);
+
+        long[] like = time(likeSql, likeParams);
+        long[] match = time(matchSql.toString(), matchParams);
+
+        double likeMs = like[0] / 1_000_000.0;
+        double matchMs = match[0] / 1_000_000.0;
+        System.out.printf("%-24s %12.2f %8d %12.2f %8d %8.1fx%s%n",
+                query, likeMs, like[1], matchMs, match[1],
+                matchMs > 0 ? likeMs / matchMs : 0.0,
+                compiled.usesFullText() ? "" : "  (LIKE fallback)");
+    }
+
+    /**
+     * Run a query once to warm caches, then RUNS times
+     * @return {median nanos, row count}
+     */
+    private static long[] time(String sql, List<Object> params) throws SQLException {
+        long[] samples = new long[RUNS];
+        int rows = 0;
+
+        try (Connection conn = dbHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+
+            for (int run = -1; run < RUNS; run++) {
+                long start = System.nanoTime();
+                rows = 0;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                    }
+                }
+                if (run >= 0) {
+                    samples[run] = System.nanoTime() - start;
+                }
+            }
+        }
+
+        Arrays.sort(samples);
+        return new long[] { samples[RUNS / 2], rows };
+    }
+
+    private static User ensureUser(UserService userService, String name) {
+        User user = userService.getUserByUsername(name);
+        if (user == null && userService.signup(new User(name, PASSWORD))) {
+            user = userService.getUserByUsername(name);
+        }
+        return user;
+    }
+
+    private static int countCorpus(int receiverId) throws SQLException {
+        try (Connection conn = dbHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT COUNT(*) FROM EmailUser WHERE UserID = ? AND Role = 'Receiver'")) {
+            pstmt.setInt(1, receiverId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Insert synthetic emails in batches, bypassing EmailService for speed.
+     * Counters are reconciled afterwards.
+     */
+    private static void generateCorpus(int senderId, int receiverId, int offset, int count) throws SQLException {
+        System.out.println("Generating " + count + " synthetic emails...");
+        Random random = new Random(42L + offset);
+        List<String> vocabulary = buildVocabulary(random, 5000);
+        long start = System.nanoTime();
+
+        try (Connection conn = dbHelper.getConnection()) {
+            int sentFolderId = folderId(conn, senderId, "Sent");
+            int inboxFolderId = folderId(conn, receiverId, "Inbox");
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement pstmtEmail = conn.prepareStatement(
+                         "INSERT INTO Email (Subject, Body, Timestamp) VALUES (?, ?, ?)",
+                         Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement pstmtEmailUser = conn.prepareStatement(
+                         "INSERT INTO EmailUser (EmailID, UserID, Role, FolderID, IsRead, Timestamp) " +
+                         "VALUES (?, ?, ?, ?, ?, ?)")) {
+
+                long baseTime = System.currentTimeMillis() / 1000 * 1000 - count * 60_000L;
+                for (int done = 0; done < count; done += INSERT_BATCH_SIZE) {
+                    int batch = Math.min(INSERT_BATCH_SIZE, count - done);
+                    for (int i = 0; i < batch; i++) {
+                        pstmtEmail.setString(1, SUBJECT_PREFIX + sentence(random, vocabulary, 4 + random.nextInt(6)));
+                        pstmtEmail.setString(2, paragraph(random, vocabulary, 40 + random.nextInt(200)));
+                        pstmtEmail.setTimestamp(3, new Timestamp(baseTime + (done + i) * 60_000L));
+                        pstmtEmail.addBatch();
+                    }
+                    pstmtEmail.executeBatch();
+
+                    try (ResultSet keys = pstmtEmail.getGeneratedKeys()) {
+                        for (int i = 0; keys.next(); i++) {
+                            int emailId = keys.getInt(1);
+                            Timestamp sentAt = new Timestamp(baseTime + (done + i) * 60_000L);
+                            addEmailUser(pstmtEmailUser, emailId, senderId, "Sender", sentFolderId, true, sentAt);
+                            addEmailUser(pstmtEmailUser, emailId, receiverId, "Receiver", inboxFolderId,
+                                    random.nextInt(4) != 0, sentAt);
+                        }
+                    }
+                    pstmtEmailUser.executeBatch();
+                    conn.commit();
+
+                    if ((done / INSERT_BATCH_SIZE) % 20 == 0) {
+                        System.out.println("  " + (done + batch) + " / " + count);
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+
+        EmailService emailService = new EmailService(dbHelper);
+        emailService.reconcileStats(senderId);
+        emailService.reconcileStats(receiverId);
+        System.out.printf("✓ Corpus generated in %.1f s%n", (System.nanoTime() - start) / 1e9);
+    }
+
+    private static void addEmailUser(PreparedStatement pstmt, int emailId, int userId, String role,
+                                     int folderId, boolean read, Timestamp sentAt) throws SQLException {
+        pstmt.setInt(1, emailId);
+        pstmt.setInt(2, userId);
+        pstmt.setString(3, role);
+        pstmt.setInt(4, folderId);
+        pstmt.setBoolean(5, read);
+        pstmt.setTimestamp(6, sentAt);
+        pstmt.addBatch();
+    }
+
+    private static int folderId(Connection conn, int userId, String name) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT FolderID FROM Folder WHERE UserID = ? AND Name = ?")) {
+            pstmt.setInt(1, userId);
+            pstmt.setString(2, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Missing " + name + " folder for user " + userId);
+                }
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Pronounceable pseudo-words; topic words are mixed in by sentence()
+     */
+    private static List<String> buildVocabulary(Random random, int size) {
+        String[] syllables = { "ka", "lo", "mi", "ten", "ra", "vo", "sel", "dar", "ni", "po", "gri", "an", "tu", "bex" };
+        List<String> words = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder word = new StringBuilder();
+            int parts = 2 + random.nextInt(3);
+            for (int p = 0; p < parts; p++) {
+                word.append(syllables[random.nextInt(syllables.length)]);
+            }
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private static String sentence(Random random, List<String> vocabulary, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) text.append(' ');
+            // Skewed choice: low indexes are common, so a few words dominate like real text
+            double r = random.nextDouble();
+            if (r < 0.08) {
+                text.append(TOPIC_WORDS[(int) (Math.pow(random.nextDouble(), 2) * TOPIC_WORDS.length)]);
+            } else if (r < 0.10) {
+                text.append("ok");
+            } else {
+                text.append(vocabulary.get((int) (Math.pow(random.nextDouble(), 3) * vocabulary.size())));
+            }
+        }
+        return text.toString();
+    }
+
+    private static String paragraph(Random random, List<String> vocabulary, int words) {
+        StringBuilder text = new StringBuilder();
+        while (words > 0) {
+            int length = Math.min(words, 8 + random.nextInt(10));
+            text.append(sentence(random, vocabulary, length)).append(". ");
+            words -= length;
+        }
+        return text.toString();
+    }
+
+    private static void cleanup() throws SQLException {
+        try (Connection conn = dbHelper.getConnection()) {
+            int deleted;
+            int total = 0;
+            // Only the emails the benchmark sender sent: other users' mail is
+            // never touched, whatever its subject
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "DELETE FROM Email WHERE EmailID IN (" +
+                    "SELECT eu.EmailID FROM EmailUser eu JOIN User u ON eu.UserID = u.UserID " +
+                    "WHERE u.Name = ? AND eu.Role = 'Sender') LIMIT " + INSERT_BATCH_SIZE * 10)) {
+                pstmt.setString(1, SENDER);
+                do {
+                    deleted = pstmt.executeUpdate();
+                    total += deleted;
+                } while (deleted > 0);
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM User WHERE Name IN (?, ?)")) {
+                pstmt.setString(1, SENDER);
+                pstmt.setString(2, RECEIVER);
+                pstmt.executeUpdate();
+            }
+            System.out.println("✓ Removed " + total + " benchmark emails and the benchmark users");
+        }
+    }
+}
@@ -15,13 +15,18 @@ import java.sql.*;
 public class UserService {
     
     private DatabaseHelper dbHelper;
+    private final UserCache userCache;
     
     public UserService(DatabaseHelper dbHelper) {
         this.dbHelper = dbHelper;
+        this.userCache = dbHelper.getUserCache();
     }
     
     /**
-     * User signup with validation
+     * User signup with validation.
+     * Duplicate names are rejected by the UNIQUE index on User.Name, so no
+     * separate existence query is needed; a cached name fails fast.
+     * On success the new UserID is set on the user.
      */
     public boolean signup(User user) {
         // Validate input
@@ -30,20 +35,21 @@ public class UserService {
             return false;
         }
         
+        UserCache.Entry cached = userCache.lookup(user.getName());
+        if (cached != null && !cached.isNegative()) {
+            System.err.println("Username already exists: " + user.getName());
+            return false;
+        }
+        
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
         
         try {
             conn = dbHelper.getConnection();
             
-            // Check if username already exists
-            if (getUserByUsername(user.getName()) != null) {
-                System.err.println("Username already exists: " + user.getName());
-                return false;
-            }
-            
             String sql = "INSERT INTO User (Name, Password, PersonalDetails) VALUES (?, ?, ?)";
-            pstmt = conn.prepareStatement(sql);
+            pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             pstmt.setString(1, user.getName());
             pstmt.setString(2, user.getPassword());
             pstmt.setString(3, user.getPersonalDetails());
@@ -51,17 +57,27 @@ public class UserService {
             int rows = pstmt.executeUpdate();
             
             if (rows > 0) {
+                rs = pstmt.getGeneratedKeys();
+                if (rs.next()) {
+                    user.setUserId(rs.getInt(1));
+                }
+                // Names cached as unknown may now resolve to this user
+                userCache.invalidateMissing();
                 System.out.println("User registered successfully: " + user.getName());
                 return true;
             }
             
             return false;
             
+        } catch (SQLIntegrityConstraintViolationException e) {
+            System.err.println("Username already exists: " + user.getName());
+            return false;
         } catch (SQLException e) {
             System.err.println("Signup error: " + e.getMessage());
             e.printStackTrace();
             return false;
         } finally {
+            dbHelper.closeResultSet(rs);
             dbHelper.closeStatement(pstmt);
             dbHelper.closeConnection(conn);
         }
@@ -98,6 +114,7 @@ public class UserService {
                 user.setCreatedAt(rs.getTimestamp("CreatedAt"));
                 user.setLastLogin(rs.getTimestamp("LastLogin"));
                 user.setActive(rs.getBoolean("IsActive"));
+                userCache.put(username, user);
                 
                 System.out.println("Login successful for user: " + username);
                 return user;
@@ -152,9 +169,16 @@ public class UserService {
     }
     
     /**
-     * Get user by username
+     * Get user by username.
+     * Served from the shared UserCache when possible (including "no such user");
+     * the returned user carries the basic profile only - no password or LastLogin.
      */
     public User getUserByUsername(String username) {
+        UserCache.Entry cached = userCache.lookup(username);
+        if (cached != null) {
+            return cached.copyUser();
+        }
+        
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
@@ -176,9 +200,11 @@ public class UserService {
                 user.setCreatedAt(rs.getTimestamp("CreatedAt"));
                 user.setLastLogin(rs.getTimestamp("LastLogin"));
                 user.setActive(rs.getBoolean("IsActive"));
-                return user;
+                userCache.put(username, user);
+                return UserCache.profileOf(user);
             }
             
+            userCache.putMissing(username);
             return null;
             
         } catch (SQLException e) {
@@ -227,6 +253,9 @@ public class UserService {
             pstmt.setInt(2, user.getUserId());
             
             int rows = pstmt.executeUpdate();
+            if (rows > 0) {
+                userCache.invalidateUser(user.getUserId());
+            }
             return rows > 0;
             
         } catch (SQLException e) {
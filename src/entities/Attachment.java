@@ -0,0 +1,178 @@
+package entities;
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * Attachment Entity Class
+ *
+ * Represents a file attached to an email.
+ * The file itself lives on disk; the database stores its metadata and path.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class Attachment {
+
+    private int attachmentId;
+    private int emailId;
+    private String fileName;
+    private long fileSize;
+    // Bytes on disk (smaller than fileSize when stored compressed)
+    private long storedSize;
+    private String mimeType;
+    private String filePath;
+    // SHA-256 of the content (null for files stored before content addressing)
+    private String contentHash;
+    // How the file is stored: NONE or DEFLATE
+    private String codec;
+    private Timestamp uploadedAt;
+
+    /**
+     * Default constructor
+     */
+    public Attachment() {
+        this.mimeType = "application/octet-stream";
+    }
+
+    /**
+     * Constructor with basic fields
+     */
+    public Attachment(int emailId, String fileName, long fileSize, String mimeType, String filePath) {
+        this();
+        this.emailId = emailId;
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.storedSize = fileSize;
+        this.mimeType = mimeType;
+        this.filePath = filePath;
+        this.uploadedAt = new Timestamp(System.currentTimeMillis());
+    }
+
+    // Getters and Setters
+
+    public int getAttachmentId() {
+        return attachmentId;
+    }
+
+    public void setAttachmentId(int attachmentId) {
+        this.attachmentId = attachmentId;
+    }
+
+    public int getEmailId() {
+        return emailId;
+    }
+
+    public void setEmailId(int emailId) {
+        this.emailId = emailId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getStoredSize() {
+        return storedSize;
+    }
+
+    public void setStoredSize(long storedSize) {
+        this.storedSize = storedSize;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public boolean isCompressed() {
+        return codec != null && !"NONE".equals(codec);
+    }
+
+    public Timestamp getUploadedAt() {
+        return uploadedAt;
+    }
+
+    public void setUploadedAt(Timestamp uploadedAt) {
+        this.uploadedAt = uploadedAt;
+    }
+
+    /**
+     * Get file extension (lowercase, without dot)
+     */
+    public String getExtension() {
+        if (fileName == null || !fileName.contains(".")) return "";
+        return fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase();
+    }
+
+    /**
+     * Get formatted size string
+     */
+    public String getFormattedSize() {
+        if (fileSize < 1024) {
+            return fileSize + " B";
+        } else if (fileSize < 1024 * 1024) {
+            return String.format("%.2f KB", fileSize / 1024.0);
+        } else if (fileSize < 1024 * 1024 * 1024) {
+            return String.format("%.2f MB", fileSize / (1024.0 * 1024.0));
+        } else {
+            return String.format("%.2f GB", fileSize / (1024.0 * 1024.0 * 1024.0));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Attachment that = (Attachment) o;
+        return attachmentId == that.attachmentId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(attachmentId);
+    }
+
+    @Override
+    public String toString() {
+        return fileName + " (" + getFormattedSize() + ")";
+    }
+}
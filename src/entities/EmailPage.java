@@ -0,0 +1,78 @@
+package entities;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EmailPage Data Class
+ *
+ * One page of a mailbox listing plus the keyset cursor
+ * (Timestamp, EmailID) of its last row. Pass the cursor back to the
+ * matching EmailService *Page method to fetch the next page.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class EmailPage {
+
+    private final List<Email> emails;
+    private final boolean hasMore;
+
+    /**
+     * Constructor
+     * @param emails rows of this page, newest first
+     * @param hasMore true if at least one more row exists after this page
+     */
+    public EmailPage(List<Email> emails, boolean hasMore) {
+        this.emails = emails != null ? emails : new ArrayList<>();
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Empty page (no rows, no next page)
+     */
+    public static EmailPage empty() {
+        return new EmailPage(new ArrayList<>(), false);
+    }
+
+    public List<Email> getEmails() {
+        return emails;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public boolean isEmpty() {
+        return emails.isEmpty();
+    }
+
+    public int size() {
+        return emails.size();
+    }
+
+    /**
+     * Timestamp of the last row - first half of the next-page cursor
+     */
+    public Timestamp getNextTimestamp() {
+        return emails.isEmpty() ? null : emails.get(emails.size() - 1).getTimestamp();
+    }
+
+    /**
+     * EmailID of the last row - second half of the next-page cursor
+     */
+    public int getNextEmailId() {
+        return emails.isEmpty() ? 0 : emails.get(emails.size() - 1).getEmailId();
+    }
+
+    @Override
+    public String toString() {
+        return "EmailPage{" +
+                "size=" + emails.size() +
+                ", hasMore=" + hasMore +
+                ", nextTimestamp=" + getNextTimestamp() +
+                ", nextEmailId=" + getNextEmailId() +
+                '}';
+    }
+}
@@ -0,0 +1,323 @@
+package services;
+
+import entities.Attachment;
+import entities.Email;
+import entities.EmailPage;
+import entities.EmailStats;
+import entities.Folder;
+import entities.User;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * AsyncMailService - Asynchronous Facade over the Service Layer
+ *
+ * Wraps the blocking UserService, EmailService, FolderService and
+ * AttachmentService calls in CompletableFutures so callers can overlap
+ * independent queries (e.g. folders, first inbox page and statistics at
+ * login) instead of running them one after another.
+ *
+ * Execution:
+ * - Each call runs on its own virtual thread when the JVM supports them
+ *   (Java 21+); on older JVMs a fixed pool of daemon threads is used.
+ * - At most db.pool.size calls run at once (a fair semaphore), so extra
+ *   calls wait here instead of timing out inside the connection pool.
+ *
+ * Cancellation and timeouts:
+ * - Cancelling a returned future interrupts the call: a call still
+ *   waiting for a permit or a pooled connection gives up immediately.
+ *   A statement already running on the server completes, but its result
+ *   is discarded.
+ * - The timeout variants complete the future with a TimeoutException
+ *   and cancel the call the same way.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class AsyncMailService {
+
+    private final UserService userService;
+    private final EmailService emailService;
+    private final FolderService folderService;
+    private final AttachmentService attachmentService;
+
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    public AsyncMailService(DatabaseHelper dbHelper, UserService userService, EmailService emailService,
+                            FolderService folderService, AttachmentService attachmentService) {
+        this.userService = userService;
+        this.emailService = emailService;
+        this.folderService = folderService;
+        this.attachmentService = attachmentService;
+
+        // Queries beyond the pool size would only queue for a connection
+        this.maxConcurrency = dbHelper.getConnectionPool().getMaxSize();
+        this.permits = new Semaphore(maxConcurrency, true);
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newPlatformThreadExecutor(maxConcurrency);
+    }
+
+    /**
+     * Run any blocking call asynchronously under the concurrency limit
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            if (result.isDone()) {
+                return; // cancelled or timed out before it started
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                result.completeExceptionally(new CancellationException("Cancelled while waiting to run"));
+                return;
+            }
+            try {
+                result.complete(call.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                permits.release();
+            }
+        });
+
+        // Cancellation or timeout of the future interrupts the running call
+        result.whenComplete((value, error) -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof CancellationException || cause instanceof TimeoutException) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Run a blocking call asynchronously; the future fails with a
+     * TimeoutException (and the call is cancelled) if it takes longer than the timeout
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call, long timeout, TimeUnit unit) {
+        return submit(call).orTimeout(timeout, unit);
+    }
+
+    /**
+     * Executor view of this service (e.g. for javafx.concurrent.Task):
+     * commands run on the same threads and under the same concurrency limit
+     */
+    public Executor asExecutor() {
+        return command -> submit(() -> {
+            command.run();
+            return null;
+        });
+    }
+
+    // ---- UserService ----
+
+    public CompletableFuture<User> login(String username, String password) {
+        return submit(() -> userService.login(username, password));
+    }
+
+    public CompletableFuture<User> getUserByUsername(String username) {
+        return submit(() -> userService.getUserByUsername(username));
+    }
+
+    // ---- FolderService ----
+
+    public CompletableFuture<List<Folder>> getUserFolders(int userId) {
+        return submit(() -> folderService.getUserFolders(userId));
+    }
+
+    public CompletableFuture<Integer> moveEmailsToFolder(Collection<Integer> emailIds, int userId, int folderId) {
+        return submit(() -> folderService.moveEmailsToFolder(emailIds, userId, folderId));
+    }
+
+    // ---- EmailService ----
+
+    public CompletableFuture<Boolean> sendEmail(Email email, int senderId, List<String> to,
+                                                List<String> cc, List<String> bcc) {
+        return submit(() -> emailService.sendEmail(email, senderId, to, cc, bcc));
+    }
+
+    public CompletableFuture<EmailPage> getInboxEmailsPage(int userId, Timestamp beforeTimestamp,
+                                                           int beforeEmailId, int pageSize) {
+        return submit(() -> emailService.getInboxEmailsPage(userId, beforeTimestamp, beforeEmailId, pageSize));
+    }
+
+    public CompletableFuture<EmailPage> getSentEmailsPage(int userId, Timestamp beforeTimestamp,
+                                                          int beforeEmailId, int pageSize) {
+        return submit(() -> emailService.getSentEmailsPage(userId, beforeTimestamp, beforeEmailId, pageSize));
+    }
+
+    public CompletableFuture<EmailPage> getEmailsByFolderPage(int userId, int folderId, Timestamp beforeTimestamp,
+                                                              int beforeEmailId, int pageSize) {
+        return submit(() -> emailService.getEmailsByFolderPage(userId, folderId, beforeTimestamp,
+                                                               beforeEmailId, pageSize));
+    }
+
+    public CompletableFuture<List<Email>> searchEmailsRanked(int userId, String query, String role, int limit) {
+        return submit(() -> emailService.searchEmailsRanked(userId, query, role, limit));
+    }
+
+    public CompletableFuture<List<Email>> getEmailsByIds(int userId, int[] emailIds) {
+        return submit(() -> emailService.getEmailsByIds(userId, emailIds));
+    }
+
+    public CompletableFuture<String> getEmailBody(int emailId, int userId) {
+        return submit(() -> emailService.getEmailBody(emailId, userId));
+    }
+
+    public CompletableFuture<EmailStats> getEmailStats(int userId) {
+        return submit(() -> emailService.getEmailStats(userId));
+    }
+
+    public CompletableFuture<Integer> markAsRead(Collection<Integer> emailIds, int userId) {
+        return submit(() -> emailService.markAsRead(emailIds, userId));
+    }
+
+    public CompletableFuture<Integer> setStarred(Collection<Integer> emailIds, int userId, boolean starred) {
+        return submit(() -> emailService.setStarred(emailIds, userId, starred));
+    }
+
+    public CompletableFuture<Integer> deleteEmails(Collection<Integer> emailIds, int userId) {
+        return submit(() -> emailService.deleteEmails(emailIds, userId));
+    }
+
+    // ---- AttachmentService ----
+
+    public CompletableFuture<List<Attachment>> getEmailAttachments(int emailId) {
+        return submit(() -> attachmentService.getEmailAttachments(emailId));
+    }
+
+    // ---- Fan-out ----
+
+    /**
+     * Load everything the main window shows after login - folders, the
+     * first inbox page and statistics - as three concurrent queries
+     */
+    public CompletableFuture<MailboxOverview> loadMailboxOverview(int userId, int pageSize) {
+        CompletableFuture<List<Folder>> folders = getUserFolders(userId);
+        CompletableFuture<EmailPage> inbox = getInboxEmailsPage(userId, null, 0, pageSize);
+        CompletableFuture<EmailStats> stats = getEmailStats(userId);
+
+        CompletableFuture<MailboxOverview> overview = CompletableFuture.allOf(folders, inbox, stats)
+                .thenApply(ignored -> new MailboxOverview(folders.join(), inbox.join(), stats.join()));
+
+        // Cancelling the overview cancels the queries still running
+        overview.whenComplete((value, error) -> {
+            if (error != null) {
+                folders.cancel(true);
+                inbox.cancel(true);
+                stats.cancel(true);
+            }
+        });
+        return overview;
+    }
+
+    /**
+     * Stop accepting calls; running calls finish (call on application exit)
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Calls currently holding a permit
+     */
+    public int getRunningCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncMailService{" +
+                "virtualThreads=" + virtualThreads +
+                ", maxConcurrency=" + maxConcurrency +
+                ", running=" + getRunningCount() +
+                ", waiting=" + getWaitingCount() +
+                '}';
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() if this JVM has it (Java 21+)
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "async-service-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Result of loadMailboxOverview()
+     */
+    public static class MailboxOverview {
+        private final List<Folder> folders;
+        private final EmailPage inboxPage;
+        private final EmailStats stats;
+
+        public MailboxOverview(List<Folder> folders, EmailPage inboxPage, EmailStats stats) {
+            this.folders = folders;
+            this.inboxPage = inboxPage;
+            this.stats = stats;
+        }
+
+        public List<Folder> getFolders() {
+            return folders;
+        }
+
+        public EmailPage getInboxPage() {
+            return inboxPage;
+        }
+
+        public EmailStats getStats() {
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,735 @@
+package services;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AttachmentGarbageCollector - Orphaned Attachment File Sweeper
+ *
+ * Files under the attachment root can outlive every row that used them:
+ * deleting an Email cascades to its Attachment rows without touching the
+ * disk, a save that failed after publishing leaves its file behind, and a
+ * crash can leave uploads in the staging area. A sweep reconciles the
+ * Attachment table with the storage tree and removes what nothing uses:
+ *
+ * 1. Attachments of emails every participant has deleted (soft deletes
+ *    cannot be undone) are released through AttachmentService.deleteAttachment,
+ *    so counters are kept and a file shared with live mail stays.
+ * 2. Blob directories are scanned one shard directory at a time, at most
+ *    PAGE_SIZE files per page; each page is checked against the table with
+ *    one ContentHash IN (...) query on idx_content_hash.
+ * 3. user_<id> directories from before content addressing are checked
+ *    against the FilePaths of rows without a hash (a paged ID-range scan).
+ * 4. Abandoned files in the staging area are removed.
+ *
+ * Files younger than the grace period are never touched, which covers
+ * uploads between publish and commit. Before a blob is deleted its hash is
+ * read again with a locking read (as deleteAttachment does), so a reference
+ * committed since the page was checked keeps the file.
+ *
+ * Deletes are throttled: after every batchSize files the sweep pauses for
+ * pauseMillis. In dry-run mode nothing is changed; the report shows what a
+ * real sweep would release and reclaim.
+ *
+ * Sweeps run on a background thread when started with start(), or
+ * synchronously with sweep(); only one sweep runs at a time.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class AttachmentGarbageCollector {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_PAUSE_MS = 200;
+    public static final long DEFAULT_GRACE_MS = TimeUnit.HOURS.toMillis(1);
+    private static final int PAGE_SIZE = 500;
+    private static final String LEGACY_DIR_PREFIX = "user_";
+
+    private static final String SQL_DELETED_MAIL_ATTACHMENTS =
+        "SELECT a.ID, a.FileSize FROM Attachment a " +
+        "WHERE a.ID > ? AND NOT EXISTS (SELECT 1 FROM EmailUser eu " +
+        "                               WHERE eu.EmailID = a.EmailID AND eu.IsDeleted = FALSE) " +
+        "ORDER BY a.ID LIMIT ?";
+
+    private final DatabaseHelper dbHelper;
+    private final AttachmentService attachmentService;
+    private final AttachmentStore store;
+    private final Path root;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final long graceMillis;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "attachment-gc");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private ScheduledFuture<?> scheduledSweeps;
+
+    // Metrics
+    private final AtomicLong sweepCount = new AtomicLong();
+    private final AtomicLong releasedCount = new AtomicLong();
+    private final AtomicLong reclaimedFiles = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private volatile Report lastReport;
+
+    public AttachmentGarbageCollector(DatabaseHelper dbHelper, AttachmentService attachmentService) {
+        this(dbHelper, attachmentService, DEFAULT_BATCH_SIZE, DEFAULT_PAUSE_MS, DEFAULT_GRACE_MS);
+    }
+
+    public AttachmentGarbageCollector(DatabaseHelper dbHelper, AttachmentService attachmentService,
+                                      int batchSize, long pauseMillis, long graceMillis) {
+        this.dbHelper = dbHelper;
+        this.attachmentService = attachmentService;
+        this.store = attachmentService.getStore();
+        this.root = Paths.get(attachmentService.getBasePath());
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMillis = Math.max(0, pauseMillis);
+        this.graceMillis = Math.max(0, graceMillis);
+    }
+
+    /**
+     * Sweep periodically in the background, the first time after one interval
+     */
+    public synchronized void start(long intervalMillis, boolean dryRun) {
+        if (scheduledSweeps != null || executor.isShutdown()) {
+            return;
+        }
+        long interval = Math.max(1, intervalMillis);
+        scheduledSweeps = executor.scheduleWithFixedDelay(() -> {
+            try {
+                Report report = sweep(dryRun);
+                if (report != null) {
+                    System.out.println("Attachment GC: " + report);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error sweeping attachments: " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the background thread; a sweep in progress stops at its next pause
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (scheduledSweeps != null) {
+                scheduledSweeps.cancel(false);
+            }
+        }
+        executor.shutdownNow();
+        System.out.println("Attachment GC stopped. " + this);
+    }
+
+    /**
+     * Run one sweep on the calling thread
+     * @param dryRun only report what would be released and reclaimed
+     * @return report, or null if a sweep is already running
+     */
+    public Report sweep(boolean dryRun) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return null;
+        }
+        Report report = new Report(dryRun);
+        try {
+            if (releaseDeletedMail(report)
+                    && sweepBlobs(report)
+                    && sweepLegacy(report)) {
+                sweepStaging(report);
+            }
+        } finally {
+            report.finish();
+            sweeping.set(false);
+        }
+
+        sweepCount.incrementAndGet();
+        if (!dryRun) {
+            releasedCount.addAndGet(report.released);
+            reclaimedFiles.addAndGet(report.orphanFiles + report.stagingFiles);
+            reclaimedBytes.addAndGet(report.reclaimedBytes);
+        }
+        lastReport = report;
+        return report;
+    }
+
+    // ==================== PHASE 1: DELETED MAIL ====================
+
+    /**
+     * Release the attachments of emails no participant can see any more
+     * @return false if the sweep was interrupted
+     */
+    private boolean releaseDeletedMail(Report report) {
+        int afterId = 0;
+        while (true) {
+            List<long[]> page = new ArrayList<>();
+            Connection conn = null;
+            PreparedStatement pstmt = null;
+            ResultSet rs = null;
+            try {
+                conn = dbHelper.getConnection();
+                pstmt = conn.prepareStatement(SQL_DELETED_MAIL_ATTACHMENTS);
+                pstmt.setInt(1, afterId);
+                pstmt.setInt(2, PAGE_SIZE);
+                rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    page.add(new long[] { rs.getInt("ID"), rs.getLong("FileSize") });
+                }
+            } catch (SQLException e) {
+                report.failed++;
+                System.err.println("Error finding attachments of deleted mail: " + e.getMessage());
+                return true; // the file phases do not depend on this one
+            } finally {
+                dbHelper.closeResultSet(rs);
+                dbHelper.closeStatement(pstmt);
+                dbHelper.closeConnection(conn);
+            }
+
+            for (long[] row : page) {
+                int attachmentId = (int) row[0];
+                afterId = attachmentId;
+                if (report.dryRun) {
+                    report.released++;
+                    report.releasedBytes += row[1];
+                } else if (attachmentService.deleteAttachment(attachmentId)) {
+                    report.released++;
+                    report.releasedBytes += row[1];
+                    if (!throttle(report)) {
+                        return false;
+                    }
+                } else {
+                    report.failed++;
+                }
+            }
+            if (page.size() < PAGE_SIZE) {
+                return true;
+            }
+        }
+    }
+
+    // ==================== PHASE 2: BLOBS ====================
+
+    /**
+     * Scan blobs/<xx>/ and blobs/<xx>/<yy>/ (files directly in blobs/<xx>/
+     * are from the one-level layout)
+     * @return false if the sweep was interrupted
+     */
+    private boolean sweepBlobs(Report report) {
+        Path blobRoot = store.getBlobRoot();
+        if (!Files.isDirectory(blobRoot)) {
+            return true;
+        }
+        for (Path level1 : listShardDirectories(blobRoot)) {
+            if (!sweepBlobDirectory(level1, report)) {
+                return false;
+            }
+            for (Path level2 : listShardDirectories(level1)) {
+                if (!sweepBlobDirectory(level2, report)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean sweepBlobDirectory(Path dir, Report report) {
+        List<Path> page = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, Files::isRegularFile)) {
+            for (Path file : files) {
+                page.add(file);
+                if (page.size() == PAGE_SIZE) {
+                    if (!sweepBlobPage(page, report)) {
+                        return false;
+                    }
+                    page.clear();
+                }
+            }
+        } catch (IOException e) {
+            report.failed++;
+            System.err.println("Error listing " + dir + ": " + e.getMessage());
+            return true;
+        }
+        return page.isEmpty() || sweepBlobPage(page, report);
+    }
+
+    /**
+     * Check one page of blob files against the table and delete the unreferenced ones
+     */
+    private boolean sweepBlobPage(List<Path> files, Report report) {
+        List<Path> candidates = new ArrayList<>();
+        for (Path file : files) {
+            report.scannedFiles++;
+            if (AttachmentStore.contentHashOf(file) != null && isPastGrace(file)) {
+                candidates.add(file);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return true;
+        }
+
+        Set<String> referenced;
+        try {
+            referenced = referencedPaths(candidates, false, null);
+        } catch (SQLException e) {
+            report.failed++;
+            System.err.println("Error checking attachment references: " + e.getMessage());
+            return true;
+        }
+        List<Path> orphans = new ArrayList<>();
+        for (Path file : candidates) {
+            if (!referenced.contains(key(file))) {
+                orphans.add(file);
+            }
+        }
+
+        if (report.dryRun) {
+            for (Path file : orphans) {
+                report.orphanFiles++;
+                report.reclaimedBytes += sizeOf(file);
+            }
+            return true;
+        }
+        for (int from = 0; from < orphans.size(); from += batchSize) {
+            deleteBlobs(orphans.subList(from, Math.min(orphans.size(), from + batchSize)), report);
+            if (!pause()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Delete blobs that are still unreferenced under a locking read of their hashes.
+     * The lock keeps concurrent saves from referencing them until the files are gone.
+     */
+    private void deleteBlobs(List<Path> orphans, Report report) {
+        Connection conn = null;
+        try {
+            conn = dbHelper.getConnection();
+            conn.setAutoCommit(false);
+            Set<String> referenced = referencedPaths(orphans, true, conn);
+            for (Path file : orphans) {
+                if (referenced.contains(key(file))) {
+                    continue; // referenced since the page was checked
+                }
+                long size = sizeOf(file);
+                if (store.delete(file)) {
+                    report.orphanFiles++;
+                    report.reclaimedBytes += size;
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Rollback error: " + ex.getMessage());
+                }
+            }
+            report.failed++;
+            System.err.println("Error deleting orphaned attachments: " + e.getMessage());
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    System.err.println("Error resetting autocommit: " + e.getMessage());
+                }
+            }
+            dbHelper.closeConnection(conn);
+        }
+    }
+
+    /**
+     * FilePaths (as keys) of the rows with the content hashes of the given blob files
+     * @param forUpdate lock the hashes' index ranges (conn must be in a transaction)
+     */
+    private Set<String> referencedPaths(List<Path> files, boolean forUpdate, Connection conn) throws SQLException {
+        Set<String> hashes = new LinkedHashSet<>();
+        for (Path file : files) {
+            hashes.add(AttachmentStore.contentHashOf(file));
+        }
+        String sql = "SELECT FilePath FROM Attachment WHERE ContentHash IN (" +
+                     String.join(", ", Collections.nCopies(hashes.size(), "?")) + ")" +
+                     (forUpdate ? " FOR UPDATE" : "");
+
+        boolean ownConnection = conn == null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            if (ownConnection) {
+                conn = dbHelper.getConnection();
+            }
+            pstmt = conn.prepareStatement(sql);
+            int index = 1;
+            for (String hash : hashes) {
+                pstmt.setString(index++, hash);
+            }
+            rs = pstmt.executeQuery();
+            Set<String> paths = new HashSet<>();
+            while (rs.next()) {
+                paths.add(key(Paths.get(rs.getString("FilePath"))));
+            }
+            return paths;
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            if (ownConnection) {
+                dbHelper.closeConnection(conn);
+            }
+        }
+    }
+
+    // ==================== PHASE 3: LEGACY FILES ====================
+
+    /**
+     * Scan user_<id> directories. No new rows point there, so the paths of
+     * rows without a content hash are read once and no locking is needed.
+     */
+    private boolean sweepLegacy(Report report) {
+        List<Path> dirs = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(root,
+                p -> Files.isDirectory(p) && p.getFileName().toString().startsWith(LEGACY_DIR_PREFIX))) {
+            for (Path dir : entries) {
+                dirs.add(dir);
+            }
+        } catch (IOException e) {
+            report.failed++;
+            System.err.println("Error listing " + root + ": " + e.getMessage());
+            return true;
+        }
+        if (dirs.isEmpty()) {
+            return true;
+        }
+
+        Set<String> referenced = legacyPaths();
+        if (referenced == null) {
+            report.failed++;
+            return true;
+        }
+
+        for (Path dir : dirs) {
+            List<Path> orphans = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, Files::isRegularFile)) {
+                for (Path file : files) {
+                    report.scannedFiles++;
+                    if (!referenced.contains(key(file)) && isPastGrace(file)) {
+                        orphans.add(file);
+                    }
+                }
+            } catch (IOException e) {
+                report.failed++;
+                System.err.println("Error listing " + dir + ": " + e.getMessage());
+                continue;
+            }
+
+            for (Path file : orphans) {
+                long size = sizeOf(file);
+                if (report.dryRun || store.delete(file)) {
+                    report.orphanFiles++;
+                    report.reclaimedBytes += size;
+                }
+                if (!report.dryRun && !throttle(report)) {
+                    return false;
+                }
+            }
+            if (!report.dryRun) {
+                removeIfEmpty(dir);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FilePaths (as keys) of the rows saved before content addressing, read in ID pages
+     * @return paths, or null on error
+     */
+    private Set<String> legacyPaths() {
+        Set<String> paths = new HashSet<>();
+        int afterId = 0;
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            conn = dbHelper.getConnection();
+            pstmt = conn.prepareStatement(
+                "SELECT ID, FilePath FROM Attachment WHERE ID > ? AND ContentHash IS NULL ORDER BY ID LIMIT ?");
+            int rows;
+            do {
+                pstmt.setInt(1, afterId);
+                pstmt.setInt(2, PAGE_SIZE);
+                rs = pstmt.executeQuery();
+                rows = 0;
+                while (rs.next()) {
+                    afterId = rs.getInt("ID");
+                    paths.add(key(Paths.get(rs.getString("FilePath"))));
+                    rows++;
+                }
+                rs.close();
+            } while (rows == PAGE_SIZE);
+            return paths;
+
+        } catch (SQLException e) {
+            System.err.println("Error reading legacy attachment paths: " + e.getMessage());
+            return null;
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+    }
+
+    // ==================== PHASE 4: STAGING AREA ====================
+
+    /**
+     * Remove uploads that were staged but never published or discarded (crash)
+     */
+    private void sweepStaging(Report report) {
+        Path stagingDir = store.getStagingDir();
+        if (!Files.isDirectory(stagingDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingDir, Files::isRegularFile)) {
+            for (Path file : files) {
+                report.scannedFiles++;
+                if (!isPastGrace(file)) {
+                    continue;
+                }
+                long size = sizeOf(file);
+                if (report.dryRun || store.delete(file)) {
+                    report.stagingFiles++;
+                    report.reclaimedBytes += size;
+                }
+            }
+        } catch (IOException e) {
+            report.failed++;
+            System.err.println("Error listing " + stagingDir + ": " + e.getMessage());
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    /**
+     * Count one delete and pause after every batchSize of them
+     * @return false if interrupted (shutdown)
+     */
+    private boolean throttle(Report report) {
+        report.batchDeletes++;
+        if (report.batchDeletes < batchSize) {
+            return !Thread.currentThread().isInterrupted();
+        }
+        report.batchDeletes = 0;
+        return pause();
+    }
+
+    private boolean pause() {
+        if (pauseMillis == 0) {
+            return !Thread.currentThread().isInterrupted();
+        }
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Subdirectories named like a shard (two hex digits); the staging area is skipped
+     */
+    private static List<Path> listShardDirectories(Path dir) {
+        List<Path> dirs = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir,
+                p -> Files.isDirectory(p) && p.getFileName().toString().matches("[0-9a-f]{2}"))) {
+            for (Path entry : entries) {
+                dirs.add(entry);
+            }
+        } catch (IOException e) {
+            System.err.println("Error listing " + dir + ": " + e.getMessage());
+        }
+        Collections.sort(dirs);
+        return dirs;
+    }
+
+    private boolean isPastGrace(Path file) {
+        try {
+            return System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() >= graceMillis;
+        } catch (IOException e) {
+            return false; // removed meanwhile
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void removeIfEmpty(Path dir) {
+        try {
+            Files.deleteIfExists(dir);
+        } catch (DirectoryNotEmptyException e) {
+            // still in use
+        } catch (IOException e) {
+            System.err.println("Error removing " + dir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Comparable form of a path: FilePath values and scanned files may differ
+     * in being relative or absolute
+     */
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    // Metrics getters
+
+    public long getSweepCount() {
+        return sweepCount.get();
+    }
+
+    /**
+     * Attachments of deleted mail released by sweeps (not counting dry runs)
+     */
+    public long getReleasedCount() {
+        return releasedCount.get();
+    }
+
+    public long getReclaimedFiles() {
+        return reclaimedFiles.get();
+    }
+
+    public long getReclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    /**
+     * Report of the last finished sweep, or null
+     */
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    @Override
+    public String toString() {
+        return "AttachmentGarbageCollector{" +
+                "sweeps=" + getSweepCount() +
+                ", released=" + getReleasedCount() +
+                ", reclaimedFiles=" + getReclaimedFiles() +
+                ", reclaimedBytes=" + getReclaimedBytes() +
+                '}';
+    }
+
+    /**
+     * Result of one sweep (in a dry run: what a sweep would have done)
+     */
+    public static final class Report {
+        private final boolean dryRun;
+        private final long startNanos = System.nanoTime();
+        private long elapsedMillis;
+        private int released;
+        private long releasedBytes;
+        private int scannedFiles;
+        private int orphanFiles;
+        private int stagingFiles;
+        private long reclaimedBytes;
+        private int failed;
+        private int batchDeletes; // deletes since the last pause
+
+        Report(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        void finish() {
+            elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        public boolean isDryRun() {
+            return dryRun;
+        }
+
+        /**
+         * Attachment rows of mail deleted by every participant
+         */
+        public int getReleased() {
+            return released;
+        }
+
+        /**
+         * Original size of those attachments
+         */
+        public long getReleasedBytes() {
+            return releasedBytes;
+        }
+
+        public int getScannedFiles() {
+            return scannedFiles;
+        }
+
+        /**
+         * Stored files no Attachment row referenced
+         */
+        public int getOrphanFiles() {
+            return orphanFiles;
+        }
+
+        /**
+         * Abandoned uploads in the staging area
+         */
+        public int getStagingFiles() {
+            return stagingFiles;
+        }
+
+        /**
+         * Disk space of the orphaned and staging files removed
+         */
+        public long getReclaimedBytes() {
+            return reclaimedBytes;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    (dryRun ? "dryRun, " : "") +
+                    "released=" + released +
+                    ", scanned=" + scannedFiles +
+                    ", orphans=" + orphanFiles +
+                    ", staging=" + stagingFiles +
+                    ", reclaimedBytes=" + reclaimedBytes +
+                    ", failed=" + failed +
+                    ", ms=" + elapsedMillis +
+                    '}';
+        }
+    }
+}
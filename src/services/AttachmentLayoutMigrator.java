@@ -0,0 +1,419 @@
+package services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AttachmentLayoutMigrator - Online Move to the Current Storage Layout
+ *
+ * Moves attachment files that are not where AttachmentStore would put them
+ * today and rewrites Attachment.FilePath, while the application keeps
+ * running:
+ *
+ * - Content-addressed files in an older layout (one level of directories,
+ *   or under a previous attachments.root) are hard-linked - or copied when
+ *   that is not possible - to their current path. One UPDATE then points
+ *   every row that used the old file at the new one, and the old file is
+ *   removed once that is committed.
+ * - Files saved before content addressing (user_<id>/...) are hashed and
+ *   stored like a new upload, and their row gets ContentHash, Codec and
+ *   StoredSize. Duplicates found this way are stored once.
+ *
+ * Rows are read in ID order in small batches (keyset, WHERE ID > lastId),
+ * with an optional pause between batches to limit the I/O taken from the
+ * running application. Each file is switched over in its own short
+ * transaction, so an interrupted run loses nothing and can be resumed
+ * from the last ID it reported (or simply run again: rows already in the
+ * current layout are skipped).
+ *
+ * AttachmentService counts references per FilePath, so an old and a new
+ * copy of the same content are each removed only when no row uses them any
+ * more. The switch therefore locks the hash's rows (and index range) with
+ * the same locking read deleteAttachment uses: while it holds the lock no
+ * delete can drop the new file, and the new file is checked - re-created
+ * from the old one if a delete removed it just before - before the rows
+ * are pointed at it. A copy made for a file whose rows were all deleted
+ * meanwhile is left behind for the orphan collector.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class AttachmentLayoutMigrator {
+
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    private final DatabaseHelper dbHelper;
+    private final AttachmentService attachmentService;
+    private final AttachmentStore store;
+
+    public AttachmentLayoutMigrator(DatabaseHelper dbHelper, AttachmentService attachmentService) {
+        this.dbHelper = dbHelper;
+        this.attachmentService = attachmentService;
+        this.store = attachmentService.getStore();
+    }
+
+    /**
+     * Migrate all attachments
+     */
+    public Report migrate(int batchSize, long pauseMillis) {
+        return migrate(0, batchSize, pauseMillis);
+    }
+
+    /**
+     * Migrate the attachments with an ID above afterId (resume a previous run)
+     * @param batchSize rows read per batch
+     * @param pauseMillis pause between batches (0 = none)
+     */
+    public Report migrate(int afterId, int batchSize, long pauseMillis) {
+        Report report = new Report(afterId);
+        int size = Math.max(1, batchSize);
+
+        while (true) {
+            List<Row> batch = readBatch(report.lastId, size);
+            if (batch == null) {
+                report.failed++;
+                break;
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            for (Row row : batch) {
+                report.scanned++;
+                migrateRow(row, report);
+                report.lastId = row.id;
+            }
+            report.batches++;
+            System.out.println("Attachment layout: " + report);
+
+            if (batch.size() < size) {
+                break;
+            }
+            if (pauseMillis > 0) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        report.finish();
+        return report;
+    }
+
+    private void migrateRow(Row row, Report report) {
+        try {
+            if (row.contentHash == null) {
+                migrateLegacy(row, report);
+            } else if (row.filePath.equals(store.pathFor(row.contentHash, row.codec).toString())) {
+                report.current++;
+            } else {
+                migrateAddressed(row, report);
+            }
+        } catch (IOException | SQLException e) {
+            report.failed++;
+            System.err.println("Error migrating attachment " + row.id + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * A content-addressed file in an older layout: link it in, repoint its rows
+     */
+    private void migrateAddressed(Row row, Report report) throws IOException, SQLException {
+        Path oldPath = Paths.get(row.filePath);
+        Path target = store.pathFor(row.contentHash, row.codec);
+        if (Files.exists(oldPath)) {
+            store.adopt(oldPath, row.contentHash, row.codec);
+        } else if (!Files.exists(target)) {
+            report.failed++;
+            System.err.println("Attachment file missing: " + row.filePath + " (ID " + row.id + ")");
+            return;
+        }
+
+        int updated = 0;
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            conn = dbHelper.getConnection();
+            conn.setAutoCommit(false);
+
+            // Same locking read as deleteAttachment: no reference to either
+            // path can be removed or added until this transaction ends
+            pstmt = conn.prepareStatement("SELECT FilePath FROM Attachment WHERE ContentHash = ? FOR UPDATE");
+            pstmt.setString(1, row.contentHash);
+            rs = pstmt.executeQuery();
+            int oldReferences = 0;
+            while (rs.next()) {
+                if (row.filePath.equals(rs.getString("FilePath"))) {
+                    oldReferences++;
+                }
+            }
+            rs.close();
+            pstmt.close();
+
+            if (oldReferences == 0) {
+                // Moved with an earlier row of the batch, or deleted meanwhile
+                conn.rollback();
+                report.skipped++;
+                return;
+            }
+            if (!Files.exists(target)) {
+                // The last row using the new file was deleted after it was linked
+                if (!Files.exists(oldPath)) {
+                    conn.rollback();
+                    report.failed++;
+                    System.err.println("Attachment file missing: " + row.filePath + " (ID " + row.id + ")");
+                    return;
+                }
+                store.adopt(oldPath, row.contentHash, row.codec);
+            }
+
+            pstmt = conn.prepareStatement(
+                "UPDATE Attachment SET FilePath = ? WHERE ContentHash = ? AND FilePath = ?");
+            pstmt.setString(1, target.toString());
+            pstmt.setString(2, row.contentHash);
+            pstmt.setString(3, row.filePath);
+            updated = pstmt.executeUpdate();
+            conn.commit();
+        } catch (SQLException | IOException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Rollback error: " + ex.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    System.err.println("Error resetting autocommit: " + e.getMessage());
+                }
+            }
+            dbHelper.closeConnection(conn);
+        }
+
+        // Committed: no row refers to the old path any more, and new uploads never use it
+        store.delete(oldPath);
+        report.moved += updated;
+    }
+
+    /**
+     * A file saved before content addressing: store it by content, update its row
+     */
+    private void migrateLegacy(Row row, Report report) throws IOException, SQLException {
+        File file = new File(row.filePath);
+        if (!file.exists()) {
+            report.failed++;
+            System.err.println("Attachment file missing: " + row.filePath + " (ID " + row.id + ")");
+            return;
+        }
+
+        AttachmentStore.StagedBlob blob = store.stage(file, attachmentService.chooseCodec(row.mimeType));
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        boolean committed = false;
+        try {
+            conn = dbHelper.getConnection();
+            conn.setAutoCommit(false);
+
+            // The row may have been deleted or changed since the batch was read
+            pstmt = conn.prepareStatement("SELECT FilePath, ContentHash FROM Attachment WHERE ID = ? FOR UPDATE");
+            pstmt.setInt(1, row.id);
+            rs = pstmt.executeQuery();
+            if (!rs.next() || rs.getString("ContentHash") != null
+                    || !row.filePath.equals(rs.getString("FilePath"))) {
+                conn.rollback();
+                report.skipped++;
+                return;
+            }
+            rs.close();
+            pstmt.close();
+
+            pstmt = conn.prepareStatement(
+                "UPDATE Attachment SET FilePath = ?, ContentHash = ?, Codec = ?, StoredSize = ? WHERE ID = ?");
+            pstmt.setString(1, store.pathFor(blob.getContentHash(), blob.getCodec()).toString());
+            pstmt.setString(2, blob.getContentHash());
+            pstmt.setString(3, blob.getCodec().name());
+            pstmt.setLong(4, blob.getStoredSize());
+            pstmt.setInt(5, row.id);
+            pstmt.executeUpdate();
+
+            // Published while the hash's index range is locked, as in saveAttachments
+            store.publish(blob);
+            conn.commit();
+            committed = true;
+        } catch (SQLException | IOException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Rollback error: " + ex.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            if (!committed) {
+                store.discard(blob);
+            }
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    System.err.println("Error resetting autocommit: " + e.getMessage());
+                }
+            }
+            dbHelper.closeConnection(conn);
+        }
+
+        store.delete(file.toPath());
+        report.moved++;
+    }
+
+    /**
+     * Next batch of rows after a given ID
+     * @return rows in ID order, or null on error
+     */
+    private List<Row> readBatch(int afterId, int batchSize) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            conn = dbHelper.getConnection();
+            pstmt = conn.prepareStatement(
+                "SELECT ID, MimeType, FilePath, ContentHash, Codec FROM Attachment " +
+                "WHERE ID > ? ORDER BY ID LIMIT ?");
+            pstmt.setInt(1, afterId);
+            pstmt.setInt(2, batchSize);
+            rs = pstmt.executeQuery();
+
+            List<Row> rows = new ArrayList<>();
+            while (rs.next()) {
+                rows.add(new Row(rs.getInt("ID"), rs.getString("MimeType"), rs.getString("FilePath"),
+                                 rs.getString("ContentHash"),
+                                 AttachmentStore.Codec.fromDatabase(rs.getString("Codec"))));
+            }
+            return rows;
+
+        } catch (SQLException e) {
+            System.err.println("Error reading attachments to migrate: " + e.getMessage());
+            return null;
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+    }
+
+    private static final class Row {
+        final int id;
+        final String mimeType;
+        final String filePath;
+        final String contentHash;
+        final AttachmentStore.Codec codec;
+
+        Row(int id, String mimeType, String filePath, String contentHash, AttachmentStore.Codec codec) {
+            this.id = id;
+            this.mimeType = mimeType;
+            this.filePath = filePath;
+            this.contentHash = contentHash;
+            this.codec = codec;
+        }
+    }
+
+    /**
+     * Progress and result of a migration run
+     */
+    public static final class Report {
+        private final long startNanos = System.nanoTime();
+        private long elapsedMillis;
+        private int lastId;
+        private int batches;
+        private int scanned;
+        private int moved;
+        private int current;
+        private int skipped;
+        private int failed;
+
+        Report(int afterId) {
+            this.lastId = afterId;
+        }
+
+        void finish() {
+            elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        /**
+         * Highest Attachment ID processed (resume from here)
+         */
+        public int getLastId() {
+            return lastId;
+        }
+
+        public int getBatches() {
+            return batches;
+        }
+
+        public int getScanned() {
+            return scanned;
+        }
+
+        /**
+         * Rows now pointing at a file in the current layout that did not before
+         */
+        public int getMoved() {
+            return moved;
+        }
+
+        /**
+         * Rows that were already in the current layout
+         */
+        public int getCurrent() {
+            return current;
+        }
+
+        /**
+         * Rows deleted or moved by someone else while the run was in progress
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    "lastId=" + lastId +
+                    ", scanned=" + scanned +
+                    ", moved=" + moved +
+                    ", current=" + current +
+                    ", skipped=" + skipped +
+                    ", failed=" + failed +
+                    '}';
+        }
+    }
+}
@@ -2,10 +2,26 @@ package services;
 
 import entities.Attachment;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 /**
  * AttachmentService - File Attachment Management Service
@@ -13,16 +29,46 @@ import java.util.List;
  * Handles file attachment operations including upload, download,
  * and deletion. Stores files in the file system and metadata in database.
  * 
+ * Files are stored once per distinct content (AttachmentStore, keyed by
+ * SHA-256). Attachment rows record the hash in ContentHash; the number of
+ * rows with a hash is its reference count, and the file is removed when
+ * the last of them is deleted. Rows saved before content addressing have
+ * no hash and own their file.
+ * 
+ * Payloads of compressible types (text, CSV, legacy Office formats, ...)
+ * are stored Deflater-compressed unless attachments.compression=false.
+ * Attachment.FileSize stays the original size, which is what counters and
+ * quotas use; StoredSize is the size on disk and Codec how to read it.
+ * Reads inflate on the fly, so callers always get the original bytes.
+ * 
  * @version 1.0
  * @since 2025-01-09
  */
 public class AttachmentService {
     
     private DatabaseHelper dbHelper;
-    private static final String ATTACHMENT_BASE_PATH = "attachments";
+    private final MailboxCounterService counterService;
+    private final AttachmentStore store;
+    private final boolean compressionEnabled;
+    private final ExecutorService ingestExecutor;
+    // Storage root (attachments.root), relative to the working directory unless absolute
+    private final String basePath;
+    private static final String DEFAULT_ATTACHMENT_BASE_PATH = "attachments";
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    // Files copied at once by saveAttachments (disk-bound; a few threads saturate it)
+    private static final int MAX_INGEST_THREADS = 4;
+    
+    // Called with the EmailID after attachments of an email were saved or deleted
+    private volatile IntConsumer changeListener;
     
     public AttachmentService(DatabaseHelper dbHelper) {
         this.dbHelper = dbHelper;
+        this.counterService = new MailboxCounterService(dbHelper);
+        this.basePath = dbHelper.getSetting("attachments.root", DEFAULT_ATTACHMENT_BASE_PATH).trim();
+        this.store = new AttachmentStore(basePath);
+        this.compressionEnabled = Boolean.parseBoolean(dbHelper.getSetting("attachments.compression", "true"));
+        this.ingestExecutor = newIngestExecutor(
+            Math.max(2, Math.min(MAX_INGEST_THREADS, Runtime.getRuntime().availableProcessors())));
         initializeAttachmentDirectory();
     }
     
@@ -31,7 +77,7 @@ public class AttachmentService {
      */
     private void initializeAttachmentDirectory() {
         try {
-            File baseDir = new File(ATTACHMENT_BASE_PATH);
+            File baseDir = new File(basePath);
             if (!baseDir.exists()) {
                 baseDir.mkdirs();
                 System.out.println("✓ Created attachments directory");
@@ -42,72 +88,780 @@ public class AttachmentService {
     }
     
     /**
-     * Save attachment to file system and database
+     * Save attachment to file system and database.
+     * The file is copied and hashed in one pass; if its content is already
+     * stored, the new row shares the existing file.
+     * The Attachment row, the email's AttachmentCount/TotalAttachmentBytes and
+     * the participants' mailbox byte counters are written in the same transaction.
      */
     public boolean saveAttachment(int emailId, File file) {
-        if (file == null || !file.exists() || !file.isFile()) {
-            System.err.println("Invalid file");
-            return false;
+        return saveAttachments(emailId, Collections.singletonList(file)) == 1;
+    }
+    
+    /**
+     * Save several attachments of one email.
+     * Files are copied, compressed and hashed in parallel on the ingest pool,
+     * outside any transaction, so the copy phase takes about as long as the
+     * largest file. All Attachment rows are then written with one batched
+     * INSERT, and the email's counters with one UPDATE, in a single transaction.
+     * Files that cannot be read are skipped; a database error saves none.
+     * @return number of attachments saved
+     */
+    public int saveAttachments(int emailId, List<File> files) {
+        List<File> valid = new ArrayList<>();
+        for (File file : files) {
+            if (file == null || !file.exists() || !file.isFile()) {
+                System.err.println("Invalid file: " + file);
+            } else {
+                valid.add(file);
+            }
+        }
+        if (valid.isEmpty()) {
+            return 0;
+        }
+        
+        List<StagedFile> staged = stageAll(valid);
+        if (staged.isEmpty()) {
+            return 0;
         }
+        // Insert in hash order so concurrent saves lock idx_content_hash ranges in the same order
+        staged.sort(Comparator.comparing(s -> s.blob.getContentHash()));
         
         Connection conn = null;
         PreparedStatement pstmt = null;
-        PreparedStatement pstmtGetUser = null;
-        ResultSet rs = null;
+        PreparedStatement pstmtCounters = null;
         
         try {
             conn = dbHelper.getConnection();
+            conn.setAutoCommit(false); // Start transaction
             
-            // Get user ID from email
-            String sqlGetUser = "SELECT UserID FROM EmailUser WHERE EmailID = ? AND Role = 'Sender' LIMIT 1";
-            pstmtGetUser = conn.prepareStatement(sqlGetUser);
-            pstmtGetUser.setInt(1, emailId);
-            rs = pstmtGetUser.executeQuery();
-            
-            int userId = 0;
-            if (rs.next()) {
-                userId = rs.getInt("UserID");
-            } else {
-                System.err.println("Email not found");
-                return false;
+            // Save metadata to database (the EmailID foreign key rejects unknown emails)
+            String sql = "INSERT INTO Attachment (EmailID, FileName, FileSize, StoredSize, MimeType, FilePath, " +
+                         "ContentHash, Codec) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+            pstmt = conn.prepareStatement(sql);
+            long totalBytes = 0;
+            for (StagedFile s : staged) {
+                pstmt.setInt(1, emailId);
+                pstmt.setString(2, s.file.getName());
+                pstmt.setLong(3, s.blob.getSize());
+                pstmt.setLong(4, s.blob.getStoredSize());
+                pstmt.setString(5, s.mimeType);
+                pstmt.setString(6, store.pathFor(s.blob.getContentHash(), s.blob.getCodec()).toString());
+                pstmt.setString(7, s.blob.getContentHash());
+                pstmt.setString(8, s.blob.getCodec().name());
+                pstmt.addBatch();
+                totalBytes += s.blob.getSize();
             }
+            pstmt.executeBatch();
+            
+            // Keep the denormalized counters on Email in step
+            pstmtCounters = conn.prepareStatement(
+                "UPDATE Email SET AttachmentCount = AttachmentCount + ?, " +
+                "TotalAttachmentBytes = TotalAttachmentBytes + ? WHERE EmailID = ?");
+            pstmtCounters.setInt(1, staged.size());
+            pstmtCounters.setLong(2, totalBytes);
+            pstmtCounters.setInt(3, emailId);
+            pstmtCounters.executeUpdate();
+            counterService.addAttachmentBytes(conn, emailId, totalBytes);
             
-            // Create user-specific directory
-            File userDir = new File(ATTACHMENT_BASE_PATH + File.separator + "user_" + userId);
-            if (!userDir.exists()) {
-                userDir.mkdirs();
+            // Publish after the rows are inserted: an insert waits for a concurrent
+            // deleteAttachment of the same content, so its file is never removed under us
+            for (StagedFile s : staged) {
+                boolean stored = store.publish(s.blob);
+                System.out.println("Attachment saved: " + s.file.getName() +
+                                   (stored ? "" : " (content already stored)") +
+                                   (s.blob.getCodec() == AttachmentStore.Codec.NONE ? ""
+                                        : " (" + s.blob.getSize() + " -> " + s.blob.getStoredSize() + " bytes)"));
             }
             
-            // Generate unique filename
-            long timestamp = System.currentTimeMillis();
-            String uniqueFilename = timestamp + "_" + file.getName();
-            String destPath = userDir.getPath() + File.separator + uniqueFilename;
+            conn.commit(); // Commit transaction
+            notifyChanged(emailId);
+            return staged.size();
             
-            // Copy file
-            Files.copy(file.toPath(), Paths.get(destPath), StandardCopyOption.REPLACE_EXISTING);
+        } catch (SQLException | IOException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Rollback error: " + ex.getMessage());
+                }
+            }
+            for (StagedFile s : staged) {
+                store.discard(s.blob);
+            }
+            System.err.println("Error saving attachments: " + e.getMessage());
+            e.printStackTrace();
+            return 0;
+        } finally {
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeStatement(pstmtCounters);
+            resetAutoCommit(conn);
+            dbHelper.closeConnection(conn);
+        }
+    }
+    
+    /**
+     * Copy, compress and hash files in parallel; a single file is staged on the calling thread
+     * @return the files that were staged (failures are logged and left out)
+     */
+    private List<StagedFile> stageAll(List<File> files) {
+        List<StagedFile> staged = new ArrayList<>();
+        if (files.size() == 1) {
+            StagedFile s = stageOne(files.get(0));
+            if (s != null) {
+                staged.add(s);
+            }
+            return staged;
+        }
+        
+        List<CompletableFuture<StagedFile>> futures = new ArrayList<>();
+        for (File file : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> stageOne(file), ingestExecutor));
+        }
+        for (CompletableFuture<StagedFile> future : futures) {
+            StagedFile s = future.join();
+            if (s != null) {
+                staged.add(s);
+            }
+        }
+        return staged;
+    }
+    
+    private StagedFile stageOne(File file) {
+        String mimeType = getMimeType(file.getName());
+        try {
+            return new StagedFile(file, mimeType, store.stage(file, chooseCodec(mimeType)));
+        } catch (IOException e) {
+            System.err.println("Error copying attachment " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Stop the ingest threads (call on application exit)
+     */
+    public void shutdown() {
+        ingestExecutor.shutdown();
+    }
+    
+    /**
+     * Get all attachments for an email
+     */
+    public List<Attachment> getEmailAttachments(int emailId) {
+        List<Attachment> attachments = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbHelper.getConnection();
             
-            // Save metadata to database
-            String sql = "INSERT INTO Attachment (EmailID, FileName, FileSize, MimeType, FilePath) VALUES (?, ?, ?, ?, ?)";
+            String sql = "SELECT * FROM Attachment WHERE EmailID = ? ORDER BY UploadedAt ASC";
             pstmt = conn.prepareStatement(sql);
             pstmt.setInt(1, emailId);
-            pstmt.setString(2, file.getName());
-            pstmt.setLong(3, file.length());
-            pstmt.setString(4, getMimeType(file.getName()));
-            pstmt.setString(5, destPath);
             
-            int rows = pstmt.executeUpdate();
+            rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                attachments.add(mapAttachment(rs));
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error getting attachments: " + e.getMessage());
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+        
+        return attachments;
+    }
+    
+    /**
+     * Get the attachments of several emails in one query
+     * (used to prefetch the preview of neighbouring rows)
+     * @return EmailID -> attachments; emails without attachments are missing
+     */
+    public Map<Integer, List<Attachment>> getAttachmentsForEmails(Collection<Integer> emailIds) {
+        Map<Integer, List<Attachment>> attachments = new HashMap<>();
+        if (emailIds == null || emailIds.isEmpty()) {
+            return attachments;
+        }
+        
+        List<Integer> ids = new ArrayList<>(new TreeSet<>(emailIds));
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbHelper.getConnection();
+            
+            StringBuilder sql = new StringBuilder("SELECT * FROM Attachment WHERE EmailID IN (");
+            for (int i = 0; i < ids.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(") ORDER BY EmailID, UploadedAt ASC");
+            pstmt = conn.prepareStatement(sql.toString());
+            for (int i = 0; i < ids.size(); i++) {
+                pstmt.setInt(i + 1, ids.get(i));
+            }
+            
+            rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                Attachment attachment = mapAttachment(rs);
+                attachments.computeIfAbsent(attachment.getEmailId(), id -> new ArrayList<>()).add(attachment);
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error getting attachments: " + e.getMessage());
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+        
+        return attachments;
+    }
+    
+    /**
+     * Get one attachment's metadata
+     * @return attachment, or null if not found
+     */
+    public Attachment getAttachment(int attachmentId) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbHelper.getConnection();
+            pstmt = conn.prepareStatement("SELECT * FROM Attachment WHERE ID = ?");
+            pstmt.setInt(1, attachmentId);
+            rs = pstmt.executeQuery();
             
-            if (rows > 0) {
-                System.out.println("Attachment saved: " + file.getName());
-                return true;
+            if (rs.next()) {
+                return mapAttachment(rs);
             }
             
+        } catch (SQLException e) {
+            System.err.println("Error getting attachment: " + e.getMessage());
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Copy an attachment to a file
+     */
+    public boolean downloadAttachment(int attachmentId, String destinationPath) {
+        try (FileChannel out = FileChannel.open(Paths.get(destinationPath), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return transferAttachment(attachmentId, 0, -1, out) >= 0;
+        } catch (IOException e) {
+            System.err.println("Error downloading attachment: " + e.getMessage());
             return false;
+        }
+    }
+    
+    /**
+     * Stream a whole attachment to a channel
+     * @return bytes written, or -1 on error
+     */
+    public long transferAttachment(int attachmentId, WritableByteChannel target) {
+        return transferAttachment(attachmentId, 0, -1, target);
+    }
+    
+    /**
+     * Stream a byte range of an attachment to an output stream
+     * (the stream is not closed). Not zero-copy: the stream is wrapped with
+     * Channels.newChannel, so every byte is copied through a heap buffer.
+     * Pass a FileChannel or SocketChannel to the channel overload to avoid that.
+     * @return bytes written, or -1 on error
+     */
+    public long transferAttachment(int attachmentId, long offset, long length, OutputStream out) {
+        return transferAttachment(attachmentId, offset, length, Channels.newChannel(out));
+    }
+    
+    /**
+     * Open an attachment's original content as a stream (compressed payloads are
+     * inflated as it is read). The caller closes the stream.
+     * @return stream, or null if the attachment or its file is missing
+     */
+    public InputStream openAttachment(int attachmentId) {
+        Attachment attachment = getAttachment(attachmentId);
+        if (attachment == null) {
+            System.err.println("Attachment not found: " + attachmentId);
+            return null;
+        }
+        try {
+            return store.open(Paths.get(attachment.getFilePath()), codecOf(attachment));
+        } catch (IOException e) {
+            System.err.println("Error opening attachment " + attachmentId + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Stream a byte range of an attachment to a channel.
+     * Uncompressed payloads use FileChannel.transferTo: the bytes go from the
+     * file to the target without passing through the Java heap (sendfile for
+     * sockets, copy_file_range for files where the OS supports it). Compressed
+     * payloads are inflated through a fixed-size buffer. Each call opens its
+     * own read-only channel, so any number of readers can stream the same
+     * attachment at once. Offsets always refer to the original content.
+     * The target must be in blocking mode: a non-blocking channel that accepts
+     * nothing would make the copy loop spin, so it is rejected up front, and a
+     * target that stops accepting bytes ends the transfer with an error.
+     * @param offset first byte to send
+     * @param length bytes to send; -1 (or more than remain) sends to the end of the file
+     * @return bytes written, or -1 on error (unknown attachment, missing file, offset past the end,
+     *         non-blocking or stalled target)
+     */
+    public long transferAttachment(int attachmentId, long offset, long length, WritableByteChannel target) {
+        if (target instanceof SelectableChannel && !((SelectableChannel) target).isBlocking()) {
+            System.err.println("Cannot stream attachment " + attachmentId + " to a non-blocking channel");
+            return -1;
+        }
+        Attachment attachment = getAttachment(attachmentId);
+        if (attachment == null) {
+            System.err.println("Attachment not found: " + attachmentId);
+            return -1;
+        }
+        if (codecOf(attachment) != AttachmentStore.Codec.NONE) {
+            return inflateRange(attachment, offset, length, target);
+        }
+        
+        try (FileChannel in = FileChannel.open(Paths.get(attachment.getFilePath()), StandardOpenOption.READ)) {
+            long size = in.size();
+            if (offset < 0 || offset > size) {
+                System.err.println("Invalid range for attachment " + attachmentId + ": offset " + offset +
+                                   ", size " + size);
+                return -1;
+            }
+            long remaining = (length < 0 || length > size - offset) ? size - offset : length;
             
-        } catch (SQLException | IOException e) {
-            System.err.println("Error saving attachment: " + e.getMessage());
-            e.printStackTrace();
+            // transferTo may send fewer bytes than asked; 0 means the file
+            // shrank underneath us or the target stopped accepting bytes
+            long position = offset;
+            long end = offset + remaining;
+            while (position < end) {
+                long sent = in.transferTo(position, end - position, target);
+                if (sent <= 0) {
+                    if (position >= in.size()) {
+                        break;
+                    }
+                    throw new IOException("target accepted no bytes at offset " + position);
+                }
+                position += sent;
+            }
+            return position - offset;
+            
+        } catch (IOException e) {
+            System.err.println("Error streaming attachment " + attachmentId + ": " + e.getMessage());
+            return -1;
+        }
+    }
+    
+    /**
+     * Inflate a byte range of a compressed attachment into a channel.
+     * Skipping to the offset has to decompress what comes before it.
+     */
+    private long inflateRange(Attachment attachment, long offset, long length, WritableByteChannel target) {
+        long size = attachment.getFileSize();
+        if (offset < 0 || offset > size) {
+            System.err.println("Invalid range for attachment " + attachment.getAttachmentId() + ": offset " +
+                               offset + ", size " + size);
+            return -1;
+        }
+        long remaining = (length < 0 || length > size - offset) ? size - offset : length;
+        
+        try (InputStream in = store.open(Paths.get(attachment.getFilePath()), AttachmentStore.Codec.DEFLATE)) {
+            long skipped = 0;
+            while (skipped < offset) {
+                long n = in.skip(offset - skipped);
+                if (n <= 0) {
+                    return 0; // content shorter than recorded
+                }
+                skipped += n;
+            }
+            
+            ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+            long written = 0;
+            while (written < remaining) {
+                int read = in.read(buffer.array(), 0, (int) Math.min(buffer.capacity(), remaining - written));
+                if (read < 0) {
+                    break;
+                }
+                buffer.limit(read);
+                while (buffer.hasRemaining()) {
+                    if (target.write(buffer) <= 0) {
+                        throw new IOException("target accepted no bytes at offset " + (offset + written));
+                    }
+                }
+                buffer.clear();
+                written += read;
+            }
+            return written;
+            
+        } catch (IOException e) {
+            System.err.println("Error streaming attachment " + attachment.getAttachmentId() + ": " + e.getMessage());
+            return -1;
+        }
+    }
+    
+    /**
+     * Delete attachment from database and file system.
+     * The email's attachment counters are decremented in the same transaction.
+     * A content-addressed file is removed only with the last row that references it,
+     * and only after the delete has committed.
+     */
+    public boolean deleteAttachment(int attachmentId) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        String filePath = null;
+        String contentHash = null;
+        boolean lastReference = false;
+        int emailId;
+        
+        try {
+            conn = dbHelper.getConnection();
+            conn.setAutoCommit(false); // Start transaction
+            
+            // Lock the row and read what the counters need
+            pstmt = conn.prepareStatement(
+                "SELECT EmailID, FileSize, FilePath, ContentHash FROM Attachment WHERE ID = ? FOR UPDATE");
+            pstmt.setInt(1, attachmentId);
+            rs = pstmt.executeQuery();
+            
+            if (!rs.next()) {
+                conn.rollback();
+                System.err.println("Attachment not found: " + attachmentId);
+                return false;
+            }
+            
+            emailId = rs.getInt("EmailID");
+            long fileSize = rs.getLong("FileSize");
+            filePath = rs.getString("FilePath");
+            contentHash = rs.getString("ContentHash");
+            rs.close();
+            pstmt.close();
+            
+            pstmt = conn.prepareStatement("DELETE FROM Attachment WHERE ID = ?");
+            pstmt.setInt(1, attachmentId);
+            pstmt.executeUpdate();
+            pstmt.close();
+            
+            pstmt = conn.prepareStatement(
+                "UPDATE Email SET AttachmentCount = GREATEST(AttachmentCount - 1, 0), " +
+                "TotalAttachmentBytes = GREATEST(TotalAttachmentBytes - ?, 0) WHERE EmailID = ?");
+            pstmt.setLong(1, fileSize);
+            pstmt.setInt(2, emailId);
+            pstmt.executeUpdate();
+            counterService.addAttachmentBytes(conn, emailId, -fileSize);
+            
+            if (contentHash != null) {
+                // The locking read also locks the hash's index range, so no new
+                // reference can be inserted until this transaction ends.
+                // References are counted per file: during a layout migration the
+                // same content can briefly exist at two paths.
+                pstmt.close();
+                pstmt = conn.prepareStatement(
+                    "SELECT COUNT(*) FROM Attachment WHERE ContentHash = ? AND FilePath = ? FOR UPDATE");
+                pstmt.setString(1, contentHash);
+                pstmt.setString(2, filePath);
+                rs = pstmt.executeQuery();
+                lastReference = (rs.next() ? rs.getLong(1) : 0) == 0;
+            }
+            
+            conn.commit(); // Commit transaction
+            
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Rollback error: " + ex.getMessage());
+                }
+            }
+            System.err.println("Error deleting attachment: " + e.getMessage());
             return false;
         } finally {
             dbHelper.closeResultSet(rs);
-            dbHelper.closeStatement(pstmtGetUser);
+            dbHelper.closeStatement(pstmt);
+            resetAutoCommit(conn);
+            dbHelper.closeConnection(conn);
+        }
+        
+        // Remove a file of its own only once the row is gone
+        if (contentHash == null) {
+            try {
+                Files.deleteIfExists(Paths.get(filePath));
+            } catch (IOException e) {
+                System.err.println("Attachment row deleted but file could not be removed: " + filePath);
+            }
+        } else if (lastReference) {
+            releaseBlob(contentHash, filePath);
+        }
+        notifyChanged(emailId);
+        return true;
+    }
+    
+    /**
+     * Remove a shared file whose last reference was deleted. Runs after that
+     * delete has committed (a failed commit must not lose the file) and counts
+     * the references again under the same locking read: a save of the same
+     * content that got in between keeps the file, and one still waiting
+     * publishes it again after this transaction. If this step fails the file
+     * is left for AttachmentGarbageCollector.
+     */
+    private void releaseBlob(String contentHash, String filePath) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbHelper.getConnection();
+            conn.setAutoCommit(false);
+            pstmt = conn.prepareStatement(
+                "SELECT COUNT(*) FROM Attachment WHERE ContentHash = ? AND FilePath = ? FOR UPDATE");
+            pstmt.setString(1, contentHash);
+            pstmt.setString(2, filePath);
+            rs = pstmt.executeQuery();
+            if (rs.next() && rs.getLong(1) == 0) {
+                store.delete(Paths.get(filePath));
+            }
+            conn.commit();
+            
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Rollback error: " + ex.getMessage());
+                }
+            }
+            System.err.println("Attachment row deleted but file could not be released: " + filePath +
+                               " (" + e.getMessage() + ")");
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            resetAutoCommit(conn);
+            dbHelper.closeConnection(conn);
+        }
+    }
+    
+    /**
+     * Number of Attachment rows that share a stored file (its reference count)
+     * @return count, or -1 on error
+     */
+    public long getReferenceCount(String contentHash) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbHelper.getConnection();
+            pstmt = conn.prepareStatement("SELECT COUNT(*) FROM Attachment WHERE ContentHash = ?");
+            pstmt.setString(1, contentHash);
+            rs = pstmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+            
+        } catch (SQLException e) {
+            System.err.println("Error counting attachment references: " + e.getMessage());
+            return -1;
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+    }
+    
+    /**
+     * Notify a listener after an email's attachments were saved or deleted
+     * (e.g. to drop cached attachment lists). Runs on the calling thread.
+     */
+    public void setChangeListener(IntConsumer changeListener) {
+        this.changeListener = changeListener;
+    }
+    
+    private void notifyChanged(int emailId) {
+        IntConsumer listener = changeListener;
+        if (listener != null) {
+            listener.accept(emailId);
+        }
+    }
+    
+    /**
+     * Content-addressed file store (deduplication metrics)
+     */
+    public AttachmentStore getStore() {
+        return store;
+    }
+    
+    /**
+     * Storage root directory
+     */
+    public String getBasePath() {
+        return basePath;
+    }
+    
+    /**
+     * Get total size of all attachments for an email (maintained on Email, no aggregate query)
+     */
+    public long getTotalAttachmentSize(int emailId) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = dbHelper.getConnection();
+            pstmt = conn.prepareStatement("SELECT TotalAttachmentBytes FROM Email WHERE EmailID = ?");
+            pstmt.setInt(1, emailId);
+            rs = pstmt.executeQuery();
+            
+            if (rs.next()) {
+                return rs.getLong(1);
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error getting attachment size: " + e.getMessage());
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+        
+        return 0;
+    }
+    
+    /**
+     * Codec new payloads of this MIME type are stored with.
+     * Formats that are already compressed (images other than BMP, archives,
+     * media, PDF, OOXML) gain nothing and are stored as they are.
+     */
+    public AttachmentStore.Codec chooseCodec(String mimeType) {
+        if (!compressionEnabled || mimeType == null) {
+            return AttachmentStore.Codec.NONE;
+        }
+        if (mimeType.startsWith("text/")) {
+            return AttachmentStore.Codec.DEFLATE;
+        }
+        switch (mimeType) {
+            case "application/json":
+            case "application/xml":
+            case "application/msword":
+            case "application/vnd.ms-excel":
+            case "application/vnd.ms-powerpoint":
+            case "image/bmp":
+                return AttachmentStore.Codec.DEFLATE;
+            default:
+                return AttachmentStore.Codec.NONE;
+        }
+    }
+    
+    private static AttachmentStore.Codec codecOf(Attachment attachment) {
+        return AttachmentStore.Codec.fromDatabase(attachment.getCodec());
+    }
+    
+    /**
+     * Determine MIME type from file extension
+     */
+    public String getMimeType(String fileName) {
+        if (fileName == null || !fileName.contains(".")) {
+            return "application/octet-stream";
+        }
+        
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase();
+        
+        switch (extension) {
+            // Documents
+            case "pdf": return "application/pdf";
+            case "doc": return "application/msword";
+            case "docx": return "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+            case "xls": return "application/vnd.ms-excel";
+            case "xlsx": return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+            case "ppt": return "application/vnd.ms-powerpoint";
+            case "pptx": return "application/vnd.openxmlformats-officedocument.presentationml.presentation";
+            case "txt":
+            case "log": return "text/plain";
+            case "csv": return "text/csv";
+            case "htm":
+            case "html": return "text/html";
+            case "json": return "application/json";
+            case "xml": return "application/xml";
+            // Images
+            case "jpg":
+            case "jpeg": return "image/jpeg";
+            case "png": return "image/png";
+            case "gif": return "image/gif";
+            case "bmp": return "image/bmp";
+            // Archives
+            case "zip": return "application/zip";
+            case "rar": return "application/vnd.rar";
+            case "7z": return "application/x-7z-compressed";
+            // Media
+            case "mp3": return "audio/mpeg";
+            case "mp4": return "video/mp4";
+            case "avi": return "video/x-msvideo";
+            default: return "application/octet-stream";
+        }
+    }
+    
+    private Attachment mapAttachment(ResultSet rs) throws SQLException {
+        Attachment attachment = new Attachment();
+        attachment.setAttachmentId(rs.getInt("ID"));
+        attachment.setEmailId(rs.getInt("EmailID"));
+        attachment.setFileName(rs.getString("FileName"));
+        attachment.setFileSize(rs.getLong("FileSize"));
+        long storedSize = rs.getLong("StoredSize");
+        attachment.setStoredSize(rs.wasNull() ? attachment.getFileSize() : storedSize);
+        attachment.setMimeType(rs.getString("MimeType"));
+        attachment.setFilePath(rs.getString("FilePath"));
+        attachment.setContentHash(rs.getString("ContentHash"));
+        attachment.setCodec(rs.getString("Codec"));
+        attachment.setUploadedAt(rs.getTimestamp("UploadedAt"));
+        return attachment;
+    }
+    
+    private static ExecutorService newIngestExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "attachment-ingest-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Restore autocommit before the connection goes back to the pool
+     */
+    private void resetAutoCommit(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.err.println("Error resetting autocommit: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * A file copied into the store's staging area, waiting for its row
+     */
+    private static final class StagedFile {
+        final File file;
+        final String mimeType;
+        final AttachmentStore.StagedBlob blob;
+        
+        StagedFile(File file, String mimeType, AttachmentStore.StagedBlob blob) {
+            this.file = file;
+            this.mimeType = mimeType;
+            this.blob = blob;
+        }
+    }
+}
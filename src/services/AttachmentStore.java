@@ -0,0 +1,401 @@
+package services;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * AttachmentStore - Content-Addressed Attachment Files
+ *
+ * Stores attachment payloads under the SHA-256 of their content, so an
+ * identical file attached or forwarded many times is kept on disk once:
+ *
+ *   <root>/blobs/<hex 1-2>/<hex 3-4>/<sha-256>           (Codec.NONE)
+ *   <root>/blobs/<hex 1-2>/<hex 3-4>/<sha-256>.deflate   (Codec.DEFLATE)
+ *
+ * Two levels of 256 directories keep every directory small: a million
+ * files average about 15 per leaf directory.
+ *
+ * The hash is always of the original bytes. A payload may be stored
+ * compressed (zlib/Deflater); open() undoes the compression as the stream
+ * is read, so callers only ever see the original content.
+ *
+ * Storing is split in two steps so the caller can tie it to its database
+ * transaction:
+ * - stage() copies the source into a temporary file, compressing it if
+ *   asked, and hashes the bytes as they are copied (one read of the
+ *   source, no second pass).
+ * - publish() moves the staged file to its content path, or drops it if
+ *   that content is already stored; discard() drops it after a failure.
+ *
+ * Which Attachment rows use a blob is recorded in Attachment.ContentHash;
+ * AttachmentService counts those rows to decide when a blob can be removed.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class AttachmentStore {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path blobRoot;
+    private final Path stagingDir;
+
+    // Metrics
+    private final AtomicLong storedCount = new AtomicLong();
+    private final AtomicLong dedupCount = new AtomicLong();
+    private final AtomicLong dedupBytes = new AtomicLong();
+    private final AtomicLong logicalBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    public AttachmentStore(String baseDir) {
+        this.blobRoot = Paths.get(baseDir, "blobs");
+        this.stagingDir = blobRoot.resolve("tmp");
+    }
+
+    /**
+     * Copy a file into the staging area, hashing it while it is copied
+     * @param codec how to store the payload
+     */
+    public StagedBlob stage(File source, Codec codec) throws IOException {
+        Files.createDirectories(stagingDir);
+        Path temp = Files.createTempFile(stagingDir, "upload_", ".tmp");
+
+        MessageDigest digest = newDigest();
+        Deflater deflater = codec == Codec.DEFLATE ? new Deflater(Deflater.DEFAULT_COMPRESSION) : null;
+        long size = 0;
+        try (InputStream in = Files.newInputStream(source.toPath());
+             OutputStream out = deflater != null
+                     ? new DeflaterOutputStream(Files.newOutputStream(temp), deflater, COPY_BUFFER_SIZE)
+                     : Files.newOutputStream(temp)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+
+        return new StagedBlob(toHex(digest.digest()), codec, size, Files.size(temp), temp);
+    }
+
+    /**
+     * Read a stored payload; compressed payloads are inflated as the stream is read
+     */
+    public InputStream open(Path path, Codec codec) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        if (codec == Codec.DEFLATE) {
+            return new InflaterInputStream(in, new Inflater(), COPY_BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end(); // not ended by InflaterInputStream when supplied by the caller
+                }
+            };
+        }
+        return new BufferedInputStream(in, COPY_BUFFER_SIZE);
+    }
+
+    /**
+     * Move a staged file to its content path; if that content is already
+     * stored the staged copy is dropped instead
+     * @return true if a new file was stored, false if it was a duplicate
+     */
+    public boolean publish(StagedBlob blob) throws IOException {
+        Path target = pathFor(blob.getContentHash(), blob.getCodec());
+        if (Files.exists(target)) {
+            Files.deleteIfExists(blob.tempPath);
+            dedupCount.incrementAndGet();
+            dedupBytes.addAndGet(blob.getStoredSize());
+            return false;
+        }
+
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(blob.tempPath, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Same content published concurrently - either copy will do
+            Files.deleteIfExists(blob.tempPath);
+            dedupCount.incrementAndGet();
+            dedupBytes.addAndGet(blob.getStoredSize());
+            return false;
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(blob.tempPath, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        storedCount.incrementAndGet();
+        logicalBytes.addAndGet(blob.getSize());
+        storedBytes.addAndGet(blob.getStoredSize());
+        return true;
+    }
+
+    /**
+     * Drop a staged file that will not be published
+     */
+    public void discard(StagedBlob blob) {
+        if (blob == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(blob.tempPath);
+        } catch (IOException e) {
+            System.err.println("Error removing staged attachment: " + blob.tempPath);
+        }
+    }
+
+    /**
+     * Remove a stored blob (once no Attachment row references it)
+     */
+    public boolean delete(Path path) {
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Error removing attachment file " + path + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Make an already stored payload available at its content path without
+     * touching the original: a hard link where the file system allows it,
+     * otherwise a copy (used when moving files to the current layout).
+     * The file is touched, so the orphan collector's grace period protects it
+     * until the caller has pointed its rows at it.
+     * @return the content path
+     */
+    public Path adopt(Path existing, String contentHash, Codec codec) throws IOException {
+        Path target = pathFor(contentHash, codec);
+        if (Files.exists(target)) {
+            touch(target);
+            return target;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, existing);
+            touch(target);
+        } catch (FileAlreadyExistsException e) {
+            touch(target); // adopted concurrently
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.createDirectories(stagingDir);
+            Path temp = Files.createTempFile(stagingDir, "adopt_", ".tmp");
+            try {
+                Files.copy(existing, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        return target;
+    }
+
+    private static void touch(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * Path a blob with this content hash and codec is stored at
+     */
+    public Path pathFor(String contentHash, Codec codec) {
+        return blobRoot.resolve(contentHash.substring(0, 2))
+                       .resolve(contentHash.substring(2, 4))
+                       .resolve(contentHash + codec.getSuffix());
+    }
+
+    /**
+     * Directory holding the blobs (and the staging area)
+     */
+    public Path getBlobRoot() {
+        return blobRoot;
+    }
+
+    /**
+     * Directory uploads are staged in before they are published
+     */
+    public Path getStagingDir() {
+        return stagingDir;
+    }
+
+    /**
+     * Content hash a blob file is named after
+     * @return hash, or null if the file name is not a blob name
+     */
+    public static String contentHashOf(Path file) {
+        String name = file.getFileName().toString();
+        if (name.length() < 64) {
+            return null;
+        }
+        String suffix = name.substring(64);
+        if (!suffix.equals(Codec.NONE.getSuffix()) && !suffix.equals(Codec.DEFLATE.getSuffix())) {
+            return null;
+        }
+        for (int i = 0; i < 64; i++) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return null;
+            }
+        }
+        return name.substring(0, 64);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(HASH_ALGORITHM + " not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    // Metrics getters
+
+    public long getStoredCount() {
+        return storedCount.get();
+    }
+
+    public long getDedupCount() {
+        return dedupCount.get();
+    }
+
+    /**
+     * Bytes not written to disk because the content was already stored
+     */
+    public long getDedupBytes() {
+        return dedupBytes.get();
+    }
+
+    /**
+     * Original size of the payloads stored (not counting duplicates)
+     */
+    public long getLogicalBytes() {
+        return logicalBytes.get();
+    }
+
+    /**
+     * Disk space those payloads take after compression
+     */
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    /**
+     * Get compression ratio in percent (stored size of the original size)
+     */
+    public double getCompressionRatio() {
+        long logical = logicalBytes.get();
+        if (logical == 0) return 100.0;
+        return (storedBytes.get() * 100.0) / logical;
+    }
+
+    @Override
+    public String toString() {
+        return "AttachmentStore{" +
+                "stored=" + getStoredCount() +
+                ", deduplicated=" + getDedupCount() +
+                ", bytesSaved=" + getDedupBytes() +
+                ", compression=" + String.format("%.1f%%", getCompressionRatio()) +
+                '}';
+    }
+
+    /**
+     * How a payload is stored on disk (Attachment.Codec)
+     */
+    public enum Codec {
+        NONE(""),
+        DEFLATE(".deflate");
+
+        private final String suffix;
+
+        Codec(String suffix) {
+            this.suffix = suffix;
+        }
+
+        String getSuffix() {
+            return suffix;
+        }
+
+        /**
+         * Codec of an Attachment.Codec value (NULL on rows older than the column = NONE)
+         */
+        public static Codec fromDatabase(String value) {
+            return value == null ? NONE : valueOf(value);
+        }
+    }
+
+    /**
+     * A copied and hashed file waiting to be published
+     */
+    public static final class StagedBlob {
+        private final String contentHash;
+        private final Codec codec;
+        private final long size;
+        private final long storedSize;
+        private final Path tempPath;
+
+        StagedBlob(String contentHash, Codec codec, long size, long storedSize, Path tempPath) {
+            this.contentHash = contentHash;
+            this.codec = codec;
+            this.size = size;
+            this.storedSize = storedSize;
+            this.tempPath = tempPath;
+        }
+
+        /**
+         * SHA-256 of the content as 64 lower-case hex digits
+         */
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public Codec getCodec() {
+            return codec;
+        }
+
+        /**
+         * Original (logical) size in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Size on disk after compression
+         */
+        public long getStoredSize() {
+            return storedSize;
+        }
+    }
+}
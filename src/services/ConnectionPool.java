@@ -0,0 +1,353 @@
+package services;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConnectionPool - Bounded JDBC Connection Pool
+ *
+ * Keeps physical MySQL connections open between service calls so each
+ * operation no longer pays a TCP + authentication handshake.
+ *
+ * Borrowed connections are proxies: calling close() returns the physical
+ * connection to the pool instead of closing it, so existing code that uses
+ * dbHelper.closeConnection(conn) or try-with-resources works unchanged.
+ * A returned connection is reset to auto-commit, read-write and its original
+ * transaction isolation, so one borrower's settings never leak to the next.
+ *
+ * Sizing (from database.properties):
+ * - db.pool.size            maximum connections open at once
+ * - db.pool.min.idle        connections opened during warm-up
+ * - db.pool.max.idle        idle connections kept; extra ones are closed on return
+ * - db.connection.timeout   maximum borrow wait in milliseconds
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class ConnectionPool {
+
+    // Connections returned more recently than this are handed out without a ping
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    // user, password and driver options
+    private final Properties connectionProperties;
+    private final int maxSize;
+    private final int minIdle;
+    private final int maxIdle;
+    private final long borrowTimeoutMillis;
+
+    private final LinkedBlockingDeque<PooledEntry> idleConnections = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+
+    public ConnectionPool(String url, Properties connectionProperties,
+                          int maxSize, int minIdle, int maxIdle, long borrowTimeoutMillis) {
+        this.url = url;
+        this.connectionProperties = connectionProperties;
+        this.maxSize = Math.max(1, maxSize);
+        this.maxIdle = Math.max(0, Math.min(maxIdle, this.maxSize));
+        this.minIdle = Math.max(0, Math.min(minIdle, this.maxIdle));
+        this.borrowTimeoutMillis = Math.max(0, borrowTimeoutMillis);
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * Open min.idle connections up front so the first requests after startup
+     * do not pay the handshake cost
+     */
+    public void warmUp() {
+        List<Connection> opened = new ArrayList<>();
+        try {
+            while (idleConnections.size() + opened.size() < minIdle) {
+                opened.add(openPhysicalConnection());
+            }
+        } catch (SQLException e) {
+            System.err.println("Connection pool warm-up stopped: " + e.getMessage());
+        }
+        for (Connection raw : opened) {
+            idleConnections.offerFirst(new PooledEntry(raw));
+        }
+        System.out.println("✓ Connection pool warmed up (" + idleConnections.size() + " idle connections)");
+    }
+
+    /**
+     * Borrow a connection, waiting up to db.connection.timeout for a free slot
+     * @return pooled Connection; close() hands it back to the pool
+     * @throws SQLException if the pool is closed, the wait times out or a new connection cannot be opened
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis +
+                        " ms waiting for a pooled connection (pool size " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledEntry entry;
+            while ((entry = idleConnections.pollFirst()) != null) {
+                if (isUsable(entry)) {
+                    return wrap(entry.connection);
+                }
+                validationFailures.incrementAndGet();
+                closeQuietly(entry.connection);
+            }
+            return wrap(openPhysicalConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Return a physical connection to the pool (called by the proxy's close())
+     * @param readOnlyChanged true if the borrower called setReadOnly
+     * @param isolation isolation to restore, or -1 if the borrower did not change it
+     */
+    private void release(Connection raw, boolean readOnlyChanged, int isolation) {
+        try {
+            if (closed || raw.isClosed()) {
+                closeQuietly(raw);
+                return;
+            }
+
+            // Never hand the next borrower an open transaction
+            if (!raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+            // Only settings the borrower touched are reset: no extra round trips otherwise
+            if (readOnlyChanged) {
+                raw.setReadOnly(false);
+            }
+            if (isolation >= 0) {
+                raw.setTransactionIsolation(isolation);
+            }
+
+            if (idleConnections.size() >= maxIdle) {
+                closeQuietly(raw);
+            } else {
+                idleConnections.offerFirst(new PooledEntry(raw));
+            }
+        } catch (SQLException e) {
+            closeQuietly(raw);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close all idle connections and refuse further borrows.
+     * Connections still in use are closed when they are returned.
+     */
+    public void shutdown() {
+        closed = true;
+        PooledEntry entry;
+        while ((entry = idleConnections.pollFirst()) != null) {
+            closeQuietly(entry.connection);
+        }
+        System.out.println("Connection pool closed. " + this);
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        try {
+            if (entry.connection.isClosed()) {
+                return false;
+            }
+            if (System.nanoTime() - entry.returnedAtNanos < VALIDATION_BYPASS_NANOS) {
+                return true;
+            }
+            return entry.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection openPhysicalConnection() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, connectionProperties);
+        createdCount.incrementAndGet();
+        return raw;
+    }
+
+    private Connection wrap(Connection raw) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new PooledConnectionHandler(raw));
+    }
+
+    private void recordWait(long waitNanos) {
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    private void closeQuietly(Connection raw) {
+        try {
+            raw.close();
+        } catch (SQLException e) {
+            // Ignore - connection is being discarded
+        }
+    }
+
+    // Metrics getters
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getValidationFailures() {
+        return validationFailures.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get();
+        if (borrows == 0) return 0.0;
+        return totalWaitNanos.get() / (borrows * 1_000_000.0);
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "active=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", maxSize=" + maxSize +
+                ", borrows=" + getBorrowCount() +
+                ", avgWait=" + String.format("%.3f ms", getAverageWaitMillis()) +
+                ", maxWait=" + String.format("%.3f ms", getMaxWaitMillis()) +
+                ", timeouts=" + getTimeoutCount() +
+                ", created=" + getCreatedCount() +
+                ", validationFailures=" + getValidationFailures() +
+                '}';
+    }
+
+    /**
+     * Idle physical connection plus the time it was returned
+     */
+    private static class PooledEntry {
+        final Connection connection;
+        final long returnedAtNanos;
+
+        PooledEntry(Connection connection) {
+            this.connection = connection;
+            this.returnedAtNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Delegates every call to the physical connection except close()/isClosed(),
+     * which release the connection back to the pool exactly once.
+     * Records setReadOnly/setTransactionIsolation so release() can undo them.
+     */
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection raw;
+        private boolean released = false;
+        private boolean readOnlyChanged = false;
+        private int originalIsolation = -1; // -1 = not changed
+
+        PooledConnectionHandler(Connection raw) {
+            this.raw = raw;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.equals("close") && method.getParameterCount() == 0) {
+                synchronized (this) {
+                    if (released) return null;
+                    released = true;
+                }
+                release(raw, readOnlyChanged, originalIsolation);
+                return null;
+            }
+            if (name.equals("isClosed") && method.getParameterCount() == 0) {
+                synchronized (this) {
+                    if (released) return true;
+                }
+                return raw.isClosed();
+            }
+            if (name.equals("equals") && method.getParameterCount() == 1) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode") && method.getParameterCount() == 0) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.equals("toString") && method.getParameterCount() == 0) {
+                return "Pooled[" + raw + "]";
+            }
+
+            synchronized (this) {
+                if (released) {
+                    throw new SQLException("Connection has already been returned to the pool");
+                }
+            }
+
+            if (name.equals("setReadOnly")) {
+                readOnlyChanged = true;
+            } else if (name.equals("setTransactionIsolation") && originalIsolation < 0) {
+                originalIsolation = raw.getTransactionIsolation();
+            }
+
+            try {
+                return method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -11,7 +11,9 @@ import java.util.Properties;
  * connection pooling support. Uses MySQL 8.0+ JDBC driver.
  * 
  * Connection Details:
- * - URL: jdbc:mysql://localhost:3306/email_client
+ * - URL: jdbc:mysql://localhost:3306/email_client (driver options such as
+ *   ?useSSL=false&serverTimezone=UTC may follow; rewriteBatchedStatements
+ *   is always set)
  * - User: root (configurable)
  * - Password: empty (configurable)
  * 
@@ -23,14 +25,30 @@ import java.util.Properties;
 public class DatabaseHelper {
     
     // Database configuration - CHANGE THESE AS NEEDED
+    // The database name is taken from the last path segment, before any ?options
     private static final String DB_URL = "jdbc:mysql://localhost:3306/email_client";
     private static final String DB_USER = "root"; // CHANGE THIS
     private static final String DB_PASSWORD = ""; // CHANGE THIS
     private static final String DB_DRIVER = "com.mysql.cj.jdbc.Driver";
     
+    // Connection pool defaults (overridden by db.pool.* / db.connection.timeout)
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final int DEFAULT_POOL_MIN_IDLE = 2;
+    private static final int DEFAULT_POOL_MAX_IDLE = 5;
+    private static final long DEFAULT_CONNECTION_TIMEOUT_MS = 30000;
+    
     // Alternative: Load from properties file
     private Properties dbProperties;
     
+    // Shared connection pool, created on first use
+    private ConnectionPool connectionPool;
+    
+    // System folder IDs shared by EmailService and FolderService
+    private SystemFolderCache systemFolderCache;
+    
+    // Username resolution shared by UserService and EmailService
+    private UserCache userCache;
+    
     /**
      * Constructor - loads configuration
      */
@@ -51,15 +69,19 @@ public class DatabaseHelper {
     
     /**
      * Load database properties from file if exists
+     * (project root first, then config/database.properties)
      */
     private void loadPropertiesIfExists() {
         try {
             File propFile = new File("database.properties");
+            if (!propFile.exists()) {
+                propFile = new File("config" + File.separator + "database.properties");
+            }
             if (propFile.exists()) {
                 dbProperties = new Properties();
                 try (FileInputStream fis = new FileInputStream(propFile)) {
                     dbProperties.load(fis);
-                    System.out.println("✓ Loaded database configuration from database.properties");
+                    System.out.println("✓ Loaded database configuration from " + propFile.getPath());
                 }
             }
         } catch (IOException e) {
@@ -68,27 +90,142 @@ public class DatabaseHelper {
     }
     
     /**
-     * Get database connection
+     * Get database connection from the pool
+     * Closing the returned connection hands it back to the pool.
      * @return Connection object
      * @throws SQLException if connection fails
      */
     public Connection getConnection() throws SQLException {
         try {
-            String url = dbProperties != null ? dbProperties.getProperty("db.url", DB_URL) : DB_URL;
-            String user = dbProperties != null ? dbProperties.getProperty("db.username", DB_USER) : DB_USER;
-            String password = dbProperties != null ? dbProperties.getProperty("db.password", DB_PASSWORD) : DB_PASSWORD;
-            
-            Connection conn = DriverManager.getConnection(url, user, password);
-            return conn;
+            return getConnectionPool().borrow();
         } catch (SQLException e) {
             System.err.println("✗ Database connection failed!");
-            System.err.println("URL: " + DB_URL);
-            System.err.println("User: " + DB_USER);
+            System.err.println("URL: " + getDatabaseUrl());
+            System.err.println("User: " + getProperty("db.username", DB_USER));
             System.err.println("Error: " + e.getMessage());
             throw e;
         }
     }
     
+    /**
+     * Get the shared connection pool, creating it from the configured settings on first use
+     */
+    public synchronized ConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            connectionPool = new ConnectionPool(getDatabaseUrl(), getConnectionProperties(),
+                getIntProperty("db.pool.size", DEFAULT_POOL_SIZE),
+                getIntProperty("db.pool.min.idle", DEFAULT_POOL_MIN_IDLE),
+                getIntProperty("db.pool.max.idle", DEFAULT_POOL_MAX_IDLE),
+                getLongProperty("db.connection.timeout", DEFAULT_CONNECTION_TIMEOUT_MS));
+        }
+        return connectionPool;
+    }
+    
+    /**
+     * Configured JDBC URL, including any ?driver options
+     */
+    private String getDatabaseUrl() {
+        return getProperty("db.url", DB_URL).trim();
+    }
+    
+    /**
+     * Database URL without the database name, keeping the ?driver options
+     * (used to create the database before connecting to it)
+     */
+    private String getServerUrl() {
+        String url = getDatabaseUrl();
+        int query = url.indexOf('?');
+        String path = query >= 0 ? url.substring(0, query) : url;
+        String options = query >= 0 ? url.substring(query) : "";
+        return path.substring(0, path.lastIndexOf('/') + 1) + options;
+    }
+    
+    /**
+     * Database name: the last path segment of the URL, before any ?driver options
+     */
+    private String getDatabaseName() {
+        String url = getDatabaseUrl();
+        int query = url.indexOf('?');
+        String path = query >= 0 ? url.substring(0, query) : url;
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+    
+    /**
+     * Credentials and driver options for new connections. Options in db.url
+     * still apply; for an option set in both places, the one here wins.
+     * rewriteBatchedStatements sends a JDBC batch of INSERTs as one multi-row statement.
+     */
+    private Properties getConnectionProperties() {
+        Properties info = new Properties();
+        info.setProperty("user", getProperty("db.username", DB_USER));
+        info.setProperty("password", getProperty("db.password", DB_PASSWORD));
+        info.setProperty("rewriteBatchedStatements", "true");
+        return info;
+    }
+    
+    /**
+     * Get the shared (UserID, system folder name) to FolderID cache
+     */
+    public synchronized SystemFolderCache getSystemFolderCache() {
+        if (systemFolderCache == null) {
+            systemFolderCache = new SystemFolderCache(this);
+        }
+        return systemFolderCache;
+    }
+    
+    /**
+     * Get the shared username to user cache
+     */
+    public synchronized UserCache getUserCache() {
+        if (userCache == null) {
+            userCache = new UserCache();
+        }
+        return userCache;
+    }
+    
+    /**
+     * Close pooled connections and print pool and cache metrics (call on application exit).
+     * The closed pool is kept, so a later getConnection() fails with
+     * "Connection pool is closed" instead of opening a pool nobody closes.
+     */
+    public synchronized void shutdown() {
+        if (userCache != null) {
+            System.out.println("User cache: " + userCache);
+        }
+        if (connectionPool != null) {
+            connectionPool.shutdown();
+        }
+    }
+    
+    /**
+     * Get an application setting from database.properties (non-database
+     * settings such as attachments.* live in the same file)
+     */
+    public String getSetting(String key, String defaultValue) {
+        return getProperty(key, defaultValue);
+    }
+    
+    private String getProperty(String key, String defaultValue) {
+        return dbProperties != null ? dbProperties.getProperty(key, defaultValue) : defaultValue;
+    }
+    
+    private int getIntProperty(String key, int defaultValue) {
+        return (int) getLongProperty(key, defaultValue);
+    }
+    
+    private long getLongProperty(String key, long defaultValue) {
+        String value = getProperty(key, null);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value + " (using " + defaultValue + ")");
+            return defaultValue;
+        }
+    }
+    
     /**
      * Initialize database schema
      * Creates database if not exists and sets up all tables
@@ -96,10 +233,9 @@ public class DatabaseHelper {
     public void initializeDatabase() {
         try {
             // First, connect to MySQL server (without specifying database)
-            String serverUrl = DB_URL.substring(0, DB_URL.lastIndexOf("/"));
-            String dbName = DB_URL.substring(DB_URL.lastIndexOf("/") + 1);
+            String dbName = getDatabaseName();
             
-            try (Connection conn = DriverManager.getConnection(serverUrl, DB_USER, DB_PASSWORD);
+            try (Connection conn = DriverManager.getConnection(getServerUrl(), getConnectionProperties());
                  Statement stmt = conn.createStatement()) {
                 
                 // Create database if not exists
@@ -108,12 +244,28 @@ public class DatabaseHelper {
             }
             
             // Now connect to the specific database and create tables
+            boolean rebuildCounters;
             try (Connection conn = getConnection()) {
                 createTables(conn);
+                rebuildCounters = migrateSchema(conn);
                 createTriggersAndViews(conn);
                 System.out.println("✓ Database schema initialized successfully");
             }
             
+            // Counters that did not exist before are computed once from the base tables
+            MailboxCounterService counterService = new MailboxCounterService(this);
+            if (rebuildCounters) {
+                counterService.reconcileAll();
+            } else {
+                int initialized = counterService.initializeMissingCounters();
+                if (initialized > 0) {
+                    System.out.println("✓ Mailbox counters initialized for " + initialized + " users");
+                }
+            }
+            
+            // Open min.idle connections now so the first screens load without handshakes
+            getConnectionPool().warmUp();
+            
         } catch (SQLException e) {
             System.err.println("✗ Database initialization failed: " + e.getMessage());
             e.printStackTrace();
@@ -145,9 +297,14 @@ public class DatabaseHelper {
                 "EmailID INT AUTO_INCREMENT PRIMARY KEY, " +
                 "Subject VARCHAR(255) NOT NULL, " +
                 "Body LONGTEXT NOT NULL, " +
-                "Timestamp DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "BodyCompressed LONGBLOB NULL, " +
+                "BodyCodec ENUM('NONE', 'DEFLATE') NOT NULL DEFAULT 'NONE', " +
+                "BodyLength BIGINT NULL, " +
+                "Timestamp DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
                 "Priority ENUM('Low', 'Normal', 'High') DEFAULT 'Normal', " +
                 "IsHTML BOOLEAN DEFAULT FALSE, " +
+                "AttachmentCount INT NOT NULL DEFAULT 0, " +
+                "TotalAttachmentBytes BIGINT NOT NULL DEFAULT 0, " +
                 "INDEX idx_timestamp (Timestamp), " +
                 "FULLTEXT idx_search (Subject, Body)" +
                 ")";
@@ -163,6 +320,8 @@ public class DatabaseHelper {
                 "CreatedAt DATETIME DEFAULT CURRENT_TIMESTAMP, " +
                 "Color VARCHAR(7) DEFAULT '#3498db', " +
                 "IsSystem BOOLEAN DEFAULT FALSE, " +
+                "EmailCount INT NOT NULL DEFAULT 0, " +
+                "UnreadCount INT NOT NULL DEFAULT 0, " +
                 "FOREIGN KEY (UserID) REFERENCES User(UserID) ON DELETE CASCADE, " +
                 "FOREIGN KEY (ParentFolderID) REFERENCES Folder(FolderID) ON DELETE SET NULL, " +
                 "INDEX idx_user_folder (UserID, Name)" +
@@ -175,16 +334,20 @@ public class DatabaseHelper {
                 "EmailID INT, " +
                 "UserID INT, " +
                 "Role ENUM('Sender', 'Receiver') NOT NULL, " +
+                "RecipientType ENUM('To', 'CC', 'BCC') NULL, " +
                 "FolderID INT NULL, " +
                 "IsRead BOOLEAN DEFAULT FALSE, " +
                 "IsStarred BOOLEAN DEFAULT FALSE, " +
                 "IsDeleted BOOLEAN DEFAULT FALSE, " +
                 "ReadAt DATETIME NULL, " +
+                "Timestamp DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
                 "PRIMARY KEY (EmailID, UserID, Role), " +
                 "FOREIGN KEY (EmailID) REFERENCES Email(EmailID) ON DELETE CASCADE, " +
                 "FOREIGN KEY (UserID) REFERENCES User(UserID) ON DELETE CASCADE, " +
                 "FOREIGN KEY (FolderID) REFERENCES Folder(FolderID) ON DELETE SET NULL, " +
                 "INDEX idx_user_role (UserID, Role), " +
+                "INDEX idx_user_role_time (UserID, Role, IsDeleted, Timestamp, EmailID), " +
+                "INDEX idx_user_folder_time (UserID, FolderID, IsDeleted, Timestamp, EmailID), " +
                 "INDEX idx_folder (FolderID)" +
                 ")";
             stmt.executeUpdate(createEmailUserTable);
@@ -196,11 +359,15 @@ public class DatabaseHelper {
                 "EmailID INT NOT NULL, " +
                 "FileName VARCHAR(255) NOT NULL, " +
                 "FileSize BIGINT NOT NULL, " +
+                "StoredSize BIGINT NULL, " +
                 "MimeType VARCHAR(100) NOT NULL, " +
                 "FilePath VARCHAR(500) NOT NULL, " +
+                "ContentHash CHAR(64) NULL, " +
+                "Codec ENUM('NONE', 'DEFLATE') NOT NULL DEFAULT 'NONE', " +
                 "UploadedAt DATETIME DEFAULT CURRENT_TIMESTAMP, " +
                 "FOREIGN KEY (EmailID) REFERENCES Email(EmailID) ON DELETE CASCADE, " +
-                "INDEX idx_email (EmailID)" +
+                "INDEX idx_email (EmailID), " +
+                "INDEX idx_content_hash (ContentHash)" +
                 ")";
             stmt.executeUpdate(createAttachmentTable);
             System.out.println("  ✓ Attachment table created");
@@ -217,7 +384,252 @@ public class DatabaseHelper {
                 ")";
             stmt.executeUpdate(createSignUpTable);
             System.out.println("  ✓ WebsiteSignUp table created");
+            
+            // Create MailboxCounters table (maintained by MailboxCounterService)
+            String createCountersTable = "CREATE TABLE IF NOT EXISTS MailboxCounters (" +
+                "UserID INT PRIMARY KEY, " +
+                "TotalEmails INT NOT NULL DEFAULT 0, " +
+                "UnreadEmails INT NOT NULL DEFAULT 0, " +
+                "StarredEmails INT NOT NULL DEFAULT 0, " +
+                "SentEmails INT NOT NULL DEFAULT 0, " +
+                "ReceivedEmails INT NOT NULL DEFAULT 0, " +
+                "TotalBytes BIGINT NOT NULL DEFAULT 0, " +
+                "FOREIGN KEY (UserID) REFERENCES User(UserID) ON DELETE CASCADE" +
+                ")";
+            stmt.executeUpdate(createCountersTable);
+            System.out.println("  ✓ MailboxCounters table created");
+        }
+    }
+    
+    /**
+     * Bring tables created by older versions up to date.
+     * CREATE TABLE IF NOT EXISTS does not add new columns to existing tables.
+     * @return true if stored mailbox/folder counters must be rebuilt
+     */
+    private boolean migrateSchema(Connection conn) throws SQLException {
+        boolean addedAttachmentCounters =
+            addColumnIfMissing(conn, "Email", "AttachmentCount", "INT NOT NULL DEFAULT 0") |
+            addColumnIfMissing(conn, "Email", "TotalAttachmentBytes", "BIGINT NOT NULL DEFAULT 0");
+        
+        if (addedAttachmentCounters) {
+            backfillAttachmentCounters();
+        }
+        
+        boolean addedFolderCounters =
+            addColumnIfMissing(conn, "Folder", "EmailCount", "INT NOT NULL DEFAULT 0") |
+            addColumnIfMissing(conn, "Folder", "UnreadCount", "INT NOT NULL DEFAULT 0");
+        
+        // NULL on existing Receiver rows reads as To
+        addColumnIfMissing(conn, "EmailUser", "RecipientType", "ENUM('To', 'CC', 'BCC') NULL AFTER Role");
+        
+        // Content-addressed attachments; NULL on rows that own their file
+        addColumnIfMissing(conn, "Attachment", "ContentHash",
+                           "CHAR(64) NULL AFTER FilePath, ADD INDEX idx_content_hash (ContentHash)");
+        
+        // At-rest compression; NULL StoredSize means the file is stored as is (= FileSize)
+        addColumnIfMissing(conn, "Attachment", "StoredSize", "BIGINT NULL AFTER FileSize");
+        addColumnIfMissing(conn, "Attachment", "Codec", "ENUM('NONE', 'DEFLATE') NOT NULL DEFAULT 'NONE' AFTER ContentHash");
+        
+        // Compressed large bodies (EmailBodyCodec); existing rows keep BodyCodec = 'NONE'
+        addColumnIfMissing(conn, "Email", "BodyCompressed", "LONGBLOB NULL AFTER Body");
+        addColumnIfMissing(conn, "Email", "BodyCodec", "ENUM('NONE', 'DEFLATE') NOT NULL DEFAULT 'NONE' AFTER BodyCompressed");
+        addColumnIfMissing(conn, "Email", "BodyLength", "BIGINT NULL AFTER BodyCodec");
+        
+        // Paged listings: Timestamp is half of the keyset cursor; EmailUser
+        // keeps a copy so a page is one index range of the user's rows
+        requireEmailTimestamp(conn);
+        if (addColumnIfMissing(conn, "EmailUser", "Timestamp",
+                               "DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP AFTER ReadAt")) {
+            backfillEmailUserTimestamps();
+        }
+        addIndexIfMissing(conn, "EmailUser", "idx_user_role_time", "UserID, Role, IsDeleted, Timestamp, EmailID");
+        addIndexIfMissing(conn, "EmailUser", "idx_user_folder_time", "UserID, FolderID, IsDeleted, Timestamp, EmailID");
+        dropIndexIfPresent(conn, "EmailUser", "idx_user_role_deleted");
+        dropIndexIfPresent(conn, "EmailUser", "idx_user_folder_deleted");
+        
+        return addedFolderCounters;
+    }
+    
+    /**
+     * Make Email.Timestamp NOT NULL. A NULL time gave a page a NULL cursor,
+     * which reads as "start from the newest" and made paging loop.
+     * Rows without a time get the epoch, so they still sort last.
+     */
+    private void requireEmailTimestamp(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getColumns(conn.getCatalog(), null, "Email", "Timestamp")) {
+            if (!rs.next() || "NO".equals(rs.getString("IS_NULLABLE"))) {
+                return;
+            }
+        }
+        
+        try (Statement stmt = conn.createStatement()) {
+            int backfilled = stmt.executeUpdate(
+                "UPDATE Email SET Timestamp = '1970-01-01 00:00:00' WHERE Timestamp IS NULL");
+            stmt.executeUpdate(
+                "ALTER TABLE Email MODIFY COLUMN Timestamp DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP");
+            System.out.println("  ✓ Email.Timestamp is now NOT NULL (" + backfilled + " rows without a time)");
+        }
+    }
+    
+    /**
+     * Add an index to an existing table if it is not there yet
+     * @return true if the index was added
+     */
+    private boolean addIndexIfMissing(Connection conn, String table, String index, String columns)
+            throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return false;
+                }
+            }
+        }
+        
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + table + " ADD INDEX " + index + " (" + columns + ")");
+            System.out.println("  ✓ Added index " + table + "." + index);
+            return true;
+        }
+    }
+    
+    /**
+     * Drop an index that a newer one has replaced
+     * @return true if the index was dropped
+     */
+    private boolean dropIndexIfPresent(Connection conn, String table, String index) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        boolean present = false;
+        try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), null, table, false, false)) {
+            while (rs.next() && !present) {
+                present = index.equalsIgnoreCase(rs.getString("INDEX_NAME"));
+            }
+        }
+        if (!present) {
+            return false;
+        }
+        
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + table + " DROP INDEX " + index);
+            System.out.println("  ✓ Dropped index " + table + "." + index);
+            return true;
+        }
+    }
+    
+    /**
+     * Add a column to an existing table if it is not there yet
+     * @return true if the column was added
+     */
+    private boolean addColumnIfMissing(Connection conn, String table, String column, String definition)
+            throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getColumns(conn.getCatalog(), null, table, column)) {
+            if (rs.next()) {
+                return false;
+            }
+        }
+        
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+            System.out.println("  ✓ Added column " + table + "." + column);
+            return true;
+        }
+    }
+    
+    /**
+     * One-shot backfill of Email.AttachmentCount / TotalAttachmentBytes from the
+     * Attachment table. Runs in EmailID ranges so each UPDATE locks a bounded
+     * number of rows; safe to re-run at any time to repair drift.
+     * @return number of Email rows updated
+     */
+    public int backfillAttachmentCounters() {
+        final int chunkSize = 5000;
+        int updated = 0;
+        
+        String sqlRange = "SELECT MIN(EmailID), MAX(EmailID) FROM Email";
+        String sqlBackfill =
+            "UPDATE Email e " +
+            "LEFT JOIN (SELECT EmailID, COUNT(*) AS Cnt, SUM(FileSize) AS Bytes " +
+            "           FROM Attachment WHERE EmailID BETWEEN ? AND ? GROUP BY EmailID) a " +
+            "       ON a.EmailID = e.EmailID " +
+            "SET e.AttachmentCount = COALESCE(a.Cnt, 0), " +
+            "    e.TotalAttachmentBytes = COALESCE(a.Bytes, 0) " +
+            "WHERE e.EmailID BETWEEN ? AND ?";
+        
+        try (Connection conn = getConnection()) {
+            int minId;
+            int maxId;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sqlRange)) {
+                if (!rs.next() || rs.getObject(1) == null) {
+                    return 0;
+                }
+                minId = rs.getInt(1);
+                maxId = rs.getInt(2);
+            }
+            
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlBackfill)) {
+                for (long from = minId; from <= maxId; from += chunkSize) {
+                    int to = (int) Math.min(from + chunkSize - 1, maxId);
+                    pstmt.setInt(1, (int) from);
+                    pstmt.setInt(2, to);
+                    pstmt.setInt(3, (int) from);
+                    pstmt.setInt(4, to);
+                    updated += pstmt.executeUpdate();
+                }
+            }
+            
+            System.out.println("  ✓ Backfilled attachment counters (" + updated + " emails updated)");
+        } catch (SQLException e) {
+            System.err.println("✗ Attachment counter backfill failed: " + e.getMessage());
+        }
+        
+        return updated;
+    }
+    
+    /**
+     * Copy Email.Timestamp into EmailUser.Timestamp, which the paged listings
+     * sort and seek on. Runs in EmailID ranges like backfillAttachmentCounters();
+     * safe to re-run at any time to repair drift.
+     * @return number of EmailUser rows updated
+     */
+    public int backfillEmailUserTimestamps() {
+        final int chunkSize = 5000;
+        int updated = 0;
+        
+        String sqlRange = "SELECT MIN(EmailID), MAX(EmailID) FROM Email";
+        String sqlBackfill =
+            "UPDATE EmailUser eu JOIN Email e ON e.EmailID = eu.EmailID " +
+            "SET eu.Timestamp = e.Timestamp " +
+            "WHERE eu.EmailID BETWEEN ? AND ? AND eu.Timestamp <> e.Timestamp";
+        
+        try (Connection conn = getConnection()) {
+            int minId;
+            int maxId;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sqlRange)) {
+                if (!rs.next() || rs.getObject(1) == null) {
+                    return 0;
+                }
+                minId = rs.getInt(1);
+                maxId = rs.getInt(2);
+            }
+            
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlBackfill)) {
+                for (long from = minId; from <= maxId; from += chunkSize) {
+                    pstmt.setInt(1, (int) from);
+                    pstmt.setInt(2, (int) Math.min(from + chunkSize - 1, maxId));
+                    updated += pstmt.executeUpdate();
+                }
+            }
+            
+            System.out.println("  ✓ Backfilled EmailUser timestamps (" + updated + " rows updated)");
+        } catch (SQLException e) {
+            System.err.println("✗ EmailUser timestamp backfill failed: " + e.getMessage());
         }
+        
+        return updated;
     }
     
     /**
@@ -245,6 +657,7 @@ public class DatabaseHelper {
                 "    (NEW.UserID, 'Drafts', TRUE, '#f39c12'), " +
                 "    (NEW.UserID, 'Trash', TRUE, '#e74c3c'), " +
                 "    (NEW.UserID, 'Spam', TRUE, '#95a5a6'); " +
+                "    INSERT INTO MailboxCounters (UserID) VALUES (NEW.UserID); " +
                 "END";
             
             stmt.executeUpdate(createTrigger);
@@ -0,0 +1,348 @@
+package services;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * EmailBodyCodec - Compressed Storage of Large Email Bodies
+ *
+ * Bodies of at least the threshold (email.body.compression.threshold,
+ * UTF-8 bytes; 0 = off) are stored zlib-compressed (Deflater) in
+ * Email.BodyCompressed with BodyCodec = 'DEFLATE'. Newsletters and HTML
+ * mail typically shrink to a fifth or less.
+ *
+ * Email.Body of a compressed row keeps a search text instead of the body:
+ * the text of an HTML body without its markup, cut to SEARCH_TEXT_CHARS
+ * characters. The FULLTEXT index and LIKE searches match that text; the
+ * in-process index (SearchIndexService) reads the full body.
+ * Email.BodyLength records the original size, which the mailbox byte
+ * counters use in place of LENGTH(Body).
+ *
+ * A body is only stored compressed when that saves at least a quarter of
+ * its size (search text included); otherwise it stays in Body as before.
+ * decode() returns the original text for both kinds of rows, so callers
+ * never see the difference.
+ *
+ * CPU time spent compressing and decompressing is measured per thread
+ * (ThreadMXBean; wall time where the JVM does not support it).
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class EmailBodyCodec {
+
+    public static final int DEFAULT_THRESHOLD = 32 * 1024;
+    // Text kept in Email.Body of a compressed row for FULLTEXT/LIKE search
+    static final int SEARCH_TEXT_CHARS = 16 * 1024;
+    // Compressed size (with search text) must be at most this share of the original
+    private static final double MAX_STORED_RATIO = 0.75;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final Pattern HTML_HIDDEN = Pattern.compile("(?is)<(script|style|head)\\b[^>]*>.*?</\\1\\s*>");
+    private static final Pattern HTML_TAG = Pattern.compile("(?s)<!--.*?-->|<[^>]*>");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported()
+                                            && THREADS.isThreadCpuTimeEnabled();
+
+    private final int threshold;
+
+    // Metrics
+    private final AtomicLong compressedCount = new AtomicLong();
+    private final AtomicLong incompressibleCount = new AtomicLong();
+    private final AtomicLong originalBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong decompressedCount = new AtomicLong();
+    private final AtomicLong decompressNanos = new AtomicLong();
+
+    public EmailBodyCodec(DatabaseHelper dbHelper) {
+        this(parseThreshold(dbHelper.getSetting("email.body.compression.threshold",
+                                                String.valueOf(DEFAULT_THRESHOLD))));
+    }
+
+    /**
+     * @param threshold smallest body (UTF-8 bytes) to store compressed; 0 = never
+     */
+    public EmailBodyCodec(int threshold) {
+        this.threshold = Math.max(0, threshold);
+    }
+
+    private static int parseThreshold(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid email.body.compression.threshold: " + value);
+            return DEFAULT_THRESHOLD;
+        }
+    }
+
+    /**
+     * Decide how to store a body and compress it if worthwhile
+     * @param html the body is HTML (Email.IsHTML); markup is left out of the search text
+     */
+    public Encoded encode(String body, boolean html) {
+        if (threshold == 0 || body == null || body.length() * 3L < threshold) {
+            return Encoded.plain(body); // at most 3 UTF-8 bytes per char: cannot reach the threshold
+        }
+        byte[] utf8 = body.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length < threshold) {
+            return Encoded.plain(body);
+        }
+
+        long start = cpuNanos();
+        byte[] compressed = deflate(utf8);
+        String searchText = searchText(body, html);
+        compressNanos.addAndGet(cpuNanos() - start);
+
+        long stored = compressed.length + MailboxCounterService.bodyBytes(searchText);
+        if (stored > utf8.length * MAX_STORED_RATIO) {
+            incompressibleCount.incrementAndGet();
+            return Encoded.plain(body);
+        }
+        compressedCount.incrementAndGet();
+        originalBytes.addAndGet(utf8.length);
+        storedBytes.addAndGet(stored);
+        return new Encoded(searchText, compressed, Codec.DEFLATE, utf8.length);
+    }
+
+    /**
+     * Original body of a row read with Body, BodyCompressed and BodyCodec
+     */
+    public String decode(ResultSet rs) throws SQLException {
+        Codec codec = Codec.fromDatabase(rs.getString("BodyCodec"));
+        if (codec == Codec.NONE) {
+            return rs.getString("Body");
+        }
+        return decode(rs.getBytes("BodyCompressed"), codec);
+    }
+
+    /**
+     * Decompress a stored body
+     * @return body text, or null if the data is damaged
+     */
+    public String decode(byte[] compressed, Codec codec) {
+        if (codec != Codec.DEFLATE || compressed == null) {
+            return null;
+        }
+        long start = cpuNanos();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("truncated data");
+                }
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            System.err.println("Error decompressing email body: " + e.getMessage());
+            return null;
+        } finally {
+            inflater.end();
+            decompressedCount.incrementAndGet();
+            decompressNanos.addAndGet(cpuNanos() - start);
+        }
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 64);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Text kept in Email.Body of a compressed row: markup removed from HTML,
+     * cut to SEARCH_TEXT_CHARS at a word boundary
+     */
+    static String searchText(String body, boolean html) {
+        String text = body;
+        if (html || looksLikeHtml(body)) {
+            text = HTML_HIDDEN.matcher(text).replaceAll(" ");
+            text = HTML_TAG.matcher(text).replaceAll(" ");
+            text = text.replace("&nbsp;", " ").replace("&lt;", "<").replace("&gt;", ">")
+                       .replace("&quot;", "\"").replace("&#39;", "'").replace("&amp;", "&");
+            text = WHITESPACE.matcher(text).replaceAll(" ").trim();
+        }
+        if (text.length() <= SEARCH_TEXT_CHARS) {
+            return text;
+        }
+        int end = SEARCH_TEXT_CHARS;
+        int space = text.lastIndexOf(' ', end);
+        if (space > SEARCH_TEXT_CHARS / 2) {
+            end = space;
+        } else if (Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    private static boolean looksLikeHtml(String body) {
+        String start = body.substring(0, Math.min(body.length(), 256)).trim().toLowerCase();
+        return start.startsWith("<!doctype html") || start.startsWith("<html") || start.contains("<body");
+    }
+
+    private static long cpuNanos() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    // Metrics getters
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public long getCompressedCount() {
+        return compressedCount.get();
+    }
+
+    /**
+     * Bodies above the threshold kept uncompressed because compression saved too little
+     */
+    public long getIncompressibleCount() {
+        return incompressibleCount.get();
+    }
+
+    public long getOriginalBytes() {
+        return originalBytes.get();
+    }
+
+    /**
+     * Bytes stored for the compressed bodies (compressed data plus search text)
+     */
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    /**
+     * Get compression ratio in percent (stored size of the original size)
+     */
+    public double getCompressionRatio() {
+        long original = originalBytes.get();
+        if (original == 0) return 100.0;
+        return (storedBytes.get() * 100.0) / original;
+    }
+
+    public long getCompressCpuMillis() {
+        return compressNanos.get() / 1_000_000;
+    }
+
+    public long getDecompressedCount() {
+        return decompressedCount.get();
+    }
+
+    public long getDecompressCpuMillis() {
+        return decompressNanos.get() / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return "EmailBodyCodec{" +
+                "compressed=" + getCompressedCount() +
+                ", incompressible=" + getIncompressibleCount() +
+                ", ratio=" + String.format("%.1f%%", getCompressionRatio()) +
+                ", compressCpuMs=" + getCompressCpuMillis() +
+                ", decompressed=" + getDecompressedCount() +
+                ", decompressCpuMs=" + getDecompressCpuMillis() +
+                '}';
+    }
+
+    /**
+     * How a body is stored (Email.BodyCodec)
+     */
+    public enum Codec {
+        NONE,
+        DEFLATE;
+
+        /**
+         * Codec of an Email.BodyCodec value (NULL = NONE)
+         */
+        public static Codec fromDatabase(String value) {
+            return value == null ? NONE : valueOf(value);
+        }
+    }
+
+    /**
+     * Column values for one body
+     */
+    public static final class Encoded {
+        private final String body;
+        private final byte[] compressed;
+        private final Codec codec;
+        private final long originalBytes;
+
+        Encoded(String body, byte[] compressed, Codec codec, long originalBytes) {
+            this.body = body;
+            this.compressed = compressed;
+            this.codec = codec;
+            this.originalBytes = originalBytes;
+        }
+
+        static Encoded plain(String body) {
+            return new Encoded(body, null, Codec.NONE, -1);
+        }
+
+        public boolean isCompressed() {
+            return codec != Codec.NONE;
+        }
+
+        public Codec getCodec() {
+            return codec;
+        }
+
+        /**
+         * Size of the stored data (compressed data plus search text)
+         */
+        public long getStoredBytes() {
+            return isCompressed() ? compressed.length + MailboxCounterService.bodyBytes(body)
+                                  : MailboxCounterService.bodyBytes(body);
+        }
+
+        /**
+         * Set Body, BodyCompressed, BodyCodec and BodyLength, in that order
+         * @return index of the next parameter
+         */
+        public int bind(PreparedStatement pstmt, int index) throws SQLException {
+            pstmt.setString(index++, body);
+            if (compressed != null) {
+                pstmt.setBytes(index++, compressed);
+            } else {
+                pstmt.setNull(index++, Types.BLOB);
+            }
+            pstmt.setString(index++, codec.name());
+            if (originalBytes >= 0) {
+                pstmt.setLong(index++, originalBytes);
+            } else {
+                pstmt.setNull(index++, Types.BIGINT);
+            }
+            return index;
+        }
+    }
+}
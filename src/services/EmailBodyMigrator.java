@@ -0,0 +1,318 @@
+package services;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EmailBodyMigrator - Compress Existing Email Bodies
+ *
+ * New mail is stored through EmailBodyCodec when it is sent; this job
+ * converts the rows written before, while the application keeps running.
+ *
+ * - Rows are read in EmailID order in chunks (keyset, WHERE EmailID > lastId),
+ *   and only uncompressed bodies at least as large as the codec's
+ *   threshold are fetched.
+ * - Bodies are compressed outside any transaction; each chunk is then
+ *   written with one batched UPDATE in a short transaction. The UPDATE
+ *   only applies to rows still stored uncompressed, so running two jobs,
+ *   or re-running one, is harmless.
+ * - An optional pause between chunks limits the load on the database.
+ *
+ * Email bodies do not change after sending, so no other writer competes
+ * for these rows. Mailbox byte counters stay valid: BodyLength records
+ * the original size they were computed from.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class EmailBodyMigrator {
+
+    public static final int DEFAULT_CHUNK_SIZE = 200;
+
+    private static final String SQL_CANDIDATES =
+        "SELECT EmailID, Body, IsHTML FROM Email " +
+        "WHERE EmailID > ? AND BodyCodec = 'NONE' AND LENGTH(Body) >= ? " +
+        "ORDER BY EmailID LIMIT ?";
+
+    private static final String SQL_UPDATE =
+        "UPDATE Email SET Body = ?, BodyCompressed = ?, BodyCodec = ?, BodyLength = ? " +
+        "WHERE EmailID = ? AND BodyCodec = 'NONE'";
+
+    private final DatabaseHelper dbHelper;
+    private final EmailBodyCodec codec;
+
+    public EmailBodyMigrator(DatabaseHelper dbHelper, EmailBodyCodec codec) {
+        this.dbHelper = dbHelper;
+        this.codec = codec;
+    }
+
+    /**
+     * Compress the bodies of emails with an ID above afterId
+     * @param chunkSize rows read and updated per chunk
+     * @param pauseMillis pause between chunks (0 = none)
+     */
+    public Report migrate(int afterId, int chunkSize, long pauseMillis) {
+        Report report = new Report(afterId);
+        if (codec.getThreshold() == 0) {
+            System.out.println("Body compression is off (email.body.compression.threshold=0)");
+            report.finish();
+            return report;
+        }
+        int size = Math.max(1, chunkSize);
+        long cpuStart = codec.getCompressCpuMillis();
+
+        while (true) {
+            List<Candidate> chunk = readChunk(report.lastId, size);
+            if (chunk == null) {
+                report.failed++;
+                break;
+            }
+            if (chunk.isEmpty()) {
+                break;
+            }
+
+            List<Candidate> compressible = new ArrayList<>();
+            for (Candidate candidate : chunk) {
+                report.scanned++;
+                candidate.encoded = codec.encode(candidate.body, candidate.html);
+                candidate.body = null; // keep only the encoded form in memory
+                if (candidate.encoded.isCompressed()) {
+                    compressible.add(candidate);
+                } else {
+                    report.skipped++;
+                }
+            }
+            if (!compressible.isEmpty() && !write(compressible, report)) {
+                break;
+            }
+            report.lastId = chunk.get(chunk.size() - 1).emailId;
+            report.chunks++;
+            System.out.println("Body compression: " + report);
+
+            if (chunk.size() < size) {
+                break;
+            }
+            if (pauseMillis > 0) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        report.cpuMillis = codec.getCompressCpuMillis() - cpuStart;
+        report.finish();
+        return report;
+    }
+
+    /**
+     * Uncompressed bodies of at least the threshold after an EmailID
+     * @return rows in EmailID order, or null on error
+     */
+    private List<Candidate> readChunk(int afterId, int chunkSize) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            conn = dbHelper.getConnection();
+            pstmt = conn.prepareStatement(SQL_CANDIDATES);
+            pstmt.setInt(1, afterId);
+            pstmt.setInt(2, codec.getThreshold());
+            pstmt.setInt(3, chunkSize);
+            rs = pstmt.executeQuery();
+
+            List<Candidate> rows = new ArrayList<>();
+            while (rs.next()) {
+                rows.add(new Candidate(rs.getInt("EmailID"), rs.getString("Body"), rs.getBoolean("IsHTML")));
+            }
+            return rows;
+
+        } catch (SQLException e) {
+            System.err.println("Error reading email bodies to compress: " + e.getMessage());
+            return null;
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Store a chunk of compressed bodies with one batched UPDATE
+     * @return false on error
+     */
+    private boolean write(List<Candidate> rows, Report report) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            conn = dbHelper.getConnection();
+            conn.setAutoCommit(false);
+            pstmt = conn.prepareStatement(SQL_UPDATE);
+            for (Candidate row : rows) {
+                int index = row.encoded.bind(pstmt, 1);
+                pstmt.setInt(index, row.emailId);
+                pstmt.addBatch();
+            }
+            int[] counts = pstmt.executeBatch();
+            conn.commit();
+
+            for (int i = 0; i < counts.length; i++) {
+                // SUCCESS_NO_INFO: the driver did not report per-row counts
+                if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                    Candidate row = rows.get(i);
+                    report.compressed++;
+                    report.originalBytes += row.originalBytes;
+                    report.storedBytes += row.encoded.getStoredBytes();
+                } else {
+                    report.skipped++; // converted meanwhile
+                }
+            }
+            return true;
+
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Rollback error: " + ex.getMessage());
+                }
+            }
+            report.failed += rows.size();
+            System.err.println("Error storing compressed email bodies: " + e.getMessage());
+            return false;
+        } finally {
+            dbHelper.closeStatement(pstmt);
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    System.err.println("Error resetting autocommit: " + e.getMessage());
+                }
+            }
+            dbHelper.closeConnection(conn);
+        }
+    }
+
+    private static final class Candidate {
+        final int emailId;
+        final boolean html;
+        final long originalBytes;
+        String body;
+        EmailBodyCodec.Encoded encoded;
+
+        Candidate(int emailId, String body, boolean html) {
+            this.emailId = emailId;
+            this.body = body;
+            this.html = html;
+            this.originalBytes = MailboxCounterService.bodyBytes(body);
+        }
+    }
+
+    /**
+     * Progress and result of a migration run
+     */
+    public static final class Report {
+        private final long startNanos = System.nanoTime();
+        private long elapsedMillis;
+        private long cpuMillis;
+        private int lastId;
+        private int chunks;
+        private int scanned;
+        private int compressed;
+        private int skipped;
+        private int failed;
+        private long originalBytes;
+        private long storedBytes;
+
+        Report(int afterId) {
+            this.lastId = afterId;
+        }
+
+        void finish() {
+            elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        /**
+         * Highest EmailID processed (resume from here)
+         */
+        public int getLastId() {
+            return lastId;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        /**
+         * Uncompressed bodies of at least the threshold that were examined
+         */
+        public int getScanned() {
+            return scanned;
+        }
+
+        public int getCompressed() {
+            return compressed;
+        }
+
+        /**
+         * Bodies left as they were (compression saved too little, or converted meanwhile)
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Original size of the bodies compressed
+         */
+        public long getOriginalBytes() {
+            return originalBytes;
+        }
+
+        /**
+         * What they take now (compressed data plus search text)
+         */
+        public long getStoredBytes() {
+            return storedBytes;
+        }
+
+        /**
+         * Get compression ratio in percent (stored size of the original size)
+         */
+        public double getCompressionRatio() {
+            if (originalBytes == 0) return 100.0;
+            return (storedBytes * 100.0) / originalBytes;
+        }
+
+        /**
+         * CPU time spent compressing
+         */
+        public long getCpuMillis() {
+            return cpuMillis;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    "lastId=" + lastId +
+                    ", scanned=" + scanned +
+                    ", compressed=" + compressed +
+                    ", skipped=" + skipped +
+                    ", failed=" + failed +
+                    ", ratio=" + String.format("%.1f%%", getCompressionRatio()) +
+                    '}';
+        }
+    }
+}
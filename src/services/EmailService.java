@@ -1,4 +1,6 @@
 // Enhanced EmailService.java - Updated with Professional Features
+import utils.FullTextQuery;
+
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -15,10 +17,8 @@ public class EnhancedEmailService extends EmailService {
 		boolean emailSent = super.sendEmail(email, toUsername);
 
 		if (emailSent && attachments != null && !attachments.isEmpty()) {
-			// Save attachments
-			for (java.io.File file : attachments) {
-				attachmentService.saveAttachment(email.getEmailId(), file);
-			}
+			// Save attachments (copied in parallel, one batched insert)
+			attachmentService.saveAttachments(email.getEmailId(), attachments);
 		}
 
 		return emailSent;
@@ -33,21 +33,21 @@ public class EnhancedEmailService extends EmailService {
 		String sql = """
             SELECT e.EmailID, e.Subject, e.Body, e.Timestamp, e.Priority, e.IsHTML,
                    sender.Name as SenderName,
-                   receiver.Name as ReceiverName,
+                   (SELECT GROUP_CONCAT(r.Name ORDER BY receiverEU.RecipientType, r.Name SEPARATOR ', ')
+                    FROM EmailUser receiverEU JOIN User r ON receiverEU.UserID = r.UserID
+                    WHERE receiverEU.EmailID = e.EmailID AND receiverEU.Role = 'Receiver'
+                      AND (eu.Role = 'Sender' OR receiverEU.UserID = eu.UserID
+                           OR NOT (receiverEU.RecipientType <=> 'BCC'))) as ReceiverName,
                    eu.IsRead, eu.IsStarred, eu.FolderID,
                    f.Name as FolderName,
-                   COUNT(a.ID) as AttachmentCount,
-                   SUM(a.FileSize) as TotalSize
+                   e.AttachmentCount,
+                   e.TotalAttachmentBytes as TotalSize
             FROM Email e
             JOIN EmailUser eu ON e.EmailID = eu.EmailID
             LEFT JOIN EmailUser senderEU ON e.EmailID = senderEU.EmailID AND senderEU.Role = 'Sender'
             LEFT JOIN User sender ON senderEU.UserID = sender.UserID
-            LEFT JOIN EmailUser receiverEU ON e.EmailID = receiverEU.EmailID AND receiverEU.Role = 'Receiver'
-            LEFT JOIN User receiver ON receiverEU.UserID = receiver.UserID
             LEFT JOIN Folder f ON eu.FolderID = f.FolderID
-            LEFT JOIN Attachment a ON e.EmailID = a.EmailID
             WHERE eu.UserID = ? AND eu.FolderID = ? AND eu.Role = ? AND eu.IsDeleted = FALSE
-            GROUP BY e.EmailID
             ORDER BY e.Timestamp DESC
         """;
 
@@ -148,20 +148,16 @@ public class EnhancedEmailService extends EmailService {
 	}
 
 	/**
-	 * Get email statistics for user
+	 * Get email statistics for user (MailboxCounters primary-key read)
 	 */
 	public EmailStats getEmailStats(int userId) {
 		EmailStats stats = new EmailStats();
 
 		String sql = """
-            SELECT 
-                COUNT(*) as TotalEmails,
-                SUM(CASE WHEN eu.IsRead = FALSE THEN 1 ELSE 0 END) as UnreadEmails,
-                SUM(CASE WHEN eu.IsStarred = TRUE THEN 1 ELSE 0 END) as StarredEmails,
-                SUM(CASE WHEN eu.Role = 'Sender' THEN 1 ELSE 0 END) as SentEmails,
-                SUM(CASE WHEN eu.Role = 'Receiver' THEN 1 ELSE 0 END) as ReceivedEmails
-            FROM EmailUser eu
-            WHERE eu.UserID = ? AND eu.IsDeleted = FALSE
+            SELECT TotalEmails, UnreadEmails, StarredEmails,
+                   SentEmails, ReceivedEmails, TotalBytes
+            FROM MailboxCounters
+            WHERE UserID = ?
         """;
 
 		try (Connection conn = DatabaseHelper.getConnection();
@@ -176,6 +172,7 @@ public class EnhancedEmailService extends EmailService {
 				stats.setStarredEmails(rs.getInt("StarredEmails"));
 				stats.setSentEmails(rs.getInt("SentEmails"));
 				stats.setReceivedEmails(rs.getInt("ReceivedEmails"));
+				stats.setTotalSize(rs.getLong("TotalBytes"));
 			}
 
 		} catch (SQLException e) {
@@ -195,27 +192,28 @@ public class EnhancedEmailService extends EmailService {
 
 		sqlBuilder.append("""
             SELECT e.EmailID, e.Subject, e.Body, e.Timestamp, e.Priority,
-                   sender.Name as SenderName, receiver.Name as ReceiverName,
+                   sender.Name as SenderName, (SELECT GROUP_CONCAT(r.Name ORDER BY receiverEU.RecipientType, r.Name SEPARATOR ', ')
+                    FROM EmailUser receiverEU JOIN User r ON receiverEU.UserID = r.UserID
+                    WHERE receiverEU.EmailID = e.EmailID AND receiverEU.Role = 'Receiver'
+                      AND (eu.Role = 'Sender' OR receiverEU.UserID = eu.UserID
+                           OR NOT (receiverEU.RecipientType <=> 'BCC'))) as ReceiverName,
                    eu.IsRead, eu.IsStarred, eu.FolderID,
-                   COUNT(a.ID) as AttachmentCount
+                   e.AttachmentCount
             FROM Email e
             JOIN EmailUser eu ON e.EmailID = eu.EmailID
             LEFT JOIN EmailUser senderEU ON e.EmailID = senderEU.EmailID AND senderEU.Role = 'Sender'
             LEFT JOIN User sender ON senderEU.UserID = sender.UserID
-            LEFT JOIN EmailUser receiverEU ON e.EmailID = receiverEU.EmailID AND receiverEU.Role = 'Receiver'
-            LEFT JOIN User receiver ON receiverEU.UserID = receiver.UserID
-            LEFT JOIN Attachment a ON e.EmailID = a.EmailID
             WHERE eu.UserID = ? AND eu.IsDeleted = FALSE
         """);
 
 		List<Object> params = new ArrayList<>();
 		params.add(userId);
 
-		if (searchTerm != null && !searchTerm.trim().isEmpty()) {
-			sqlBuilder.append(" AND (e.Subject LIKE ? OR e.Body LIKE ?)");
-			String searchPattern = "%" + searchTerm + "%";
-			params.add(searchPattern);
-			params.add(searchPattern);
+		// MATCH ... AGAINST on idx_search; LIKE only for terms too short for the index
+		FullTextQuery query = FullTextQuery.parse(searchTerm);
+		if (!query.isEmpty()) {
+			sqlBuilder.append(" ");
+			query.appendPredicate(sqlBuilder, params);
 		}
 
 		if (priority != null && !priority.equals("All")) {
@@ -236,7 +234,7 @@ public class EnhancedEmailService extends EmailService {
 			params.add(folderId);
 		}
 
-		sqlBuilder.append(" GROUP BY e.EmailID ORDER BY e.Timestamp DESC");
+		sqlBuilder.append(" ORDER BY e.Timestamp DESC");
 
 		try (Connection conn = DatabaseHelper.getConnection();
 			 PreparedStatement pstmt = conn.prepareStatement(sqlBuilder.toString())) {
@@ -0,0 +1,378 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * FlagWriteQueue - Write-Behind Queue for Read/Star Changes
+ *
+ * Lets the UI record IsRead / IsStarred changes without waiting for the
+ * database. Changes are held in memory and written by a background thread
+ * with the bulk EmailService methods:
+ *
+ * - Coalescing: repeated changes to the same (EmailID, UserID) keep only
+ *   the latest value, so opening and re-opening a message or toggling a
+ *   star back and forth costs at most one write per flag.
+ * - Batching: pending changes are flushed FLUSH_DELAY_MS after the first
+ *   one arrives, or at once when MAX_PENDING rows are waiting. A flush
+ *   issues one bulk UPDATE per user and flag value.
+ * - Draining: flush(userId) on logout and shutdown() on exit write
+ *   everything still pending before returning.
+ * - Retrying: a bulk call that fails (returns -1; its transaction was
+ *   rolled back, so no row of it was written) puts its changes back in the
+ *   queue, unless a newer value was queued meanwhile. After
+ *   MAX_WRITE_ATTEMPTS they are logged and dropped. Rows that no longer
+ *   match (deleted, or not a received email) are simply done.
+ *
+ * Stars are queued as absolute values (setStarred), not toggles, so
+ * coalescing never depends on how many toggles were merged.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class FlagWriteQueue {
+
+    private static final long FLUSH_DELAY_MS = 250;
+    private static final int MAX_PENDING = 200;
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final EmailService emailService;
+    private final long flushDelayMillis;
+    private final int maxPending;
+
+    // (UserID, EmailID) -> pending flag values, guarded by "this"
+    private Map<Long, PendingFlags> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed = false;
+
+    // Held while taking and writing a batch, so batches reach the database in order
+    private final Object writeLock = new Object();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "flag-write-queue");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Called on the flush thread with each user whose flags were written
+    private volatile IntConsumer flushListener;
+
+    // Metrics
+    private final AtomicLong changeCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong statementCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    public FlagWriteQueue(EmailService emailService) {
+        this(emailService, FLUSH_DELAY_MS, MAX_PENDING);
+    }
+
+    public FlagWriteQueue(EmailService emailService, long flushDelayMillis, int maxPending) {
+        this.emailService = emailService;
+        this.flushDelayMillis = Math.max(0, flushDelayMillis);
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    /**
+     * Queue "mark as read" for one email
+     */
+    public void markAsRead(int emailId, int userId) {
+        enqueue(emailId, userId, true, null);
+    }
+
+    /**
+     * Queue a star/unstar for one email
+     */
+    public void setStarred(int emailId, int userId, boolean starred) {
+        enqueue(emailId, userId, false, starred);
+    }
+
+    /**
+     * Notify a listener after a user's pending flags have been written
+     * (e.g. to refresh counters). Runs on the queue's thread.
+     */
+    public void setFlushListener(IntConsumer flushListener) {
+        this.flushListener = flushListener;
+    }
+
+    private void enqueue(int emailId, int userId, boolean read, Boolean starred) {
+        boolean flushNow = false;
+        boolean writeDirectly;
+        synchronized (this) {
+            // After shutdown there is no flush thread - write directly
+            writeDirectly = closed;
+            if (!writeDirectly) {
+                PendingFlags flags = pending.get(key(userId, emailId));
+                if (flags == null) {
+                    flags = new PendingFlags(emailId, userId);
+                    pending.put(key(userId, emailId), flags);
+                } else {
+                    coalescedCount.incrementAndGet();
+                }
+                flags.read |= read;
+                if (starred != null) {
+                    flags.starred = starred;
+                }
+                changeCount.incrementAndGet();
+
+                flushNow = pending.size() >= maxPending;
+                if (!flushNow && scheduledFlush == null) {
+                    scheduledFlush = executor.schedule(() -> flush(), flushDelayMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        if (writeDirectly) {
+            List<PendingFlags> single = new ArrayList<>();
+            PendingFlags flags = new PendingFlags(emailId, userId);
+            flags.read = read;
+            flags.starred = starred;
+            single.add(flags);
+            synchronized (writeLock) {
+                write(single);
+            }
+        } else if (flushNow) {
+            executor.execute(() -> flush());
+        }
+    }
+
+    /**
+     * Write everything pending now, on the calling thread
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            write(takePending(null));
+        }
+    }
+
+    /**
+     * Write one user's pending changes now (call on logout)
+     */
+    public void flush(int userId) {
+        synchronized (writeLock) {
+            write(takePending(userId));
+        }
+    }
+
+    /**
+     * Drain the queue and stop the flush thread (call on application exit)
+     */
+    public void shutdown() {
+        synchronized (this) {
+            closed = true;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        System.out.println("Flag write queue closed. " + this);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Remove pending changes (all users if userId is null)
+     */
+    private synchronized List<PendingFlags> takePending(Integer userId) {
+        List<PendingFlags> taken;
+        if (userId == null) {
+            taken = new ArrayList<>(pending.values());
+            pending = new LinkedHashMap<>();
+        } else {
+            taken = new ArrayList<>();
+            pending.values().removeIf(flags -> {
+                if (flags.userId == userId) {
+                    taken.add(flags);
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        if (pending.isEmpty() && scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return taken;
+    }
+
+    /**
+     * Write changes with one bulk call per user and flag value
+     */
+    private void write(List<PendingFlags> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        flushCount.incrementAndGet();
+
+        // UserID -> {emails to mark read, emails to star, emails to unstar}
+        Map<Integer, List<List<PendingFlags>>> byUser = new TreeMap<>();
+        for (PendingFlags flags : changes) {
+            List<List<PendingFlags>> lists = byUser.computeIfAbsent(flags.userId,
+                    id -> List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()));
+            if (flags.read) {
+                lists.get(0).add(flags);
+            }
+            if (flags.starred != null) {
+                lists.get(flags.starred ? 1 : 2).add(flags);
+            }
+        }
+
+        for (Map.Entry<Integer, List<List<PendingFlags>>> entry : byUser.entrySet()) {
+            int userId = entry.getKey();
+            List<List<PendingFlags>> lists = entry.getValue();
+            if (!writeBatch(lists.get(0), ids -> emailService.markAsRead(ids, userId))) {
+                retry(lists.get(0), true, null);
+            }
+            if (!writeBatch(lists.get(1), ids -> emailService.setStarred(ids, userId, true))) {
+                retry(lists.get(1), false, true);
+            }
+            if (!writeBatch(lists.get(2), ids -> emailService.setStarred(ids, userId, false))) {
+                retry(lists.get(2), false, false);
+            }
+
+            IntConsumer listener = flushListener;
+            if (listener != null) {
+                listener.accept(userId);
+            }
+        }
+    }
+
+    /**
+     * Run one bulk call
+     * @return false if it failed (nothing of it was written)
+     */
+    private boolean writeBatch(List<PendingFlags> batch, ToIntFunction<List<Integer>> update) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        List<Integer> emailIds = new ArrayList<>();
+        for (PendingFlags flags : batch) {
+            emailIds.add(flags.emailId);
+        }
+        statementCount.incrementAndGet();
+        try {
+            return update.applyAsInt(emailIds) >= 0;
+        } catch (RuntimeException e) {
+            System.err.println("Error writing queued flag changes: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Queue one flag of a failed batch again. A value queued meanwhile is newer
+     * and wins; changes that failed MAX_WRITE_ATTEMPTS times are dropped.
+     */
+    private synchronized void retry(List<PendingFlags> failed, boolean read, Boolean starred) {
+        List<Integer> dropped = new ArrayList<>();
+        for (PendingFlags flags : failed) {
+            int attempts = flags.attempts + 1;
+            if (closed || attempts >= MAX_WRITE_ATTEMPTS) {
+                dropped.add(flags.emailId);
+                continue;
+            }
+            PendingFlags queued = pending.get(key(flags.userId, flags.emailId));
+            if (queued == null) {
+                queued = new PendingFlags(flags.emailId, flags.userId);
+                pending.put(key(flags.userId, flags.emailId), queued);
+            }
+            queued.read |= read;
+            if (starred != null && queued.starred == null) {
+                queued.starred = starred;
+            }
+            queued.attempts = Math.max(queued.attempts, attempts);
+            retriedCount.incrementAndGet();
+        }
+
+        if (!dropped.isEmpty()) {
+            droppedCount.addAndGet(dropped.size());
+            System.err.println("Dropping queued " + (read ? "read" : starred ? "star" : "unstar") +
+                               " changes for user " + failed.get(0).userId + ", emails " + dropped);
+        }
+        if (!pending.isEmpty() && scheduledFlush == null && !closed) {
+            scheduledFlush = executor.schedule(() -> flush(), flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static long key(int userId, int emailId) {
+        return ((long) userId << 32) | (emailId & 0xFFFFFFFFL);
+    }
+
+    // Metrics getters
+
+    public long getChangeCount() {
+        return changeCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getStatementCount() {
+        return statementCount.get();
+    }
+
+    /**
+     * Changes queued again after a bulk call failed
+     */
+    public long getRetriedCount() {
+        return retriedCount.get();
+    }
+
+    /**
+     * Changes given up after MAX_WRITE_ATTEMPTS
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FlagWriteQueue{" +
+                "pending=" + getPendingCount() +
+                ", changes=" + getChangeCount() +
+                ", coalesced=" + getCoalescedCount() +
+                ", flushes=" + getFlushCount() +
+                ", bulkUpdates=" + getStatementCount() +
+                ", retried=" + getRetriedCount() +
+                ", dropped=" + getDroppedCount() +
+                '}';
+    }
+
+    /**
+     * Latest queued flag values of one EmailUser row
+     */
+    private static class PendingFlags {
+        final int emailId;
+        final int userId;
+        boolean read;
+        Boolean starred;
+        int attempts; // failed writes so far
+
+        PendingFlags(int emailId, int userId) {
+            this.emailId = emailId;
+            this.userId = userId;
+        }
+    }
+}
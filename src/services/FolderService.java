@@ -3,6 +3,8 @@ package services;
 import entities.Folder;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -17,9 +19,11 @@ import java.util.List;
 public class FolderService {
     
     private DatabaseHelper dbHelper;
+    private final MailboxCounterService counterService;
     
     public FolderService(DatabaseHelper dbHelper) {
         this.dbHelper = dbHelper;
+        this.counterService = new MailboxCounterService(dbHelper);
     }
     
     /**
@@ -63,7 +67,9 @@ public class FolderService {
     }
     
     /**
-     * Get all folders for a user
+     * Get all folders for a user.
+     * EmailCount/UnreadCount are stored on Folder and kept current by
+     * MailboxCounterService, so this is a single indexed query.
      */
     public List<Folder> getUserFolders(int userId) {
         List<Folder> folders = new ArrayList<>();
@@ -74,9 +80,7 @@ public class FolderService {
         try {
             conn = dbHelper.getConnection();
             
-            String sql = "SELECT f.*, " +
-                        "(SELECT COUNT(*) FROM EmailUser eu WHERE eu.FolderID = f.FolderID AND eu.IsDeleted = FALSE) as EmailCount, " +
-                        "(SELECT COUNT(*) FROM EmailUser eu WHERE eu.FolderID = f.FolderID AND eu.IsRead = FALSE AND eu.IsDeleted = FALSE) as UnreadCount " +
+            String sql = "SELECT f.* " +
                         "FROM Folder f " +
                         "WHERE f.UserID = ? " +
                         "ORDER BY f.IsSystem DESC, f.Name ASC";
@@ -102,6 +106,10 @@ public class FolderService {
                 folder.setUnreadCount(rs.getInt("UnreadCount"));
                 
                 folders.add(folder);
+                if (folder.isSystem()) {
+                    // The folder tree loads at login, so this fills the system folder cache in bulk
+                    dbHelper.getSystemFolderCache().put(userId, folder.getName(), folder.getFolderId());
+                }
             }
             
         } catch (SQLException e) {
@@ -120,7 +128,16 @@ public class FolderService {
      * Get inbox folder for user
      */
     public Folder getInboxFolder(int userId) {
-        return getFolderByName(userId, "Inbox");
+        Integer folderId = getSystemFolderId(userId, SystemFolderCache.INBOX);
+        return folderId != null ? getFolderById(folderId) : getFolderByName(userId, SystemFolderCache.INBOX);
+    }
+    
+    /**
+     * Get the ID of a system folder (Inbox, Sent, Drafts, Trash, Spam) from the shared cache
+     * @return FolderID, or null if the user has no such folder
+     */
+    public Integer getSystemFolderId(int userId, String name) {
+        return dbHelper.getSystemFolderCache().getFolderId(userId, name);
     }
     
     /**
@@ -153,6 +170,8 @@ public class FolderService {
                 folder.setCreatedAt(rs.getTimestamp("CreatedAt"));
                 folder.setColor(rs.getString("Color"));
                 folder.setSystem(rs.getBoolean("IsSystem"));
+                folder.setEmailCount(rs.getInt("EmailCount"));
+                folder.setUnreadCount(rs.getInt("UnreadCount"));
                 
                 return folder;
             }
@@ -197,6 +216,8 @@ public class FolderService {
                 folder.setCreatedAt(rs.getTimestamp("CreatedAt"));
                 folder.setColor(rs.getString("Color"));
                 folder.setSystem(rs.getBoolean("IsSystem"));
+                folder.setEmailCount(rs.getInt("EmailCount"));
+                folder.setUnreadCount(rs.getInt("UnreadCount"));
                 
                 return folder;
             }
@@ -216,28 +237,21 @@ public class FolderService {
      * Move email to folder
      */
     public boolean moveEmailToFolder(int emailId, int userId, int folderId) {
-        Connection conn = null;
-        PreparedStatement pstmt = null;
-        
-        try {
-            conn = dbHelper.getConnection();
-            
-            String sql = "UPDATE EmailUser SET FolderID = ? WHERE EmailID = ? AND UserID = ?";
-            pstmt = conn.prepareStatement(sql);
-            pstmt.setInt(1, folderId);
-            pstmt.setInt(2, emailId);
-            pstmt.setInt(3, userId);
-            
-            int rows = pstmt.executeUpdate();
-            return rows > 0;
-            
-        } catch (SQLException e) {
-            System.err.println("Error moving email to folder: " + e.getMessage());
-            return false;
-        } finally {
-            dbHelper.closeStatement(pstmt);
-            dbHelper.closeConnection(conn);
-        }
+        return moveEmailsToFolder(Collections.singletonList(emailId), userId, folderId) > 0;
+    }
+    
+    /**
+     * Move many emails to a folder in one transaction
+     * (one UPDATE ... WHERE EmailID IN (...) per chunk)
+     * @return number of EmailUser rows moved, or -1 on error
+     */
+    public int moveEmailsToFolder(Collection<Integer> emailIds, int userId, int folderId) {
+        // Source and target folder counters move in the same transaction
+        return counterService.updateWithCounters(emailIds, userId, false, false,
+                "FolderID = ?",
+                Collections.singletonList(folderId),
+                state -> state.withFolder(folderId),
+                "Error moving email to folder: ");
     }
     
     /**
@@ -273,6 +287,9 @@ public class FolderService {
             pstmt.setInt(2, userId);
             
             int rows = pstmt.executeUpdate();
+            if (rows > 0) {
+                dbHelper.getSystemFolderCache().invalidate(userId);
+            }
             return rows > 0;
             
         } catch (SQLException e) {
@@ -301,6 +318,9 @@ public class FolderService {
             pstmt.setInt(2, folderId);
             
             int rows = pstmt.executeUpdate();
+            if (rows > 0) {
+                dbHelper.getSystemFolderCache().invalidateFolder(folderId);
+            }
             return rows > 0;
             
         } catch (SQLException e) {
@@ -323,7 +343,7 @@ public class FolderService {
         try {
             conn = dbHelper.getConnection();
             
-            String sql = "SELECT COUNT(*) FROM EmailUser WHERE FolderID = ? AND IsDeleted = FALSE";
+            String sql = "SELECT EmailCount FROM Folder WHERE FolderID = ?";
             pstmt = conn.prepareStatement(sql);
             pstmt.setInt(1, folderId);
             
@@ -0,0 +1,579 @@
+package services;
+
+import entities.EmailStats;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.UnaryOperator;
+
+/**
+ * MailboxCounterService - Incrementally Maintained Mailbox Counters
+ *
+ * Keeps one MailboxCounters row per user (total, unread, starred, sent,
+ * received, bytes) so statistics are a primary-key read instead of a set
+ * of COUNT/SUM scans over EmailUser and Email.Body.
+ *
+ * Writers record the before/after state of every EmailUser row they touch
+ * in a Changes object and apply it on their own connection before commit,
+ * so counters change in the same transaction as the data. The reconcile
+ * methods recompute counters from the base tables to repair any drift.
+ *
+ * Counter definitions (rows with IsDeleted = FALSE only):
+ * - TotalEmails     all EmailUser rows of the user
+ * - UnreadEmails    Receiver rows with IsRead = FALSE
+ * - StarredEmails   rows with IsStarred = TRUE
+ * - SentEmails      Sender rows
+ * - ReceivedEmails  Receiver rows
+ * - TotalBytes      body size + TotalAttachmentBytes of each email, where the
+ *                   body size is COALESCE(BodyLength, LENGTH(Body)) (the
+ *                   original size of a compressed body)
+ *
+ * The same transitions keep Folder.EmailCount / Folder.UnreadCount in step
+ * (rows in the folder with IsDeleted = FALSE, and of those IsRead = FALSE),
+ * so the folder tree loads without counting EmailUser per folder.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class MailboxCounterService {
+
+    // Positions in a user delta array
+    private static final int TOTAL = 0;
+    private static final int UNREAD = 1;
+    private static final int STARRED = 2;
+    private static final int SENT = 3;
+    private static final int RECEIVED = 4;
+    private static final int BYTES = 5;
+
+    private static final String SQL_APPLY_USER_DELTA =
+        "UPDATE MailboxCounters SET " +
+        "TotalEmails = TotalEmails + ?, UnreadEmails = UnreadEmails + ?, " +
+        "StarredEmails = StarredEmails + ?, SentEmails = SentEmails + ?, " +
+        "ReceivedEmails = ReceivedEmails + ?, TotalBytes = TotalBytes + ? " +
+        "WHERE UserID = ?";
+
+    private static final String SQL_APPLY_FOLDER_DELTA =
+        "UPDATE Folder SET EmailCount = EmailCount + ?, UnreadCount = UnreadCount + ? " +
+        "WHERE FolderID = ?";
+
+    // Recompute folder counters for the folders of users in a UserID range
+    private static final String SQL_RECONCILE_FOLDERS =
+        "UPDATE Folder f " +
+        "LEFT JOIN (SELECT eu.FolderID, COUNT(*) AS Cnt, SUM(eu.IsRead = FALSE) AS Unread " +
+        "           FROM EmailUser eu JOIN Folder uf ON uf.FolderID = eu.FolderID " +
+        "           WHERE uf.UserID BETWEEN ? AND ? AND eu.IsDeleted = FALSE " +
+        "           GROUP BY eu.FolderID) c ON c.FolderID = f.FolderID " +
+        "SET f.EmailCount = COALESCE(c.Cnt, 0), f.UnreadCount = COALESCE(c.Unread, 0) " +
+        "WHERE f.UserID BETWEEN ? AND ?";
+
+    // Recompute counters for users in a UserID range from the base tables
+    private static final String SQL_RECONCILE =
+        "INSERT INTO MailboxCounters (UserID, TotalEmails, UnreadEmails, StarredEmails, " +
+        "                             SentEmails, ReceivedEmails, TotalBytes) " +
+        "SELECT u.UserID, " +
+        "       COUNT(eu.EmailID), " +
+        "       COALESCE(SUM(eu.Role = 'Receiver' AND eu.IsRead = FALSE), 0), " +
+        "       COALESCE(SUM(eu.IsStarred = TRUE), 0), " +
+        "       COALESCE(SUM(eu.Role = 'Sender'), 0), " +
+        "       COALESCE(SUM(eu.Role = 'Receiver'), 0), " +
+        "       COALESCE(SUM(COALESCE(e.BodyLength, LENGTH(e.Body)) + e.TotalAttachmentBytes), 0) " +
+        "FROM User u " +
+        "LEFT JOIN EmailUser eu ON eu.UserID = u.UserID AND eu.IsDeleted = FALSE " +
+        "LEFT JOIN Email e ON e.EmailID = eu.EmailID " +
+        "WHERE u.UserID BETWEEN ? AND ? " +
+        "GROUP BY u.UserID " +
+        "ON DUPLICATE KEY UPDATE " +
+        "TotalEmails = VALUES(TotalEmails), UnreadEmails = VALUES(UnreadEmails), " +
+        "StarredEmails = VALUES(StarredEmails), SentEmails = VALUES(SentEmails), " +
+        "ReceivedEmails = VALUES(ReceivedEmails), TotalBytes = VALUES(TotalBytes)";
+
+    private static final int RECONCILE_CHUNK_SIZE = 500;
+
+    // EmailIDs per statement in bulk flag/folder updates
+    private static final int BULK_CHUNK_SIZE = 500;
+
+    private DatabaseHelper dbHelper;
+
+    public MailboxCounterService(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Get mailbox statistics with a single primary-key read.
+     * Users without a counters row yet are reconciled on first access.
+     */
+    public EmailStats getStats(int userId) {
+        EmailStats stats = readStats(userId);
+        if (stats == null && reconcileUser(userId)) {
+            stats = readStats(userId);
+        }
+        return stats != null ? stats : new EmailStats();
+    }
+
+    private EmailStats readStats(int userId) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            conn = dbHelper.getConnection();
+            pstmt = conn.prepareStatement("SELECT * FROM MailboxCounters WHERE UserID = ?");
+            pstmt.setInt(1, userId);
+            rs = pstmt.executeQuery();
+
+            if (rs.next()) {
+                return new EmailStats(
+                    rs.getInt("TotalEmails"),
+                    rs.getInt("UnreadEmails"),
+                    rs.getInt("StarredEmails"),
+                    rs.getInt("SentEmails"),
+                    rs.getInt("ReceivedEmails"),
+                    rs.getLong("TotalBytes"));
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Error reading mailbox counters: " + e.getMessage());
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+
+        return null;
+    }
+
+    /**
+     * Recompute one user's mailbox and folder counters from EmailUser/Email
+     */
+    public boolean reconcileUser(int userId) {
+        return reconcileRange(userId, userId);
+    }
+
+    /**
+     * Reconciliation job: recompute counters for every user in UserID chunks,
+     * creating rows for users that have none
+     * @return true if every chunk was reconciled
+     */
+    public boolean reconcileAll() {
+        Connection conn = null;
+        Statement stmt = null;
+        ResultSet rs = null;
+        int minId;
+        int maxId;
+        int userCount;
+
+        try {
+            conn = dbHelper.getConnection();
+            stmt = conn.createStatement();
+            rs = stmt.executeQuery("SELECT MIN(UserID), MAX(UserID), COUNT(*) FROM User");
+            if (!rs.next() || rs.getObject(1) == null) {
+                return true;
+            }
+            minId = rs.getInt(1);
+            maxId = rs.getInt(2);
+            userCount = rs.getInt(3);
+        } catch (SQLException e) {
+            System.err.println("Error reconciling mailbox counters: " + e.getMessage());
+            return false;
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(stmt);
+            dbHelper.closeConnection(conn);
+        }
+
+        boolean success = true;
+        for (long from = minId; from <= maxId; from += RECONCILE_CHUNK_SIZE) {
+            success &= reconcileRange((int) from, (int) Math.min(from + RECONCILE_CHUNK_SIZE - 1, maxId));
+        }
+        if (success) {
+            System.out.println("✓ Mailbox counters reconciled for " + userCount + " users");
+        }
+        return success;
+    }
+
+    /**
+     * Create counters rows for users that do not have one yet
+     * (mailboxes that existed before the counters table was added)
+     */
+    public int initializeMissingCounters() {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        int initialized = 0;
+
+        try {
+            conn = dbHelper.getConnection();
+            pstmt = conn.prepareStatement(
+                "SELECT u.UserID FROM User u " +
+                "LEFT JOIN MailboxCounters mc ON mc.UserID = u.UserID " +
+                "WHERE mc.UserID IS NULL");
+            rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                if (reconcileUser(rs.getInt("UserID"))) {
+                    initialized++;
+                }
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Error initializing mailbox counters: " + e.getMessage());
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+
+        return initialized;
+    }
+
+    private boolean reconcileRange(int fromUserId, int toUserId) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        PreparedStatement pstmtFolders = null;
+
+        try {
+            conn = dbHelper.getConnection();
+            pstmt = conn.prepareStatement(SQL_RECONCILE);
+            pstmt.setInt(1, fromUserId);
+            pstmt.setInt(2, toUserId);
+            pstmt.executeUpdate();
+
+            pstmtFolders = conn.prepareStatement(SQL_RECONCILE_FOLDERS);
+            pstmtFolders.setInt(1, fromUserId);
+            pstmtFolders.setInt(2, toUserId);
+            pstmtFolders.setInt(3, fromUserId);
+            pstmtFolders.setInt(4, toUserId);
+            pstmtFolders.executeUpdate();
+            return true;
+
+        } catch (SQLException e) {
+            System.err.println("Error reconciling mailbox counters: " + e.getMessage());
+            return false;
+        } finally {
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeStatement(pstmtFolders);
+            dbHelper.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Run a flag/folder UPDATE on one user's EmailUser rows of one email and
+     * apply the resulting counter changes in the same transaction
+     * @see #updateWithCounters(Collection, int, boolean, boolean, String, List, UnaryOperator, String)
+     */
+    boolean updateWithCounters(int emailId, int userId, boolean receiverOnly, boolean withBytes,
+                               String setClause, List<Object> setParams,
+                               UnaryOperator<RowState> transition, String errorMessage) {
+        return updateWithCounters(Collections.singletonList(emailId), userId, receiverOnly, withBytes,
+                setClause, setParams, transition, errorMessage) > 0;
+    }
+
+    /**
+     * Run a flag/folder UPDATE on one user's EmailUser rows of many emails and
+     * apply the resulting counter changes, all in one transaction.
+     * EmailIDs are processed in ascending order, BULK_CHUNK_SIZE per statement:
+     * the rows of a chunk are locked first (so the before-state cannot change
+     * underneath), then updated with one UPDATE ... WHERE EmailID IN (...).
+     * @param receiverOnly restrict to Receiver rows
+     * @param withBytes load the email size (only needed when IsDeleted changes)
+     * @param setClause SET clause of the UPDATE, e.g. "IsStarred = ?"
+     * @param setParams parameters of setClause
+     * @param transition in-memory equivalent of setClause for one row
+     * @return number of EmailUser rows updated (0 if none matched), or -1 on error
+     */
+    int updateWithCounters(Collection<Integer> emailIds, int userId, boolean receiverOnly, boolean withBytes,
+                           String setClause, List<Object> setParams,
+                           UnaryOperator<RowState> transition, String errorMessage) {
+        List<Integer> ids = new ArrayList<>(new TreeSet<>(emailIds));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        Connection conn = null;
+        PreparedStatement pstmtLock = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        int rows = 0;
+
+        try {
+            conn = dbHelper.getConnection();
+            conn.setAutoCommit(false);
+
+            Changes changes = new Changes();
+            for (int from = 0; from < ids.size(); from += BULK_CHUNK_SIZE) {
+                List<Integer> chunk = ids.subList(from, Math.min(from + BULK_CHUNK_SIZE, ids.size()));
+                String rowFilter = "eu.UserID = ? AND eu.EmailID IN (" + placeholders(chunk.size()) + ")" +
+                        (receiverOnly ? " AND eu.Role = 'Receiver'" : "");
+
+                String sqlLock = "SELECT eu.Role, eu.FolderID, eu.IsRead, eu.IsStarred, eu.IsDeleted" +
+                        (withBytes ? ", COALESCE(e.BodyLength, LENGTH(e.Body)) + e.TotalAttachmentBytes AS Bytes " +
+                                     "FROM EmailUser eu JOIN Email e ON e.EmailID = eu.EmailID "
+                                   : " FROM EmailUser eu ") +
+                        "WHERE " + rowFilter + " FOR UPDATE";
+                pstmtLock = conn.prepareStatement(sqlLock);
+                setRowFilter(pstmtLock, 1, userId, chunk);
+                rs = pstmtLock.executeQuery();
+
+                while (rs.next()) {
+                    RowState before = RowState.from(rs, withBytes);
+                    changes.record(userId, before, transition.apply(before));
+                }
+                dbHelper.closeResultSet(rs);
+                dbHelper.closeStatement(pstmtLock);
+                rs = null;
+                pstmtLock = null;
+
+                pstmt = conn.prepareStatement("UPDATE EmailUser eu SET " + setClause + " WHERE " + rowFilter);
+                int index = 1;
+                for (Object param : setParams) {
+                    pstmt.setObject(index++, param);
+                }
+                setRowFilter(pstmt, index, userId, chunk);
+                rows += pstmt.executeUpdate();
+                dbHelper.closeStatement(pstmt);
+                pstmt = null;
+            }
+
+            apply(conn, changes);
+
+            conn.commit();
+            return rows;
+
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Rollback error: " + ex.getMessage());
+                }
+            }
+            System.err.println(errorMessage + e.getMessage());
+            return -1;
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmtLock);
+            dbHelper.closeStatement(pstmt);
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    System.err.println("Error resetting autocommit: " + e.getMessage());
+                }
+            }
+            dbHelper.closeConnection(conn);
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    private static void setRowFilter(PreparedStatement pstmt, int index, int userId, List<Integer> emailIds)
+            throws SQLException {
+        pstmt.setInt(index++, userId);
+        for (int emailId : emailIds) {
+            pstmt.setInt(index++, emailId);
+        }
+    }
+
+    /**
+     * Apply recorded changes on the caller's connection (inside its transaction)
+     */
+    void apply(Connection conn, Changes changes) throws SQLException {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // Both maps are sorted, so concurrent writers lock counter rows in the same order
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_APPLY_FOLDER_DELTA)) {
+            for (Map.Entry<Integer, int[]> entry : changes.folderDeltas.entrySet()) {
+                int[] delta = entry.getValue();
+                if (delta[0] == 0 && delta[1] == 0) {
+                    continue;
+                }
+                pstmt.setInt(1, delta[0]);
+                pstmt.setInt(2, delta[1]);
+                pstmt.setInt(3, entry.getKey());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_APPLY_USER_DELTA)) {
+            for (Map.Entry<Integer, long[]> entry : changes.userDeltas.entrySet()) {
+                long[] delta = entry.getValue();
+                if (isZero(delta)) {
+                    continue;
+                }
+                pstmt.setLong(1, delta[TOTAL]);
+                pstmt.setLong(2, delta[UNREAD]);
+                pstmt.setLong(3, delta[STARRED]);
+                pstmt.setLong(4, delta[SENT]);
+                pstmt.setLong(5, delta[RECEIVED]);
+                pstmt.setLong(6, delta[BYTES]);
+                pstmt.setInt(7, entry.getKey());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Add (or with a negative delta, remove) attachment bytes for every
+     * participant that still has the email, on the caller's connection
+     */
+    void addAttachmentBytes(Connection conn, int emailId, long bytesDelta) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE MailboxCounters mc JOIN EmailUser eu ON eu.UserID = mc.UserID " +
+                "SET mc.TotalBytes = mc.TotalBytes + ? " +
+                "WHERE eu.EmailID = ? AND eu.IsDeleted = FALSE")) {
+            pstmt.setLong(1, bytesDelta);
+            pstmt.setInt(2, emailId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Size of a body as MySQL LENGTH() reports it (UTF-8 bytes)
+     */
+    static long bodyBytes(String body) {
+        return body != null ? body.getBytes(StandardCharsets.UTF_8).length : 0;
+    }
+
+    private static boolean isZero(long[] delta) {
+        for (long value : delta) {
+            if (value != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Counter-relevant columns of one EmailUser row
+     */
+    static class RowState {
+        final String role;
+        final Integer folderId;
+        final boolean read;
+        final boolean starred;
+        final boolean deleted;
+        final long bytes;
+
+        RowState(String role, Integer folderId, boolean read, boolean starred, boolean deleted, long bytes) {
+            this.role = role;
+            this.folderId = folderId;
+            this.read = read;
+            this.starred = starred;
+            this.deleted = deleted;
+            this.bytes = bytes;
+        }
+
+        /**
+         * State of a freshly inserted EmailUser row
+         */
+        static RowState newRow(String role, Integer folderId, long bytes) {
+            return new RowState(role, folderId, false, false, false, bytes);
+        }
+
+        /**
+         * Read Role, FolderID, IsRead, IsStarred, IsDeleted and optionally Bytes
+         */
+        static RowState from(ResultSet rs, boolean withBytes) throws SQLException {
+            int folderId = rs.getInt("FolderID");
+            Integer folder = rs.wasNull() ? null : folderId;
+            return new RowState(
+                rs.getString("Role"),
+                folder,
+                rs.getBoolean("IsRead"),
+                rs.getBoolean("IsStarred"),
+                rs.getBoolean("IsDeleted"),
+                withBytes ? rs.getLong("Bytes") : 0);
+        }
+
+        RowState withRead(boolean value) {
+            return new RowState(role, folderId, value, starred, deleted, bytes);
+        }
+
+        RowState withStarred(boolean value) {
+            return new RowState(role, folderId, read, value, deleted, bytes);
+        }
+
+        RowState withDeleted(boolean value) {
+            return new RowState(role, folderId, read, starred, value, bytes);
+        }
+
+        RowState withFolder(Integer value) {
+            return new RowState(role, value, read, starred, deleted, bytes);
+        }
+
+        boolean isReceiver() {
+            return "Receiver".equals(role);
+        }
+
+        boolean isSender() {
+            return "Sender".equals(role);
+        }
+    }
+
+    /**
+     * Counter deltas accumulated over one transaction
+     */
+    static class Changes {
+        private final Map<Integer, long[]> userDeltas = new TreeMap<>();
+        // FolderID -> {EmailCount, UnreadCount}
+        private final Map<Integer, int[]> folderDeltas = new TreeMap<>();
+
+        /**
+         * Record an EmailUser row transition (before == null for inserts)
+         */
+        void record(int userId, RowState before, RowState after) {
+            long[] delta = userDeltas.computeIfAbsent(userId, id -> new long[6]);
+            if (before != null) {
+                addContribution(delta, before, -1);
+            }
+            if (after != null) {
+                addContribution(delta, after, 1);
+            }
+            if (before != null) {
+                addFolderContribution(before, -1);
+            }
+            if (after != null) {
+                addFolderContribution(after, 1);
+            }
+        }
+
+        boolean isEmpty() {
+            return userDeltas.isEmpty() && folderDeltas.isEmpty();
+        }
+
+        private static void addContribution(long[] delta, RowState state, int sign) {
+            if (state.deleted) {
+                return;
+            }
+            delta[TOTAL] += sign;
+            if (state.isReceiver() && !state.read) delta[UNREAD] += sign;
+            if (state.starred) delta[STARRED] += sign;
+            if (state.isSender()) delta[SENT] += sign;
+            if (state.isReceiver()) delta[RECEIVED] += sign;
+            delta[BYTES] += sign * state.bytes;
+        }
+
+        private void addFolderContribution(RowState state, int sign) {
+            if (state.deleted || state.folderId == null) {
+                return;
+            }
+            int[] delta = folderDeltas.computeIfAbsent(state.folderId, id -> new int[2]);
+            delta[0] += sign;
+            if (!state.read) delta[1] += sign;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package services;
+
+import entities.Email;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NewMailPoller - Incremental New-Mail Detection
+ *
+ * Checks the logged-in user's inbox for new mail in the background without
+ * re-running the folder query. The poller keeps a change cursor - the
+ * highest inbox EmailID the client has seen - and each poll asks only for
+ * rows above it, less a lookback window (EmailService.getNewInboxEmails),
+ * which is a short index range scan.
+ *
+ * - EmailIDs are AUTO_INCREMENT and never reused, but they are assigned at
+ *   insert, not at commit: a delivery that commits late can become visible
+ *   with an ID below one already seen. Each poll therefore re-reads the
+ *   LOOKBACK_IDS IDs below the cursor and skips the IDs the client already
+ *   has (the rows reported by earlier polls and those it loaded itself).
+ * - The interval adapts: it starts at MIN_INTERVAL, doubles after every
+ *   poll that finds nothing (up to MAX_INTERVAL), and drops back to
+ *   MIN_INTERVAL when mail arrives or the user is active (userActive()).
+ * - At most MAX_NEW_EMAILS rows are returned per poll; the listener is told
+ *   when there were more, so it can reload the listing instead.
+ *
+ * Only inbox delivery is tracked; the user's own sends and moves are
+ * already reflected by the client that made them.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class NewMailPoller {
+
+    private static final long MIN_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_INTERVAL_MS = TimeUnit.SECONDS.toMillis(120);
+    private static final int BACKOFF_FACTOR = 2;
+    private static final int MAX_NEW_EMAILS = 100;
+    // IDs below the cursor re-read by every poll, for deliveries that committed late
+    private static final int LOOKBACK_IDS = 500;
+
+    private final EmailService emailService;
+    private final SearchIndexService searchIndexService;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+
+    // Poll state, guarded by "this"
+    private int userId = -1;
+    private int lastEmailId = -1; // -1 = not known yet
+    private int floorEmailId = 0; // nothing at or below this is reported
+    private final TreeSet<Integer> knownEmailIds = new TreeSet<>(); // in the lookback window
+    private long intervalMillis;
+    private ScheduledFuture<?> scheduledPoll;
+    private boolean closed = false;
+    // Bumped by start() and stop(); a poll from an earlier session must not
+    // touch the state or reschedule, even if the same user logged in again
+    private long session = 0;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "new-mail-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Listener listener;
+
+    // Metrics
+    private final AtomicLong pollCount = new AtomicLong();
+    private final AtomicLong emptyPollCount = new AtomicLong();
+    private final AtomicLong newEmailCount = new AtomicLong();
+
+    public NewMailPoller(EmailService emailService, SearchIndexService searchIndexService) {
+        this(emailService, searchIndexService, MIN_INTERVAL_MS, MAX_INTERVAL_MS);
+    }
+
+    public NewMailPoller(EmailService emailService, SearchIndexService searchIndexService,
+                         long minIntervalMillis, long maxIntervalMillis) {
+        this.emailService = emailService;
+        this.searchIndexService = searchIndexService;
+        this.minIntervalMillis = Math.max(1, minIntervalMillis);
+        this.maxIntervalMillis = Math.max(this.minIntervalMillis, maxIntervalMillis);
+        this.intervalMillis = this.minIntervalMillis;
+    }
+
+    /**
+     * Receive new mail. Runs on the poller thread.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start polling for a user (call after login)
+     */
+    public synchronized void start(int userId) {
+        if (closed) {
+            return;
+        }
+        cancelScheduledPoll();
+        session++;
+        this.userId = userId;
+        resetCursor();
+        this.intervalMillis = minIntervalMillis;
+        schedule();
+    }
+
+    /**
+     * Stop polling (call on logout)
+     */
+    public synchronized void stop() {
+        cancelScheduledPoll();
+        session++;
+        userId = -1;
+        resetCursor();
+    }
+
+    private void resetCursor() {
+        lastEmailId = -1;
+        floorEmailId = 0;
+        knownEmailIds.clear();
+    }
+
+    /**
+     * Move the cursor forward after the client has loaded inbox rows itself
+     * (the first inbox page), so they are not reported as new. Rows below
+     * the oldest of them are left to the listing.
+     */
+    public synchronized void advanceCursor(List<Email> emails) {
+        if (userId < 0 || emails.isEmpty()) {
+            return;
+        }
+        int lowest = Integer.MAX_VALUE;
+        for (Email email : emails) {
+            knownEmailIds.add(email.getEmailId());
+            lastEmailId = Math.max(lastEmailId, email.getEmailId());
+            lowest = Math.min(lowest, email.getEmailId());
+        }
+        floorEmailId = lowest;
+    }
+
+    /**
+     * The user did something: poll at the shortest interval again
+     */
+    public synchronized void userActive() {
+        if (userId < 0 || closed || intervalMillis == minIntervalMillis) {
+            return;
+        }
+        intervalMillis = minIntervalMillis;
+        if (scheduledPoll != null && scheduledPoll.getDelay(TimeUnit.MILLISECONDS) > minIntervalMillis) {
+            cancelScheduledPoll();
+            schedule();
+        }
+    }
+
+    /**
+     * Stop the poller thread (call on application exit)
+     */
+    public void shutdown() {
+        synchronized (this) {
+            closed = true;
+            cancelScheduledPoll();
+        }
+        executor.shutdownNow();
+        System.out.println("New mail poller closed. " + this);
+    }
+
+    private void schedule() {
+        scheduledPoll = executor.schedule(this::poll, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelScheduledPoll() {
+        if (scheduledPoll != null) {
+            scheduledPoll.cancel(false);
+            scheduledPoll = null;
+        }
+    }
+
+    /**
+     * One poll: fetch rows above the cursor's lookback window, report those
+     * the client does not have yet, and schedule the next poll
+     */
+    private void poll() {
+        long pollSession;
+        int pollUserId;
+        int cursor;
+        int afterEmailId;
+        TreeSet<Integer> known;
+        synchronized (this) {
+            if (closed || userId < 0) {
+                return;
+            }
+            pollSession = session;
+            pollUserId = userId;
+            cursor = lastEmailId;
+            afterEmailId = Math.max(floorEmailId, lastEmailId - LOOKBACK_IDS);
+            known = new TreeSet<>(knownEmailIds.tailSet(afterEmailId, false));
+        }
+        pollCount.incrementAndGet();
+
+        List<Email> emails = new ArrayList<>();
+        try {
+            if (cursor < 0) {
+                // First poll before the inbox was shown: only establish the cursor
+                establishCursor(pollSession, pollUserId);
+            } else {
+                // Rows the client already has come back too; room is made for them
+                for (Email email : emailService.getNewInboxEmails(pollUserId, afterEmailId,
+                                                                   MAX_NEW_EMAILS + 1 + known.size())) {
+                    if (!known.contains(email.getEmailId())) {
+                        emails.add(email);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error polling for new emails: " + e.getMessage());
+        }
+
+        boolean truncated = emails.size() > MAX_NEW_EMAILS;
+        int latestEmailId = -1;
+        if (truncated) {
+            emails = emails.subList(0, MAX_NEW_EMAILS);
+            // Rows beyond the limit are covered by the listener's reload
+            latestEmailId = emailService.getLatestInboxEmailId(pollUserId);
+        }
+
+        List<Email> newEmails = new ArrayList<>();
+        synchronized (this) {
+            if (closed || session != pollSession) {
+                return; // logged out (and maybe in again) meanwhile
+            }
+            for (Email email : emails) {
+                // Also skips rows the client loaded itself during the poll
+                if (knownEmailIds.add(email.getEmailId())) {
+                    newEmails.add(email);
+                }
+            }
+            boolean found = !newEmails.isEmpty();
+            if (found) {
+                for (Email email : newEmails) {
+                    lastEmailId = Math.max(lastEmailId, email.getEmailId());
+                }
+                lastEmailId = Math.max(lastEmailId, latestEmailId);
+                if (truncated) {
+                    floorEmailId = Math.max(floorEmailId, latestEmailId);
+                }
+                intervalMillis = minIntervalMillis;
+            } else {
+                emptyPollCount.incrementAndGet();
+                intervalMillis = Math.min(maxIntervalMillis, intervalMillis * BACKOFF_FACTOR);
+            }
+            // IDs that dropped out of the lookback window are not read again
+            knownEmailIds.headSet(Math.max(floorEmailId, lastEmailId - LOOKBACK_IDS), true).clear();
+            schedule();
+        }
+
+        if (!newEmails.isEmpty()) {
+            newEmailCount.addAndGet(newEmails.size());
+            if (searchIndexService != null) {
+                searchIndexService.refresh(pollUserId);
+            }
+            Listener current = listener;
+            if (current != null) {
+                current.newMail(pollUserId, newEmails, truncated);
+            }
+        }
+    }
+
+    /**
+     * Set the cursor to the newest inbox row and remember the rows in the
+     * lookback window below it, so only rows that appear later are reported
+     */
+    private void establishCursor(long pollSession, int pollUserId) {
+        int latest = emailService.getLatestInboxEmailId(pollUserId);
+        if (latest < 0) {
+            return;
+        }
+        int windowStart = Math.max(0, latest - LOOKBACK_IDS);
+        // The window holds at most LOOKBACK_IDS rows, so this reads all of them
+        List<Email> window = emailService.getNewInboxEmails(pollUserId, windowStart, LOOKBACK_IDS);
+        synchronized (this) {
+            if (session != pollSession || lastEmailId >= 0) {
+                return; // logged out, or the inbox was shown meanwhile
+            }
+            lastEmailId = latest;
+            floorEmailId = windowStart;
+            for (Email email : window) {
+                knownEmailIds.add(email.getEmailId());
+                lastEmailId = Math.max(lastEmailId, email.getEmailId());
+            }
+        }
+    }
+
+    // Metrics getters
+
+    public long getPollCount() {
+        return pollCount.get();
+    }
+
+    public long getEmptyPollCount() {
+        return emptyPollCount.get();
+    }
+
+    public long getNewEmailCount() {
+        return newEmailCount.get();
+    }
+
+    public synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "NewMailPoller{" +
+                "polls=" + getPollCount() +
+                ", empty=" + getEmptyPollCount() +
+                ", newEmails=" + getNewEmailCount() +
+                ", intervalMs=" + getIntervalMillis() +
+                '}';
+    }
+
+    /**
+     * Receives the emails found by a poll
+     */
+    public interface Listener {
+        /**
+         * @param emails new inbox emails, newest first
+         * @param truncated true if there were more than could be returned (reload the listing)
+         */
+        void newMail(int userId, List<Email> emails, boolean truncated);
+    }
+}
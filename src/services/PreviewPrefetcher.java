@@ -0,0 +1,271 @@
+package services;
+
+import entities.Attachment;
+import entities.Email;
+import utils.LruCache;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PreviewPrefetcher - Preview Pane Cache with Neighbour Prefetching
+ *
+ * The preview pane needs an email's body and attachment list, which the
+ * header-only list queries do not return. This class keeps them in a
+ * bounded LRU cache and, when a row is selected, loads the rows around it
+ * in the background, so moving through the list with the arrow keys
+ * renders from memory.
+ *
+ * - A prefetch loads all missing bodies with one query and all missing
+ *   attachment lists with one more (EmailService.getEmailBodies,
+ *   AttachmentService.getAttachmentsForEmails).
+ * - Emails whose header says AttachmentCount = 0 skip the attachment query.
+ * - Emails already cached or being prefetched are skipped.
+ *
+ * Bodies do not change after sending, but attachment lists do: attachments
+ * are saved after the email itself is sent (the poller can show it in
+ * between), and deleting attachments or collecting the attachments of
+ * deleted mail removes them. invalidate(emailId) drops an email's entries
+ * for every user. MainGUI calls it from AttachmentService's change listener.
+ * A load that overlaps an invalidation returns its result without caching it.
+ * Changes made by other clients are picked up only when the entry is evicted.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class PreviewPrefetcher {
+
+    private static final int DEFAULT_MAX_ENTRIES = 200;
+
+    private final EmailService emailService;
+    private final AttachmentService attachmentService;
+    private final Executor executor;
+
+    // (UserID, EmailID) -> preview
+    private final LruCache<Long, Preview> previews;
+    // Keys being prefetched, guarded by "this"
+    private final Set<Long> inFlight = new HashSet<>();
+    // Bumped by invalidate(); loads that started before it do not cache their results
+    private final AtomicLong generation = new AtomicLong();
+
+    // Metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong prefetchQueries = new AtomicLong();
+
+    public PreviewPrefetcher(EmailService emailService, AttachmentService attachmentService, Executor executor) {
+        this(emailService, attachmentService, executor, DEFAULT_MAX_ENTRIES);
+    }
+
+    public PreviewPrefetcher(EmailService emailService, AttachmentService attachmentService,
+                             Executor executor, int maxEntries) {
+        this.emailService = emailService;
+        this.attachmentService = attachmentService;
+        this.executor = executor;
+        this.previews = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Get a cached preview without touching the database
+     * @return preview, or null if not cached
+     */
+    public Preview getIfPresent(int userId, int emailId) {
+        Preview preview = previews.get(key(userId, emailId));
+        if (preview != null) {
+            hits.incrementAndGet();
+        }
+        return preview;
+    }
+
+    /**
+     * Get a preview, loading it on the calling thread on a miss
+     */
+    public Preview load(int userId, Email email) {
+        Preview preview = getIfPresent(userId, email.getEmailId());
+        if (preview != null) {
+            return preview;
+        }
+        misses.incrementAndGet();
+
+        long loadGeneration = generation.get();
+        String body = email.isBodyLoaded() ? email.getBody()
+                                           : emailService.getEmailBody(email.getEmailId(), userId);
+        List<Attachment> attachments = email.getAttachmentCount() > 0
+                ? attachmentService.getEmailAttachments(email.getEmailId())
+                : new ArrayList<>();
+
+        preview = new Preview(body, attachments);
+        if (body != null) {
+            cache(userId, email.getEmailId(), preview, loadGeneration);
+        }
+        return preview;
+    }
+
+    /**
+     * Load the previews of the given emails in the background (returns at once)
+     */
+    public void prefetch(int userId, List<Email> emails) {
+        List<Email> missing = new ArrayList<>();
+        synchronized (this) {
+            for (Email email : emails) {
+                long key = key(userId, email.getEmailId());
+                if (!previews.containsKey(key) && inFlight.add(key)) {
+                    missing.add(email);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                loadAll(userId, missing);
+            } catch (RuntimeException e) {
+                System.err.println("Error prefetching previews: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    for (Email email : missing) {
+                        inFlight.remove(key(userId, email.getEmailId()));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Load bodies and attachment lists of several emails with one query each
+     */
+    private void loadAll(int userId, List<Email> emails) {
+        long loadGeneration = generation.get();
+        List<Integer> bodyIds = new ArrayList<>();
+        List<Integer> attachmentIds = new ArrayList<>();
+        for (Email email : emails) {
+            if (!email.isBodyLoaded()) {
+                bodyIds.add(email.getEmailId());
+            }
+            if (email.getAttachmentCount() > 0) {
+                attachmentIds.add(email.getEmailId());
+            }
+        }
+
+        Map<Integer, String> bodies = bodyIds.isEmpty() ? Collections.emptyMap()
+                                                        : emailService.getEmailBodies(bodyIds, userId);
+        Map<Integer, List<Attachment>> attachments = attachmentIds.isEmpty() ? Collections.emptyMap()
+                : attachmentService.getAttachmentsForEmails(attachmentIds);
+        prefetchQueries.addAndGet((bodyIds.isEmpty() ? 0 : 1) + (attachmentIds.isEmpty() ? 0 : 1));
+
+        for (Email email : emails) {
+            String body = email.isBodyLoaded() ? email.getBody() : bodies.get(email.getEmailId());
+            if (body == null) {
+                continue; // no longer visible to this user
+            }
+            List<Attachment> list = attachments.get(email.getEmailId());
+            if (cache(userId, email.getEmailId(), new Preview(body, list != null ? list : new ArrayList<>()),
+                      loadGeneration)) {
+                prefetched.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Cache a loaded preview unless an invalidation happened since the load started
+     * @return true if cached
+     */
+    private synchronized boolean cache(int userId, int emailId, Preview preview, long loadGeneration) {
+        if (generation.get() != loadGeneration) {
+            return false;
+        }
+        previews.put(key(userId, emailId), preview);
+        return true;
+    }
+
+    /**
+     * Drop the cached previews of an email for all users (its attachments changed)
+     */
+    public synchronized void invalidate(int emailId) {
+        generation.incrementAndGet();
+        previews.removeIf((key, preview) -> (int) (long) key == emailId);
+    }
+
+    public void clear() {
+        previews.clear();
+    }
+
+    private static long key(int userId, int emailId) {
+        return ((long) userId << 32) | (emailId & 0xFFFFFFFFL);
+    }
+
+    // Metrics getters
+
+    public int size() {
+        return previews.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getPrefetchedCount() {
+        return prefetched.get();
+    }
+
+    public long getPrefetchQueryCount() {
+        return prefetchQueries.get();
+    }
+
+    /**
+     * Get hit ratio in percent (selections rendered from the cache)
+     */
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        if (total == 0) return 0.0;
+        return (hits.get() * 100.0) / total;
+    }
+
+    @Override
+    public String toString() {
+        return "PreviewPrefetcher{" +
+                "size=" + size() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", prefetched=" + getPrefetchedCount() +
+                ", prefetchQueries=" + getPrefetchQueryCount() +
+                ", hitRatio=" + String.format("%.1f%%", getHitRatio()) +
+                '}';
+    }
+
+    /**
+     * Body and attachment list of one email
+     */
+    public static final class Preview {
+        private final String body;
+        private final List<Attachment> attachments;
+
+        Preview(String body, List<Attachment> attachments) {
+            this.body = body;
+            this.attachments = Collections.unmodifiableList(attachments);
+        }
+
+        /**
+         * @return body text, or null if the email is not available to the user
+         */
+        public String getBody() {
+            return body;
+        }
+
+        public List<Attachment> getAttachments() {
+            return attachments;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package services;
+
+import utils.InvertedIndex;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SearchIndexService - Per-User In-Process Search Index
+ *
+ * Keeps one InvertedIndex per logged-in user so the search box can match
+ * prefixes at keystroke speed without a database round trip.
+ *
+ * Lifecycle:
+ * - open(userId) loads index/user_<id>.seg if present, then catches up on
+ *   emails with a higher EmailID than the segment has seen. EmailIDs are
+ *   assigned at insert, not commit, so an email can become visible below
+ *   the highest ID indexed: catch-up re-reads the CATCH_UP_LOOKBACK_IDS IDs
+ *   below it and skips the emails the index already holds
+ * - EmailService reports sent and deleted emails, which are applied to
+ *   open indexes immediately
+ * - close(userId) / closeAll() write the segment back for a fast restart
+ *
+ * The index only decides which EmailIDs match; callers load the rows with
+ * EmailService.getEmailsByIds(), which also drops emails deleted elsewhere.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class SearchIndexService {
+
+    private static final String INDEX_BASE_PATH = "index";
+    private static final int CATCH_UP_CHUNK_SIZE = 1000;
+    // IDs below the highest indexed one re-read by catch-up, for emails that committed late
+    private static final int CATCH_UP_LOOKBACK_IDS = 500;
+
+    private DatabaseHelper dbHelper;
+    private final EmailBodyCodec bodyCodec;
+    private final Map<Integer, InvertedIndex> openIndexes = new ConcurrentHashMap<>();
+
+    public SearchIndexService(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+        this.bodyCodec = new EmailBodyCodec(dbHelper);
+    }
+
+    /**
+     * Load (or build) the user's index and bring it up to date.
+     * Building from scratch reads every email once, so call this off the UI thread.
+     */
+    public InvertedIndex open(int userId) {
+        InvertedIndex index = openIndexes.get(userId);
+        if (index != null) {
+            return index;
+        }
+
+        long start = System.nanoTime();
+        index = loadSegment(userId);
+        int added = catchUp(userId, index);
+        openIndexes.put(userId, index);
+        // Emails sent between the first pass and put() were not applied live; pick them up now
+        added += catchUp(userId, index);
+
+        System.out.printf("Search index ready for user %d: %d emails, %d terms (%d new, %.0f ms)%n",
+                userId, index.getDocumentCount(), index.getTermCount(), added,
+                (System.nanoTime() - start) / 1_000_000.0);
+        return index;
+    }
+
+    public boolean isOpen(int userId) {
+        return openIndexes.containsKey(userId);
+    }
+
+    /**
+     * Prefix search over the user's open index
+     * @return matching EmailIDs, newest first; empty if the index is not open
+     */
+    public int[] searchIds(int userId, String query, int limit) {
+        InvertedIndex index = openIndexes.get(userId);
+        if (index == null) {
+            return new int[0];
+        }
+        return index.search(query, limit);
+    }
+
+    /**
+     * Add emails that arrived since the index was opened (e.g. sent by another client)
+     * @return number of emails added; 0 if the index is not open
+     */
+    public int refresh(int userId) {
+        InvertedIndex index = openIndexes.get(userId);
+        if (index == null) {
+            return 0;
+        }
+        return catchUp(userId, index);
+    }
+
+    /**
+     * Write the user's index to its segment file
+     */
+    public boolean save(int userId) {
+        InvertedIndex index = openIndexes.get(userId);
+        if (index == null) {
+            return false;
+        }
+
+        try {
+            index.writeTo(segmentPath(userId));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving search index: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Save and unload the user's index (logout)
+     */
+    public void close(int userId) {
+        save(userId);
+        openIndexes.remove(userId);
+    }
+
+    /**
+     * Save and unload every open index (application shutdown)
+     */
+    public void closeAll() {
+        for (Integer userId : openIndexes.keySet()) {
+            close(userId);
+        }
+    }
+
+    /**
+     * Called by EmailService after a send commits
+     */
+    void onEmailSent(int emailId, String subject, String body, int... userIds) {
+        for (int userId : userIds) {
+            InvertedIndex index = openIndexes.get(userId);
+            if (index != null) {
+                index.addDocument(emailId, documentText(subject, body));
+            }
+        }
+    }
+
+    /**
+     * Called by EmailService after a delete commits
+     */
+    void onEmailDeleted(int emailId, int userId) {
+        InvertedIndex index = openIndexes.get(userId);
+        if (index != null) {
+            index.removeDocument(emailId);
+        }
+    }
+
+    private InvertedIndex loadSegment(int userId) {
+        Path segment = segmentPath(userId);
+        if (Files.exists(segment)) {
+            try {
+                return InvertedIndex.readFrom(segment);
+            } catch (IOException e) {
+                // A damaged segment is only a cache - rebuild it from the database
+                System.err.println("Discarding search index segment: " + e.getMessage());
+            }
+        }
+        return new InvertedIndex();
+    }
+
+    /**
+     * Index the user's emails newer than the index (and those in the lookback
+     * window it does not hold yet), in EmailID chunks
+     * @return number of emails added
+     */
+    private int catchUp(int userId, InvertedIndex index) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        int added = 0;
+
+        try {
+            conn = dbHelper.getConnection();
+            // Compressed bodies are indexed in full, not just their search text
+            String sql = "SELECT e.EmailID, e.Subject, e.Body, e.BodyCompressed, e.BodyCodec FROM Email e " +
+                        "JOIN EmailUser eu ON e.EmailID = eu.EmailID " +
+                        "WHERE eu.UserID = ? AND eu.IsDeleted = FALSE AND e.EmailID > ? " +
+                        "ORDER BY e.EmailID LIMIT ?";
+            pstmt = conn.prepareStatement(sql);
+
+            int lastEmailId = Math.max(0, index.getLastEmailId() - CATCH_UP_LOOKBACK_IDS);
+            int rows;
+            do {
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, lastEmailId);
+                pstmt.setInt(3, CATCH_UP_CHUNK_SIZE);
+                rs = pstmt.executeQuery();
+
+                rows = 0;
+                while (rs.next()) {
+                    lastEmailId = rs.getInt("EmailID");
+                    if (!index.contains(lastEmailId)
+                            && index.addDocument(lastEmailId, documentText(rs.getString("Subject"), bodyCodec.decode(rs)))) {
+                        added++;
+                    }
+                    rows++;
+                }
+                rs.close();
+            } while (rows == CATCH_UP_CHUNK_SIZE);
+
+        } catch (SQLException e) {
+            System.err.println("Error building search index: " + e.getMessage());
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+
+        return added;
+    }
+
+    private static String documentText(String subject, String body) {
+        return (subject != null ? subject : "") + "\n" + (body != null ? body : "");
+    }
+
+    private static Path segmentPath(int userId) {
+        return Paths.get(INDEX_BASE_PATH, "user_" + userId + ".seg");
+    }
+}
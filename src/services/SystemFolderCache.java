@@ -0,0 +1,137 @@
+package services;
+
+import utils.LruCache;
+import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SystemFolderCache - (UserID, System Folder Name) to FolderID Cache
+ *
+ * The CreateDefaultFolders trigger creates Inbox, Sent, Drafts, Trash and
+ * Spam for every user, and system folders can be neither renamed nor
+ * deleted, so their IDs never change. Caching them lets the send path
+ * skip the Folder lookups for the sender's Sent folder and each
+ * recipient's Inbox.
+ *
+ * Entries are filled lazily (one query loads all system folders of a
+ * user), in bulk by FolderService.getUserFolders() at login, and from
+ * rows the send path has already read. FolderService invalidates them
+ * when it deletes or renames a folder.
+ *
+ * One instance is shared through DatabaseHelper.getSystemFolderCache().
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class SystemFolderCache {
+
+    public static final String INBOX = "Inbox";
+    public static final String SENT = "Sent";
+
+    // Users whose folder IDs are kept in memory
+    private static final int DEFAULT_MAX_USERS = 1000;
+
+    private DatabaseHelper dbHelper;
+    // UserID -> (folder name -> FolderID)
+    private final LruCache<Integer, Map<String, Integer>> folderIds;
+
+    public SystemFolderCache(DatabaseHelper dbHelper) {
+        this(dbHelper, DEFAULT_MAX_USERS);
+    }
+
+    public SystemFolderCache(DatabaseHelper dbHelper, int maxUsers) {
+        this.dbHelper = dbHelper;
+        this.folderIds = new LruCache<>(maxUsers);
+    }
+
+    /**
+     * Get a cached system folder ID without touching the database
+     * @return FolderID, or null if not cached
+     */
+    public Integer getIfPresent(int userId, String name) {
+        Map<String, Integer> folders = folderIds.get(userId);
+        return folders != null ? folders.get(name) : null;
+    }
+
+    /**
+     * Get a system folder ID, loading all of the user's system folders on a miss
+     * @return FolderID, or null if the user has no such system folder
+     */
+    public Integer getFolderId(int userId, String name) {
+        Integer folderId = getIfPresent(userId, name);
+        if (folderId == null) {
+            load(userId);
+            folderId = getIfPresent(userId, name);
+        }
+        return folderId;
+    }
+
+    /**
+     * Remember a system folder ID read elsewhere (e.g. by a query that joined Folder)
+     */
+    public void put(int userId, String name, int folderId) {
+        Map<String, Integer> folders = folderIds.get(userId);
+        if (folders == null) {
+            folders = new ConcurrentHashMap<>();
+            folderIds.put(userId, folders);
+        }
+        folders.put(name, folderId);
+    }
+
+    /**
+     * Load all system folders of a user in one query
+     * @return true if the query succeeded
+     */
+    public boolean load(int userId) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            conn = dbHelper.getConnection();
+            pstmt = conn.prepareStatement(
+                "SELECT FolderID, Name FROM Folder WHERE UserID = ? AND IsSystem = TRUE");
+            pstmt.setInt(1, userId);
+            rs = pstmt.executeQuery();
+
+            Map<String, Integer> folders = new ConcurrentHashMap<>();
+            while (rs.next()) {
+                folders.putIfAbsent(rs.getString("Name"), rs.getInt("FolderID"));
+            }
+            folderIds.put(userId, folders);
+            return true;
+
+        } catch (SQLException e) {
+            System.err.println("Error loading system folders: " + e.getMessage());
+            return false;
+        } finally {
+            dbHelper.closeResultSet(rs);
+            dbHelper.closeStatement(pstmt);
+            dbHelper.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Forget every cached folder of a user
+     */
+    public void invalidate(int userId) {
+        folderIds.remove(userId);
+    }
+
+    /**
+     * Forget the user entry that contains a folder (the owner is not always known)
+     */
+    public void invalidateFolder(int folderId) {
+        folderIds.removeIf((userId, folders) -> folders.containsValue(folderId));
+    }
+
+    public void clear() {
+        folderIds.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "SystemFolderCache" + folderIds.toString().substring("LruCache".length());
+    }
+}
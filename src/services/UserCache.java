@@ -0,0 +1,218 @@
+package services;
+
+import entities.User;
+import utils.LruCache;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UserCache - Username to User Resolution Cache
+ *
+ * Recipient lookup is the hottest read of the compose flow, and login and
+ * signup look users up by name as well. This bounded cache maps a
+ * username to the user's basic profile (UserID, Name, PersonalDetails,
+ * CreatedAt, IsActive) so repeated lookups skip the database.
+ *
+ * - Names are matched case-insensitively (trimmed, lower-cased), the way
+ *   the default User.Name collation compares them.
+ * - Unknown names are cached as negative entries for a short time, so a
+ *   mistyped recipient does not query User on every attempt.
+ * - Passwords and LastLogin are never cached; lookups return copies.
+ * - Entries expire (POSITIVE_TTL / NEGATIVE_TTL) so changes made by other
+ *   clients of the same database are picked up. UserService invalidates
+ *   them on signup and profile updates.
+ *
+ * One instance is shared through DatabaseHelper.getUserCache().
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class UserCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final long POSITIVE_TTL_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final long NEGATIVE_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final LruCache<String, Entry> entries;
+
+    // Metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public UserCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public UserCache(int maxEntries) {
+        this.entries = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Look up a username
+     * @return the cached entry (negative if the name is known not to exist),
+     *         or null if the database has to be asked
+     */
+    Entry lookup(String username) {
+        String key = key(username);
+        if (key == null) {
+            return null;
+        }
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isExpired()) {
+            entries.remove(key);
+            expirations.incrementAndGet();
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else if (entry.isNegative()) {
+            negativeHits.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Cache a user under its own name and, if different, the spelling it was looked up with
+     */
+    void put(String lookupName, User user) {
+        Entry entry = new Entry(profileOf(user), POSITIVE_TTL_NANOS);
+        entries.put(key(user.getName()), entry);
+        String lookupKey = key(lookupName);
+        if (lookupKey != null) {
+            entries.put(lookupKey, entry);
+        }
+    }
+
+    /**
+     * Remember that no user has this name
+     */
+    void putMissing(String username) {
+        String key = key(username);
+        if (key != null) {
+            entries.put(key, new Entry(null, NEGATIVE_TTL_NANOS));
+        }
+    }
+
+    /**
+     * Forget every entry that resolves to a user (profile changed)
+     */
+    public void invalidateUser(int userId) {
+        entries.removeIf((name, entry) -> !entry.isNegative() && entry.user.getUserId() == userId);
+    }
+
+    /**
+     * Forget every negative entry (a user was created; other spellings may now match it)
+     */
+    public void invalidateMissing() {
+        entries.removeIf((name, entry) -> entry.isNegative());
+    }
+
+    public void invalidate(String username) {
+        String key = key(username);
+        if (key != null) {
+            entries.remove(key);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static String key(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            return null;
+        }
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Basic profile of a user, without credentials or login times
+     */
+    static User profileOf(User user) {
+        return new User(user.getUserId(), user.getName(), null, user.getPersonalDetails(),
+                        user.getCreatedAt(), null, user.isActive());
+    }
+
+    // Metrics getters
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     * Get hit ratio in percent (negative hits count as hits: no query was needed)
+     */
+    public double getHitRatio() {
+        long served = hits.get() + negativeHits.get();
+        long total = served + misses.get();
+        if (total == 0) return 0.0;
+        return (served * 100.0) / total;
+    }
+
+    @Override
+    public String toString() {
+        return "UserCache{" +
+                "size=" + size() +
+                ", hits=" + getHitCount() +
+                ", negativeHits=" + getNegativeHitCount() +
+                ", misses=" + getMissCount() +
+                ", expired=" + getExpirationCount() +
+                ", hitRatio=" + String.format("%.1f%%", getHitRatio()) +
+                '}';
+    }
+
+    /**
+     * One cached lookup result; user is null for a negative entry
+     */
+    static final class Entry {
+        private final User user;
+        private final long expiresAtNanos;
+
+        private Entry(User user, long ttlNanos) {
+            this.user = user;
+            this.expiresAtNanos = System.nanoTime() + ttlNanos;
+        }
+
+        boolean isNegative() {
+            return user == null;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAtNanos > 0;
+        }
+
+        int getUserId() {
+            return user.getUserId();
+        }
+
+        /**
+         * Copy of the cached profile (callers may modify it)
+         */
+        User copyUser() {
+            return user != null ? profileOf(user) : null;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * FullTextQuery - Search Box Input Compiled for the FULLTEXT Index
+ *
+ * Turns what a user types into the search box into a MATCH ... AGAINST
+ * boolean-mode query over idx_search (Email.Subject, Email.Body):
+ * - words become required prefix terms        mail server  ->  +mail* +server*
+ * - "quoted text" becomes a required phrase   "go live"    ->  +"go live"
+ * - a leading minus excludes a word           -spam        ->  -spam
+ *
+ * Words the index cannot see (shorter than innodb_ft_min_token_size or on
+ * the default InnoDB stopword list) are matched with LIKE instead. Only
+ * when nothing in the query is indexable does the search fall back to
+ * LIKE alone.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class FullTextQuery {
+
+    // InnoDB default innodb_ft_min_token_size
+    public static final int MIN_TOKEN_SIZE = 3;
+
+    // InnoDB default stopword list (INFORMATION_SCHEMA.INNODB_FT_DEFAULT_STOPWORD)
+    private static final Set<String> STOPWORDS = new HashSet<>(Arrays.asList(
+        "a", "about", "an", "are", "as", "at", "be", "by", "com", "de", "en", "for",
+        "from", "how", "i", "in", "is", "it", "la", "of", "on", "or", "that", "the",
+        "this", "to", "was", "what", "when", "where", "who", "will", "with", "und", "www"));
+
+    private static final String MATCH_EXPRESSION = "MATCH(e.Subject, e.Body) AGAINST (? IN BOOLEAN MODE)";
+
+    private final String input;
+    private final List<String> matchTerms = new ArrayList<>();
+    private final List<String> likeTerms = new ArrayList<>();
+    private final List<String> excludedLikeTerms = new ArrayList<>();
+
+    private FullTextQuery(String input) {
+        this.input = input;
+    }
+
+    /**
+     * Compile a search box string
+     */
+    public static FullTextQuery parse(String input) {
+        FullTextQuery query = new FullTextQuery(input != null ? input : "");
+        String text = query.input;
+        int i = 0;
+
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            boolean excluded = false;
+            if (c == '-' && i + 1 < text.length() && !Character.isWhitespace(text.charAt(i + 1))) {
+                excluded = true;
+                i++;
+                c = text.charAt(i);
+            }
+
+            if (c == '"') {
+                int end = text.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = text.length();
+                }
+                query.addPhrase(text.substring(i + 1, end), excluded);
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+                query.addWord(text.substring(i, end), excluded);
+                i = end;
+            }
+        }
+
+        query.requirePositiveTerm();
+        return query;
+    }
+
+    /**
+     * A boolean-mode query made only of exclusions matches nothing,
+     * so exclusions without a required term are checked with NOT LIKE
+     */
+    private void requirePositiveTerm() {
+        for (String term : matchTerms) {
+            if (term.startsWith("+")) {
+                return;
+            }
+        }
+        for (String term : matchTerms) {
+            excludedLikeTerms.add(term.substring(1).replace("\"", ""));
+        }
+        matchTerms.clear();
+    }
+
+    private void addWord(String word, boolean excluded) {
+        // The index tokenizes on non-alphanumerics, so "e-mail" is the tokens "e" and "mail"
+        List<String> tokens = tokenize(word);
+        boolean shortFragment = false;
+        for (String token : tokens) {
+            if (isIndexable(token)) {
+                matchTerms.add(excluded ? "-" + token : "+" + token + "*");
+            } else {
+                shortFragment = true;
+            }
+        }
+        if (!shortFragment) {
+            return;
+        }
+
+        // Check the whole word, not a one-letter fragment that would match almost anything
+        String likeTerm = tokens.size() == 1 ? tokens.get(0) : word;
+        if (excluded) {
+            excludedLikeTerms.add(likeTerm);
+        } else {
+            likeTerms.add(likeTerm);
+        }
+    }
+
+    private void addPhrase(String phrase, boolean excluded) {
+        List<String> tokens = tokenize(phrase);
+        if (tokens.isEmpty()) {
+            return;
+        }
+
+        boolean indexable = false;
+        for (String token : tokens) {
+            indexable |= isIndexable(token);
+        }
+
+        if (indexable) {
+            matchTerms.add((excluded ? "-" : "+") + "\"" + String.join(" ", tokens) + "\"");
+        } else if (excluded) {
+            excludedLikeTerms.add(phrase.trim());
+        } else {
+            likeTerms.add(phrase.trim());
+        }
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                current.append(c);
+            } else if (current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    private static boolean isIndexable(String token) {
+        return token.codePointCount(0, token.length()) >= MIN_TOKEN_SIZE
+                && !STOPWORDS.contains(token.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * True if at least part of the query can use the FULLTEXT index
+     */
+    public boolean usesFullText() {
+        return !matchTerms.isEmpty();
+    }
+
+    /**
+     * True if the query has no terms at all (matches everything)
+     */
+    public boolean isEmpty() {
+        return matchTerms.isEmpty() && likeTerms.isEmpty() && excludedLikeTerms.isEmpty();
+    }
+
+    /**
+     * Boolean-mode search string, e.g. +mail* +"go live" -spam
+     */
+    public String getBooleanQuery() {
+        return String.join(" ", matchTerms);
+    }
+
+    public List<String> getLikeTerms() {
+        return Collections.unmodifiableList(likeTerms);
+    }
+
+    public List<String> getExcludedLikeTerms() {
+        return Collections.unmodifiableList(excludedLikeTerms);
+    }
+
+    /**
+     * Append the WHERE conditions for this query (each starting with AND)
+     * to a statement over Email e, adding their parameters in order
+     */
+    public void appendPredicate(StringBuilder sql, List<Object> params) {
+        if (usesFullText()) {
+            sql.append("AND ").append(MATCH_EXPRESSION).append(" ");
+            params.add(getBooleanQuery());
+        }
+        for (String term : likeTerms) {
+            sql.append("AND (e.Subject LIKE ? OR e.Body LIKE ?) ");
+            params.add(likePattern(term));
+            params.add(likePattern(term));
+        }
+        for (String term : excludedLikeTerms) {
+            sql.append("AND NOT (e.Subject LIKE ? OR e.Body LIKE ?) ");
+            params.add(likePattern(term));
+            params.add(likePattern(term));
+        }
+    }
+
+    /**
+     * Append ORDER BY relevance (newest first among equal scores).
+     * Queries without indexable terms have no score and are ordered by time.
+     */
+    public void appendRelevanceOrder(StringBuilder sql, List<Object> params) {
+        if (usesFullText()) {
+            sql.append("ORDER BY ").append(MATCH_EXPRESSION).append(" DESC, e.Timestamp DESC, e.EmailID DESC ");
+            params.add(getBooleanQuery());
+        } else {
+            sql.append("ORDER BY e.Timestamp DESC, e.EmailID DESC ");
+        }
+    }
+
+    /**
+     * %term% with LIKE wildcards in the term escaped
+     */
+    public static String likePattern(String term) {
+        String escaped = term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    @Override
+    public String toString() {
+        return "FullTextQuery{" +
+                "match='" + getBooleanQuery() + '\'' +
+                ", like=" + likeTerms +
+                ", notLike=" + excludedLikeTerms +
+                '}';
+    }
+}
@@ -0,0 +1,350 @@
+package utils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * InvertedIndex - In-Memory Term to Email Postings Index
+ *
+ * Maps every term of a mailbox (subject + body) to the emails containing it.
+ * Emails are numbered with dense local document numbers in the order they are
+ * added, so postings are sorted int arrays and a query is a handful of
+ * BitSet unions/intersections - no database round trip.
+ *
+ * Query semantics: every query word is a prefix ("inv mee" matches
+ * "invoice meeting"), all words must match, newest documents first.
+ *
+ * Segment file layout (all counts and deltas are unsigned varints):
+ *   magic, version, lastEmailId (ints)
+ *   docCount, EmailID of each document (zigzag delta from the previous one)
+ *   termCount, then per term in sorted order:
+ *     term (UTF), postingCount, document number deltas
+ * Deleted documents are dropped and the rest renumbered when a segment is written.
+ *
+ * All methods are synchronized; one index is shared by the GUI thread and
+ * the services that update it.
+ *
+ * @version 1.0
+ * @since 2025-01-09
+ */
+public class InvertedIndex {
+
+    private static final int MAGIC = 0x4D494458; // "MIDX"
+    private static final int VERSION = 1;
+
+    // Terms are truncated to this many characters; shorter tokens are not indexed
+    public static final int MAX_TERM_LENGTH = 40;
+    public static final int MIN_TERM_LENGTH = 2;
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final Map<Integer, Integer> emailToDoc = new HashMap<>();
+    private final BitSet deletedDocs = new BitSet();
+    private int[] docToEmailId = new int[256];
+    private int docCount;
+    private int lastEmailId;
+
+    /**
+     * Index an email
+     * @return false if the email is already indexed
+     */
+    public synchronized boolean addDocument(int emailId, String text) {
+        if (emailToDoc.containsKey(emailId)) {
+            return false;
+        }
+
+        int doc = docCount++;
+        if (doc == docToEmailId.length) {
+            docToEmailId = Arrays.copyOf(docToEmailId, doc * 2);
+        }
+        docToEmailId[doc] = emailId;
+        emailToDoc.put(emailId, doc);
+        lastEmailId = Math.max(lastEmailId, emailId);
+
+        for (String term : tokenize(text)) {
+            terms.computeIfAbsent(term, t -> new Postings()).add(doc);
+        }
+        return true;
+    }
+
+    /**
+     * Hide an email from results; its postings are dropped on the next write
+     */
+    public synchronized boolean removeDocument(int emailId) {
+        Integer doc = emailToDoc.remove(emailId);
+        if (doc == null) {
+            return false;
+        }
+        deletedDocs.set(doc);
+        return true;
+    }
+
+    /**
+     * Find emails matching every query word as a prefix
+     * @return up to limit EmailIDs, most recently indexed first
+     */
+    public synchronized int[] search(String query, int limit) {
+        List<String> words = tokenize(query, 1);
+        if (words.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+
+        BitSet result = null;
+        for (String word : words) {
+            BitSet matches = new BitSet(docCount);
+            // All terms starting with word are contiguous in the sorted map
+            for (Postings postings : terms.subMap(word, true, word + Character.MAX_VALUE, true).values()) {
+                for (int i = 0; i < postings.size; i++) {
+                    matches.set(postings.docs[i]);
+                }
+            }
+
+            if (result == null) {
+                result = matches;
+            } else {
+                result.and(matches);
+            }
+            if (result.isEmpty()) {
+                return new int[0];
+            }
+        }
+        result.andNot(deletedDocs);
+
+        int[] emailIds = new int[Math.min(limit, result.cardinality())];
+        int found = 0;
+        for (int doc = result.previousSetBit(docCount - 1); doc >= 0 && found < emailIds.length;
+             doc = result.previousSetBit(doc - 1)) {
+            emailIds[found++] = docToEmailId[doc];
+        }
+        return emailIds;
+    }
+
+    public synchronized boolean contains(int emailId) {
+        return emailToDoc.containsKey(emailId);
+    }
+
+    /**
+     * Highest EmailID ever added - catch-up starts after it
+     */
+    public synchronized int getLastEmailId() {
+        return lastEmailId;
+    }
+
+    /**
+     * Number of live (not removed) documents
+     */
+    public synchronized int getDocumentCount() {
+        return emailToDoc.size();
+    }
+
+    public synchronized int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * Lowercased index terms of a text
+     */
+    public static List<String> tokenize(String text) {
+        return tokenize(text, MIN_TERM_LENGTH);
+    }
+
+    private static List<String> tokenize(String text, int minLength) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= minLength) {
+                    tokens.add(lower.substring(start, Math.min(i, start + MAX_TERM_LENGTH)));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Write the index as a segment file (temp file + atomic rename)
+     */
+    public synchronized void writeTo(Path file) throws IOException {
+        // Renumber live documents so removed ones take no space
+        int[] remap = new int[docCount];
+        int liveCount = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            remap[doc] = deletedDocs.get(doc) ? -1 : liveCount++;
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(lastEmailId);
+
+            writeVarInt(out, liveCount);
+            int previousEmailId = 0;
+            for (int doc = 0; doc < docCount; doc++) {
+                if (remap[doc] >= 0) {
+                    int delta = docToEmailId[doc] - previousEmailId;
+                    writeVarInt(out, (delta << 1) ^ (delta >> 31));
+                    previousEmailId = docToEmailId[doc];
+                }
+            }
+
+            List<Map.Entry<String, int[]>> liveTerms = new ArrayList<>();
+            for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+                int[] docs = entry.getValue().remap(remap);
+                if (docs.length > 0) {
+                    liveTerms.add(Map.entry(entry.getKey(), docs));
+                }
+            }
+
+            writeVarInt(out, liveTerms.size());
+            for (Map.Entry<String, int[]> entry : liveTerms) {
+                out.writeUTF(entry.getKey());
+                int[] docs = entry.getValue();
+                writeVarInt(out, docs.length);
+                int previous = 0;
+                for (int doc : docs) {
+                    writeVarInt(out, doc - previous);
+                    previous = doc;
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load a segment written by writeTo
+     */
+    public static InvertedIndex readFrom(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a mailbox index segment: " + file);
+            }
+
+            InvertedIndex index = new InvertedIndex();
+            index.lastEmailId = in.readInt();
+
+            int docCount = readVarInt(in);
+            index.docToEmailId = new int[Math.max(docCount, 256)];
+            int emailId = 0;
+            for (int doc = 0; doc < docCount; doc++) {
+                int zigzag = readVarInt(in);
+                emailId += (zigzag >>> 1) ^ -(zigzag & 1);
+                index.docToEmailId[doc] = emailId;
+                index.emailToDoc.put(emailId, doc);
+            }
+            index.docCount = docCount;
+
+            int termCount = readVarInt(in);
+            for (int t = 0; t < termCount; t++) {
+                String term = in.readUTF();
+                int size = readVarInt(in);
+                Postings postings = new Postings(size);
+                int doc = 0;
+                for (int i = 0; i < size; i++) {
+                    doc += readVarInt(in);
+                    postings.docs[i] = doc;
+                }
+                postings.size = size;
+                index.terms.put(term, postings);
+            }
+            return index;
+        } catch (EOFException e) {
+            throw new IOException("Truncated mailbox index segment: " + file, e);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in mailbox index segment");
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "InvertedIndex{" +
+                "documents=" + getDocumentCount() +
+                ", terms=" + terms.size() +
+                ", lastEmailId=" + lastEmailId +
+                '}';
+    }
+
+    /**
+     * Growable sorted array of document numbers
+     */
+    private static class Postings {
+        int[] docs;
+        int size;
+
+        Postings() {
+            this(4);
+        }
+
+        Postings(int capacity) {
+            docs = new int[Math.max(capacity, 1)];
+        }
+
+        void add(int doc) {
+            // Documents arrive in increasing order; a term repeated in one email is stored once
+            if (size > 0 && docs[size - 1] == doc) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+
+        int[] remap(int[] newDocNumbers) {
+            int[] result = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int doc = newDocNumbers[docs[i]];
+                if (doc >= 0) {
+                    result[count++] = doc;
+                }
+            }
+            return count == size ? result : Arrays.copyOf(result, count);
+        }
+    }
+}